@@ -0,0 +1,74 @@
+package org.gengine.benchmark.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.gengine.benchmark.jmh.MessagePayloads.PayloadType;
+import org.gengine.messaging.jackson.ObjectMapperFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Measures marshalling and unmarshalling of message payloads with the
+ * {@link ObjectMapperFactory} JSON and Smile mappers.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarshallingBenchmark
+{
+
+    @Param({ "TransformationRequest", "TransformationReply", "HashRequest", "BenchmarkMessage" })
+    public PayloadType payloadType;
+
+    @Param({ "json", "smile" })
+    public String format;
+
+    private ObjectMapper mapper;
+    private Object payload;
+    private Class<?> payloadClass;
+    private byte[] marshalled;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        mapper = "smile".equals(format) ? ObjectMapperFactory.createSmileInstance() : ObjectMapperFactory.createInstance();
+        payload = MessagePayloads.createPayload(payloadType);
+        payloadClass = payload.getClass();
+        marshalled = mapper.writeValueAsBytes(payload);
+    }
+
+    @Benchmark
+    public byte[] marshal() throws IOException
+    {
+        return mapper.writeValueAsBytes(payload);
+    }
+
+    @Benchmark
+    public Object unmarshal() throws IOException
+    {
+        return mapper.readValue(marshalled, payloadClass);
+    }
+
+    @Benchmark
+    public Object roundTrip() throws IOException
+    {
+        return mapper.readValue(mapper.writeValueAsBytes(payload), payloadClass);
+    }
+
+}
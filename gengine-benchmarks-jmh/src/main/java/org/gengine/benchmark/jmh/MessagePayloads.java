@@ -0,0 +1,129 @@
+package org.gengine.benchmark.jmh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gengine.content.ContentReference;
+import org.gengine.content.ContentWorkResult;
+import org.gengine.content.hash.HashRequest;
+import org.gengine.content.mediatype.FileMediaType;
+import org.gengine.content.transform.TransformationReply;
+import org.gengine.content.transform.TransformationRequest;
+import org.gengine.content.transform.options.CropSourceOptions;
+import org.gengine.content.transform.options.ImageResizeOptions;
+import org.gengine.content.transform.options.ImageTransformationOptions;
+import org.gengine.content.transform.options.PagedSourceOptions;
+import org.gengine.messaging.benchmark.BenchmarkMessage;
+
+/**
+ * Realistic message payloads, sized like those sent between gengine clients and nodes
+ *
+ */
+public class MessagePayloads
+{
+
+    public enum PayloadType
+    {
+        TransformationRequest,
+        TransformationReply,
+        HashRequest,
+        BenchmarkMessage
+    }
+
+    public static Object createPayload(PayloadType payloadType)
+    {
+        switch (payloadType)
+        {
+            case TransformationRequest:
+                return createTransformationRequest();
+            case TransformationReply:
+                return createTransformationReply();
+            case HashRequest:
+                return createHashRequest();
+            case BenchmarkMessage:
+                return BenchmarkMessage.createInstance();
+            default:
+                throw new IllegalArgumentException("Unknown payload type: " + payloadType);
+        }
+    }
+
+    public static TransformationRequest createTransformationRequest()
+    {
+        ImageTransformationOptions options = new ImageTransformationOptions();
+        options.setAutoOrient(true);
+        options.setTimeoutMs(120000);
+
+        ImageResizeOptions resizeOptions = new ImageResizeOptions();
+        resizeOptions.setWidth(1024);
+        resizeOptions.setHeight(768);
+        resizeOptions.setMaintainAspectRatio(true);
+        options.setResizeOptions(resizeOptions);
+
+        CropSourceOptions cropSourceOptions = new CropSourceOptions();
+        cropSourceOptions.setApplicableMediaTypes(Arrays.asList(
+                FileMediaType.IMAGE_JPEG.getMediaType(), FileMediaType.IMAGE_PNG.getMediaType()));
+        cropSourceOptions.setGravity("Center");
+        cropSourceOptions.setWidth(2048);
+        cropSourceOptions.setHeight(1536);
+        options.addSourceOptions(cropSourceOptions);
+
+        PagedSourceOptions pagedSourceOptions = new PagedSourceOptions();
+        pagedSourceOptions.setApplicableMediaTypes(Arrays.asList("application/pdf"));
+        pagedSourceOptions.setStartPageNumber(1);
+        pagedSourceOptions.setEndPageNumber(1);
+        options.addSourceOptions(pagedSourceOptions);
+
+        TransformationRequest request = new TransformationRequest(
+                createContentReferences("source", FileMediaType.IMAGE_JPEG.getMediaType(), 1),
+                createContentReferences("target", FileMediaType.IMAGE_PNG.getMediaType(), 1),
+                options);
+        request.setTargetMediaType(FileMediaType.IMAGE_PNG.getMediaType());
+        request.setReplyTo("gengine.transform.reply");
+        return request;
+    }
+
+    public static TransformationReply createTransformationReply()
+    {
+        TransformationReply reply = new TransformationReply(createTransformationRequest());
+        reply.setStatus(TransformationReply.STATUS_COMPLETE);
+        reply.setResults(createResults("target", FileMediaType.IMAGE_PNG.getMediaType(), 1));
+        return reply;
+    }
+
+    public static HashRequest createHashRequest()
+    {
+        HashRequest request = new HashRequest(
+                createContentReferences("source", "application/octet-stream", 10), "SHA-256");
+        request.setReplyTo("gengine.hash.reply");
+        return request;
+    }
+
+    protected static List<ContentReference> createContentReferences(String prefix, String mediaType, int count)
+    {
+        List<ContentReference> references = new ArrayList<ContentReference>(count);
+        for (int i = 0; i < count; i++)
+        {
+            references.add(new ContentReference(
+                    "file:///var/gengine/content/2014/6/12/15/" + prefix + "-" + i + "-a3b8ad4c-6f2e-4a0f-9a77-0c1e9b0f6a1d.bin",
+                    mediaType, 1048576L + i));
+        }
+        return references;
+    }
+
+    protected static List<ContentWorkResult> createResults(String prefix, String mediaType, int count)
+    {
+        List<ContentWorkResult> results = new ArrayList<ContentWorkResult>(count);
+        for (ContentReference reference : createContentReferences(prefix, mediaType, count))
+        {
+            Map<String, Object> details = new HashMap<String, Object>();
+            details.put("width", 1024);
+            details.put("height", 768);
+            results.add(new ContentWorkResult(reference, details));
+        }
+        return results;
+    }
+
+}
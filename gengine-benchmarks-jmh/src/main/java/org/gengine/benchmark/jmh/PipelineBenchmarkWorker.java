@@ -0,0 +1,106 @@
+package org.gengine.benchmark.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.gengine.content.handler.FileContentReferenceHandler;
+import org.gengine.content.transform.AbstractFileContentTransformerWorker;
+import org.gengine.content.transform.ContentTransformerWorkerProgressReporter;
+import org.gengine.content.transform.options.TransformationOptions;
+
+/**
+ * A stand-in for a real transformer worker, i.e. ffmpeg or ImageMagick, which
+ * either does no work or copies the source to the target, so that the framework's
+ * cost per transformation can be measured on its own.
+ * <p>
+ * Temp copies of sources are deleted once transformed and each thread's temp
+ * targets are deleted at the start of its next transformation, once they've
+ * been uploaded, so long runs don't fill the temp dir.
+ *
+ */
+public class PipelineBenchmarkWorker extends AbstractFileContentTransformerWorker
+{
+    public enum WorkerType
+    {
+        /** Creates empty targets */
+        noop,
+        /** Copies the first source to each target */
+        copy
+    }
+
+    private WorkerType workerType = WorkerType.noop;
+
+    private final ThreadLocal<List<File>> uploadedTempTargets = new ThreadLocal<List<File>>()
+    {
+        @Override
+        protected List<File> initialValue()
+        {
+            return new ArrayList<File>();
+        }
+    };
+
+    public void setWorkerType(WorkerType workerType)
+    {
+        this.workerType = workerType;
+    }
+
+    @Override
+    public boolean isTransformable(List<String> sourceMediaTypes, String targetMediaType,
+            TransformationOptions options)
+    {
+        return true;
+    }
+
+    @Override
+    protected List<File> transformInternal(
+            List<FileContentReferencePair> sources,
+            List<FileContentReferencePair> targets,
+            TransformationOptions options,
+            ContentTransformerWorkerProgressReporter progressReporter) throws Exception
+    {
+        List<File> tempTargets = uploadedTempTargets.get();
+        for (File tempTarget : tempTargets)
+        {
+            tempTarget.delete();
+        }
+        tempTargets.clear();
+
+        List<File> results = new ArrayList<File>(targets.size());
+        for (FileContentReferencePair target : targets)
+        {
+            File targetFile = target.getFile();
+            if (workerType == WorkerType.copy)
+            {
+                Files.copy(sources.get(0).getFile().toPath(), targetFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            else if (!targetFile.exists() && !targetFile.createNewFile())
+            {
+                throw new IOException("Could not create target " + targetFile);
+            }
+            if (progressReporter != null)
+            {
+                progressReporter.onTransformationProgress((float) (results.size() + 1) / targets.size());
+            }
+            results.add(targetFile);
+        }
+
+        if (!(sourceContentReferenceHandler instanceof FileContentReferenceHandler))
+        {
+            for (FileContentReferencePair source : sources)
+            {
+                source.getFile().delete();
+            }
+        }
+        if (isTempTargetUsed())
+        {
+            tempTargets.addAll(results);
+        }
+        return results;
+    }
+
+}
@@ -0,0 +1,72 @@
+package org.gengine.benchmark.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.gengine.benchmark.jmh.MessagePayloads.PayloadType;
+import org.gengine.messaging.jackson.ObjectMapperFactory;
+import org.gengine.messaging.jackson.QpidJsonBodyCleanerObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Measures unmarshalling of JSON bodies with the leading bytes Qpid adds, which the
+ * {@link QpidJsonBodyCleanerObjectMapper} skips, from byte arrays and streams.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QpidJsonBodyBenchmark
+{
+    /** An AMQP data section header as seen before bodies from Qpid */
+    private static final byte[] QPID_PREFIX = new byte[] { 0x00, 0x53, 0x77, (byte) 0xb1, 0x00, 0x00, 0x10, 0x00 };
+
+    @Param({ "TransformationRequest", "TransformationReply", "HashRequest", "BenchmarkMessage" })
+    public PayloadType payloadType;
+
+    private ObjectMapper mapper;
+    private Class<?> payloadClass;
+    private byte[] prefixedBody;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        mapper = ObjectMapperFactory.createInstance();
+        Object payload = MessagePayloads.createPayload(payloadType);
+        payloadClass = payload.getClass();
+        byte[] json = mapper.writeValueAsString(payload).getBytes(StandardCharsets.UTF_8);
+        prefixedBody = new byte[QPID_PREFIX.length + json.length];
+        System.arraycopy(QPID_PREFIX, 0, prefixedBody, 0, QPID_PREFIX.length);
+        System.arraycopy(json, 0, prefixedBody, QPID_PREFIX.length, json.length);
+    }
+
+    @Benchmark
+    public Object unmarshalBytes() throws IOException
+    {
+        return mapper.readValue(prefixedBody, payloadClass);
+    }
+
+    @Benchmark
+    public Object unmarshalStream() throws IOException
+    {
+        return mapper.readValue(new ByteArrayInputStream(prefixedBody), payloadClass);
+    }
+
+}
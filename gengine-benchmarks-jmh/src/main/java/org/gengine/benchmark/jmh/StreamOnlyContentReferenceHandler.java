@@ -0,0 +1,83 @@
+package org.gengine.benchmark.jmh;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.gengine.content.ContentIOException;
+import org.gengine.content.ContentReference;
+import org.gengine.content.handler.ContentReferenceHandler;
+import org.gengine.content.handler.FileContentReferenceHandler;
+
+/**
+ * Wraps a content reference handler so that it isn't seen as a {@link FileContentReferenceHandler},
+ * making workers fetch sources to temp files and upload results from temp files as they
+ * do with remote stores like S3 or WebDAV, without the network cost.
+ *
+ */
+public class StreamOnlyContentReferenceHandler implements ContentReferenceHandler
+{
+    private final ContentReferenceHandler delegate;
+
+    public StreamOnlyContentReferenceHandler(ContentReferenceHandler delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean isContentReferenceSupported(ContentReference contentReference)
+    {
+        return delegate.isContentReferenceSupported(contentReference);
+    }
+
+    @Override
+    public boolean isContentReferenceExists(ContentReference contentReference)
+    {
+        return delegate.isContentReferenceExists(contentReference);
+    }
+
+    @Override
+    public ContentReference createContentReference(String fileName, String mediaType) throws ContentIOException
+    {
+        return delegate.createContentReference(fileName, mediaType);
+    }
+
+    @Override
+    public InputStream getInputStream(ContentReference contentReference, boolean waitForAvailability)
+            throws ContentIOException, InterruptedException
+    {
+        return delegate.getInputStream(contentReference, waitForAvailability);
+    }
+
+    @Override
+    public long putInputStream(InputStream sourceInputStream, ContentReference targetContentReference)
+            throws ContentIOException
+    {
+        return delegate.putInputStream(sourceInputStream, targetContentReference);
+    }
+
+    @Override
+    public long putFile(File sourceFile, ContentReference targetContentReference) throws ContentIOException
+    {
+        return delegate.putFile(sourceFile, targetContentReference);
+    }
+
+    @Override
+    public File getFile(ContentReference contentReference, boolean waitForTransfer)
+            throws ContentIOException, InterruptedException
+    {
+        return delegate.getFile(contentReference, waitForTransfer);
+    }
+
+    @Override
+    public void delete(ContentReference contentReference) throws ContentIOException
+    {
+        delegate.delete(contentReference);
+    }
+
+    @Override
+    public boolean isAvailable()
+    {
+        return delegate.isAvailable();
+    }
+
+}
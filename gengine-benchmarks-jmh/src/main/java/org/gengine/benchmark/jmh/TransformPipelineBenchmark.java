@@ -0,0 +1,204 @@
+package org.gengine.benchmark.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.gengine.benchmark.jmh.PipelineBenchmarkWorker.WorkerType;
+import org.gengine.content.ContentReference;
+import org.gengine.content.handler.ContentReferenceHandler;
+import org.gengine.content.handler.FileContentReferenceHandlerImpl;
+import org.gengine.content.handler.tempfile.TempFileContentReferenceHandlerImpl;
+import org.gengine.content.mediatype.FileMediaType;
+import org.gengine.content.transform.BaseContentTransformerComponent;
+import org.gengine.content.transform.TransformationRequest;
+import org.gengine.content.transform.options.TransformationOptionsImpl;
+import org.gengine.messaging.MessageProducer;
+import org.gengine.messaging.MessagingException;
+import org.gengine.messaging.jackson.ObjectMapperFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Measures the full path of a transformation through a node, in-process and without
+ * a broker: request unmarshalling, {@link BaseContentTransformerComponent} processing,
+ * source fetch, result upload and reply marshalling, with a {@link PipelineBenchmarkWorker}
+ * in place of a real transformer so the framework's overhead per job is measured on its own.
+ * <p>
+ * Content is stored with a {@link TempFileContentReferenceHandlerImpl}, used directly
+ * by the worker with <code>handler=file</code> or through a {@link StreamOnlyContentReferenceHandler}
+ * with <code>handler=stream</code> so sources and results are copied through temp files
+ * as with remote stores.
+ * <p>
+ * Each benchmark thread acts as a concurrent consumer of the same component, use
+ * JMH's <code>-t</code> option to vary concurrency.  Logging is disabled so console
+ * output doesn't dominate the results.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.apache.commons.logging.Log=org.apache.commons.logging.impl.NoOpLog")
+public class TransformPipelineBenchmark
+{
+    protected static final String REPLY_QUEUE = "gengine.benchmark.transform.reply";
+
+    @Param({ "1024", "1048576", "16777216" })
+    public int contentSize;
+
+    @Param({ "noop", "copy" })
+    public WorkerType workerType;
+
+    @Param({ "file", "stream" })
+    public String handler;
+
+    private ObjectMapper mapper;
+    private FileContentReferenceHandlerImpl contentReferenceHandler;
+    private ContentReference sourceReference;
+    private ReplyMarshallingMessageProducer replyProducer;
+    private BaseContentTransformerComponent component;
+
+    /**
+     * Marshals replies as a broker endpoint would, then discards them
+     */
+    public static class ReplyMarshallingMessageProducer implements MessageProducer
+    {
+        private final ObjectMapper mapper;
+        private final LongAdder replyBytes = new LongAdder();
+
+        public ReplyMarshallingMessageProducer(ObjectMapper mapper)
+        {
+            this.mapper = mapper;
+        }
+
+        public long getReplyBytes()
+        {
+            return replyBytes.sum();
+        }
+
+        @Override
+        public void send(Object message) throws MessagingException
+        {
+            send(message, null, null);
+        }
+
+        @Override
+        public void send(Object message, Map<String, Object> headers) throws MessagingException
+        {
+            send(message, null, headers);
+        }
+
+        @Override
+        public void send(Object message, String queueName) throws MessagingException
+        {
+            send(message, queueName, null);
+        }
+
+        @Override
+        public void send(Object message, String queueName, Map<String, Object> headers) throws MessagingException
+        {
+            try
+            {
+                replyBytes.add(mapper.writeValueAsBytes(message).length);
+            }
+            catch (IOException e)
+            {
+                throw new MessagingException("Could not marshal reply", e);
+            }
+        }
+    }
+
+    /**
+     * A consumer's marshalled request, with its own target so that
+     * threads don't write to the same file
+     */
+    @State(Scope.Thread)
+    public static class ConsumerState
+    {
+        private ContentReference targetReference;
+        private byte[] marshalledRequest;
+
+        @Setup
+        public void setUp(TransformPipelineBenchmark benchmark) throws IOException
+        {
+            targetReference = benchmark.contentReferenceHandler.createContentReference(
+                    "pipeline-target.txt", FileMediaType.TEXT_PLAIN.getMediaType());
+            TransformationRequest request = new TransformationRequest(
+                    Arrays.asList(benchmark.sourceReference),
+                    Arrays.asList(targetReference),
+                    new TransformationOptionsImpl());
+            request.setReplyTo(REPLY_QUEUE);
+            marshalledRequest = benchmark.mapper.writeValueAsBytes(request);
+        }
+
+        @TearDown
+        public void tearDown(TransformPipelineBenchmark benchmark)
+        {
+            if (benchmark.contentReferenceHandler.isContentReferenceExists(targetReference))
+            {
+                benchmark.contentReferenceHandler.delete(targetReference);
+            }
+        }
+    }
+
+    @Setup
+    public void setUp()
+    {
+        mapper = ObjectMapperFactory.createInstance();
+        contentReferenceHandler = new TempFileContentReferenceHandlerImpl();
+
+        byte[] content = new byte[contentSize];
+        new Random(42).nextBytes(content);
+        sourceReference = contentReferenceHandler.createContentReference(
+                "pipeline-source.txt", FileMediaType.TEXT_PLAIN.getMediaType());
+        contentReferenceHandler.putInputStream(new ByteArrayInputStream(content), sourceReference);
+        sourceReference.setSize((long) contentSize);
+
+        ContentReferenceHandler workerContentReferenceHandler = "stream".equals(handler) ?
+                new StreamOnlyContentReferenceHandler(contentReferenceHandler) : contentReferenceHandler;
+        PipelineBenchmarkWorker worker = new PipelineBenchmarkWorker();
+        worker.setWorkerType(workerType);
+        worker.setSourceContentReferenceHandler(workerContentReferenceHandler);
+        worker.setTargetContentReferenceHandler(workerContentReferenceHandler);
+        worker.initialize();
+
+        replyProducer = new ReplyMarshallingMessageProducer(mapper);
+        component = new BaseContentTransformerComponent();
+        component.setWorker(worker);
+        component.setMessageProducer(replyProducer);
+        component.init();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        contentReferenceHandler.delete(sourceReference);
+    }
+
+    @Benchmark
+    public TransformationRequest transform(ConsumerState consumer) throws IOException
+    {
+        TransformationRequest request = mapper.readValue(consumer.marshalledRequest, TransformationRequest.class);
+        component.onReceive(request);
+        return request;
+    }
+
+}
@@ -0,0 +1,4 @@
+package org.gengine.benchmark.jmh.jmh_generated;
+public class MarshallingBenchmark_jmhType extends MarshallingBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.gengine.benchmark.jmh.jmh_generated;
+public class QpidJsonBodyBenchmark_jmhType extends QpidJsonBodyBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.gengine.benchmark.jmh.jmh_generated;
+public class TransformPipelineBenchmark_ConsumerState_jmhType extends TransformPipelineBenchmark_ConsumerState_jmhType_B3 {
+}
+
@@ -0,0 +1,366 @@
+package org.gengine.util;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * A bounded blocking queue which takes elements in priority order, highest first,
+ * with elements of equal priority taken in arrival order.
+ * <p>
+ * To prevent starvation an element's effective priority rises by one level for
+ * each <code>agingIntervalMs</code> it has waited.  As all waiting elements age at
+ * the same rate their relative order only depends on their priority and arrival
+ * time, so it's fixed on insertion and the queue remains a simple heap.
+ *
+ * @param <E>
+ */
+public class AgingPriorityBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>
+{
+    private final int capacity;
+    private final long agingIntervalNanos;
+    private final ToIntFunction<? super E> priorityFunction;
+
+    private final PriorityQueue<Entry<E>> heap;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private long sequence;
+
+    private static class Entry<E>
+    {
+        private final E element;
+        private final double rank;
+        private final long sequence;
+
+        private Entry(E element, double rank, long sequence)
+        {
+            this.element = element;
+            this.rank = rank;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * @param capacity the maximum number of elements
+     * @param agingIntervalMs the wait after which an element is treated as one
+     *        priority level higher, or 0 or less for no aging
+     * @param priorityFunction gets the priority of an element, higher first
+     */
+    public AgingPriorityBlockingQueue(int capacity, long agingIntervalMs, ToIntFunction<? super E> priorityFunction)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        if (priorityFunction == null)
+        {
+            throw new IllegalArgumentException("priorityFunction must not be null");
+        }
+        this.capacity = capacity;
+        this.agingIntervalNanos = agingIntervalMs > 0 ? TimeUnit.MILLISECONDS.toNanos(agingIntervalMs) : 0;
+        this.priorityFunction = priorityFunction;
+        this.heap = new PriorityQueue<Entry<E>>(Math.min(capacity, 64), new Comparator<Entry<E>>()
+        {
+            public int compare(Entry<E> entry1, Entry<E> entry2)
+            {
+                int result = Double.compare(entry2.rank, entry1.rank);
+                if (result == 0)
+                {
+                    result = Long.compare(entry1.sequence, entry2.sequence);
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * The rank is the effective priority the element would have at time zero,
+     * so that comparing ranks compares effective priorities at any later time.
+     * The monotonic clock is used so wall clock adjustments don't reorder elements.
+     */
+    private Entry<E> createEntry(E element)
+    {
+        double rank = priorityFunction.applyAsInt(element);
+        if (agingIntervalNanos > 0)
+        {
+            rank -= (double) System.nanoTime() / agingIntervalNanos;
+        }
+        return new Entry<E>(element, rank, sequence++);
+    }
+
+    private void enqueue(E element)
+    {
+        heap.add(createEntry(element));
+        notEmpty.signal();
+    }
+
+    private E dequeue()
+    {
+        E element = heap.poll().element;
+        notFull.signal();
+        return element;
+    }
+
+    @Override
+    public boolean offer(E element)
+    {
+        if (element == null)
+        {
+            throw new NullPointerException();
+        }
+        lock.lock();
+        try
+        {
+            if (heap.size() >= capacity)
+            {
+                return false;
+            }
+            enqueue(element);
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(E element) throws InterruptedException
+    {
+        if (element == null)
+        {
+            throw new NullPointerException();
+        }
+        lock.lockInterruptibly();
+        try
+        {
+            while (heap.size() >= capacity)
+            {
+                notFull.await();
+            }
+            enqueue(element);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        if (element == null)
+        {
+            throw new NullPointerException();
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try
+        {
+            while (heap.size() >= capacity)
+            {
+                if (nanos <= 0)
+                {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(element);
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException
+    {
+        lock.lockInterruptibly();
+        try
+        {
+            while (heap.isEmpty())
+            {
+                notEmpty.await();
+            }
+            return dequeue();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try
+        {
+            while (heap.isEmpty())
+            {
+                if (nanos <= 0)
+                {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll()
+    {
+        lock.lock();
+        try
+        {
+            return heap.isEmpty() ? null : dequeue();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E peek()
+    {
+        lock.lock();
+        try
+        {
+            Entry<E> entry = heap.peek();
+            return entry == null ? null : entry.element;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        lock.lock();
+        try
+        {
+            return heap.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity()
+    {
+        lock.lock();
+        try
+        {
+            return capacity - heap.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> collection)
+    {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> collection, int maxElements)
+    {
+        if (collection == this)
+        {
+            throw new IllegalArgumentException("Can not drain to self");
+        }
+        lock.lock();
+        try
+        {
+            int count = 0;
+            while (count < maxElements && !heap.isEmpty())
+            {
+                collection.add(heap.poll().element);
+                count++;
+            }
+            if (count > 0)
+            {
+                notFull.signalAll();
+            }
+            return count;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object element)
+    {
+        lock.lock();
+        try
+        {
+            Iterator<Entry<E>> iterator = heap.iterator();
+            while (iterator.hasNext())
+            {
+                if (iterator.next().element.equals(element))
+                {
+                    iterator.remove();
+                    notFull.signal();
+                    return true;
+                }
+            }
+            return false;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a read only iterator over a snapshot of the elements in no particular order
+     */
+    @Override
+    public Iterator<E> iterator()
+    {
+        lock.lock();
+        try
+        {
+            List<E> snapshot = new ArrayList<E>(heap.size());
+            for (Entry<E> entry : heap)
+            {
+                snapshot.add(entry.element);
+            }
+            return Collections.unmodifiableList(snapshot).iterator();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+}
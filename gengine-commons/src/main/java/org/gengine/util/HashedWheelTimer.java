@@ -0,0 +1,382 @@
+package org.gengine.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A timer which schedules large numbers of approximate timeouts with constant
+ * cost per timeout, suited to expiring pending requests.
+ * <p>
+ * Timeouts are hashed into a fixed size wheel of buckets, each covering one tick.
+ * A single worker thread advances the wheel once per tick and only visits the
+ * timeouts in the current bucket, so adding, cancelling, and expiring a timeout
+ * are all O(1) regardless of how many are pending.  Cancelled timeouts are
+ * removed from their bucket on the next tick rather than waiting for their deadline,
+ * so memory is proportional to the number of live timeouts.
+ * <p>
+ * Timeouts fire up to one tick late.  Tasks run on the worker thread and should
+ * be short, i.e. completing a future.
+ *
+ */
+public class HashedWheelTimer
+{
+    private static final Log logger = LogFactory.getLog(HashedWheelTimer.class);
+
+    private static final AtomicInteger timerCount = new AtomicInteger();
+
+    private static final int STATE_INIT = 0;
+    private static final int STATE_STARTED = 1;
+    private static final int STATE_STOPPED = 2;
+
+    private final long tickDurationNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Thread workerThread;
+    private final AtomicInteger state = new AtomicInteger(STATE_INIT);
+    private final Queue<TimeoutImpl> pendingTimeouts = new ConcurrentLinkedQueue<TimeoutImpl>();
+    private final Queue<TimeoutImpl> cancelledTimeouts = new ConcurrentLinkedQueue<TimeoutImpl>();
+    private final AtomicInteger liveTimeoutCount = new AtomicInteger();
+
+    private volatile long startTime;
+
+    /**
+     * A handle on a scheduled task
+     */
+    public interface Timeout
+    {
+        /**
+         * Cancels the task if it hasn't already run
+         *
+         * @return true if the task was cancelled by this call
+         */
+        public boolean cancel();
+
+        public boolean isCancelled();
+
+        public boolean isExpired();
+    }
+
+    /**
+     * Creates a timer with the given tick duration and number of buckets in the wheel,
+     * which is rounded up to a power of two.  Timeouts longer than one revolution of
+     * the wheel are supported, they're simply skipped until their final revolution.
+     *
+     * @param tickDuration
+     * @param unit
+     * @param wheelSize
+     */
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int wheelSize)
+    {
+        if (tickDuration <= 0)
+        {
+            throw new IllegalArgumentException("tickDuration must be greater than 0");
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 30))
+        {
+            throw new IllegalArgumentException("wheelSize must be between 1 and 2^30");
+        }
+        int normalizedWheelSize = 1;
+        while (normalizedWheelSize < wheelSize)
+        {
+            normalizedWheelSize <<= 1;
+        }
+        this.wheel = new Bucket[normalizedWheelSize];
+        for (int i = 0; i < wheel.length; i++)
+        {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheel.length - 1;
+        this.tickDurationNanos = unit.toNanos(tickDuration);
+
+        this.workerThread = new Thread(new Worker(), "gengine-timer-" + timerCount.incrementAndGet());
+        this.workerThread.setDaemon(true);
+    }
+
+    /**
+     * Schedules the given task to run once after the given delay,
+     * starting the timer if needed
+     *
+     * @param task
+     * @param delay
+     * @param unit
+     * @return the timeout handle
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit)
+    {
+        if (task == null)
+        {
+            throw new IllegalArgumentException("task must not be null");
+        }
+        start();
+        long deadline = System.nanoTime() + unit.toNanos(delay) - startTime;
+        TimeoutImpl timeout = new TimeoutImpl(task, deadline);
+        liveTimeoutCount.incrementAndGet();
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Gets the number of timeouts which have neither expired nor been cancelled
+     *
+     * @return the pending timeout count
+     */
+    public int getPendingTimeoutCount()
+    {
+        return liveTimeoutCount.get();
+    }
+
+    /**
+     * Starts the worker thread, called automatically by {@link #newTimeout(Runnable, long, TimeUnit)}
+     */
+    public void start()
+    {
+        if (state.get() == STATE_STARTED)
+        {
+            return;
+        }
+        synchronized (this)
+        {
+            if (state.get() == STATE_INIT)
+            {
+                // Set before the state so that callers seeing it started see the start time
+                startTime = System.nanoTime();
+                state.set(STATE_STARTED);
+                workerThread.start();
+            }
+            else if (state.get() == STATE_STOPPED)
+            {
+                throw new IllegalStateException("Timer has been stopped");
+            }
+        }
+    }
+
+    /**
+     * Stops the worker thread, pending timeouts will not run
+     */
+    public void stop()
+    {
+        if (state.getAndSet(STATE_STOPPED) == STATE_STARTED)
+        {
+            workerThread.interrupt();
+        }
+    }
+
+    private class Worker implements Runnable
+    {
+        private long tick;
+
+        public void run()
+        {
+            while (state.get() == STATE_STARTED)
+            {
+                long now = waitForNextTick();
+                if (now < 0)
+                {
+                    break;
+                }
+                removeCancelledTimeouts();
+                transferPendingTimeouts();
+                wheel[(int) (tick & mask)].expireTimeouts(now);
+                tick++;
+            }
+        }
+
+        /**
+         * Sleeps until the end of the current tick
+         *
+         * @return the time relative to the start time, or -1 if stopped
+         */
+        private long waitForNextTick()
+        {
+            long deadline = tickDurationNanos * (tick + 1);
+            while (true)
+            {
+                long now = System.nanoTime() - startTime;
+                long sleepMs = (deadline - now + 999999) / 1000000;
+                if (sleepMs <= 0)
+                {
+                    return now;
+                }
+                try
+                {
+                    Thread.sleep(sleepMs);
+                }
+                catch (InterruptedException e)
+                {
+                    if (state.get() == STATE_STOPPED)
+                    {
+                        return -1;
+                    }
+                }
+            }
+        }
+
+        private void transferPendingTimeouts()
+        {
+            TimeoutImpl timeout;
+            while ((timeout = pendingTimeouts.poll()) != null)
+            {
+                if (timeout.isCancelled())
+                {
+                    continue;
+                }
+                long calculatedTick = timeout.deadline / tickDurationNanos;
+                timeout.remainingRounds = (calculatedTick - tick) / wheel.length;
+                // Timeouts already due go in the current bucket
+                long ticks = Math.max(calculatedTick, tick);
+                wheel[(int) (ticks & mask)].add(timeout);
+            }
+        }
+
+        private void removeCancelledTimeouts()
+        {
+            TimeoutImpl timeout;
+            while ((timeout = cancelledTimeouts.poll()) != null)
+            {
+                if (timeout.bucket != null)
+                {
+                    timeout.bucket.remove(timeout);
+                }
+            }
+        }
+    }
+
+    /**
+     * A doubly linked list of timeouts, only accessed by the worker thread
+     */
+    private static class Bucket
+    {
+        private TimeoutImpl head;
+        private TimeoutImpl tail;
+
+        private void add(TimeoutImpl timeout)
+        {
+            timeout.bucket = this;
+            if (head == null)
+            {
+                head = tail = timeout;
+            }
+            else
+            {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private TimeoutImpl remove(TimeoutImpl timeout)
+        {
+            TimeoutImpl next = timeout.next;
+            if (timeout.prev != null)
+            {
+                timeout.prev.next = next;
+            }
+            if (timeout.next != null)
+            {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == head)
+            {
+                head = next;
+            }
+            if (timeout == tail)
+            {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+
+        private void expireTimeouts(long now)
+        {
+            TimeoutImpl timeout = head;
+            while (timeout != null)
+            {
+                if (timeout.isCancelled())
+                {
+                    timeout = remove(timeout);
+                }
+                else if (timeout.remainingRounds <= 0 && timeout.deadline <= now)
+                {
+                    TimeoutImpl next = remove(timeout);
+                    timeout.expire();
+                    timeout = next;
+                }
+                else
+                {
+                    timeout.remainingRounds--;
+                    timeout = timeout.next;
+                }
+            }
+        }
+    }
+
+    private class TimeoutImpl implements Timeout
+    {
+        private static final int STATE_PENDING = 0;
+        private static final int STATE_CANCELLED = 1;
+        private static final int STATE_EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger timeoutState = new AtomicInteger(STATE_PENDING);
+
+        // Only accessed by the worker thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private TimeoutImpl next;
+        private TimeoutImpl prev;
+
+        private TimeoutImpl(Runnable task, long deadline)
+        {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public boolean cancel()
+        {
+            if (!timeoutState.compareAndSet(STATE_PENDING, STATE_CANCELLED))
+            {
+                return false;
+            }
+            liveTimeoutCount.decrementAndGet();
+            cancelledTimeouts.add(this);
+            return true;
+        }
+
+        public boolean isCancelled()
+        {
+            return timeoutState.get() == STATE_CANCELLED;
+        }
+
+        public boolean isExpired()
+        {
+            return timeoutState.get() == STATE_EXPIRED;
+        }
+
+        private void expire()
+        {
+            if (!timeoutState.compareAndSet(STATE_PENDING, STATE_EXPIRED))
+            {
+                return;
+            }
+            liveTimeoutCount.decrementAndGet();
+            try
+            {
+                task.run();
+            }
+            catch (Throwable e)
+            {
+                logger.warn("Timeout task threw an exception: " + e.getMessage(), e);
+            }
+        }
+    }
+
+}
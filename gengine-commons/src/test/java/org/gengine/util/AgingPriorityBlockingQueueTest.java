@@ -0,0 +1,84 @@
+package org.gengine.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+import org.junit.Test;
+
+public class AgingPriorityBlockingQueueTest
+{
+    private static final ToIntFunction<Job> JOB_PRIORITY = new ToIntFunction<Job>()
+    {
+        public int applyAsInt(Job job)
+        {
+            return job.priority;
+        }
+    };
+
+    private static class Job
+    {
+        private final String name;
+        private final int priority;
+
+        private Job(String name, int priority)
+        {
+            this.name = name;
+            this.priority = priority;
+        }
+    }
+
+    @Test
+    public void testTakesHighestPriorityFirst() throws InterruptedException
+    {
+        AgingPriorityBlockingQueue<Job> queue = new AgingPriorityBlockingQueue<Job>(10, 0, JOB_PRIORITY);
+        queue.put(new Job("bulk1", 1));
+        queue.put(new Job("interactive", 9));
+        queue.put(new Job("bulk2", 1));
+        queue.put(new Job("normal", 4));
+
+        assertEquals("interactive", queue.take().name);
+        assertEquals("normal", queue.take().name);
+        assertEquals("bulk1", queue.take().name);
+        assertEquals("bulk2", queue.take().name);
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testWaitingElementsAge() throws InterruptedException
+    {
+        AgingPriorityBlockingQueue<Job> queue = new AgingPriorityBlockingQueue<Job>(10, 10, JOB_PRIORITY);
+        queue.put(new Job("bulk", 1));
+        Thread.sleep(100);
+        queue.put(new Job("interactive", 4));
+
+        // The bulk job has waited long enough to have overtaken the later higher priority job
+        assertEquals("bulk", queue.take().name);
+        assertEquals("interactive", queue.take().name);
+    }
+
+    @Test
+    public void testBounded() throws InterruptedException
+    {
+        AgingPriorityBlockingQueue<Job> queue = new AgingPriorityBlockingQueue<Job>(2, 0, JOB_PRIORITY);
+        assertTrue(queue.offer(new Job("1", 1)));
+        assertTrue(queue.offer(new Job("2", 1)));
+        assertFalse(queue.offer(new Job("3", 9)));
+        assertFalse(queue.offer(new Job("3", 9), 10, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.remainingCapacity());
+
+        queue.take();
+        assertTrue(queue.offer(new Job("3", 9)));
+        assertEquals("3", queue.peek().name);
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void testPollTimesOutWhenEmpty() throws InterruptedException
+    {
+        AgingPriorityBlockingQueue<Job> queue = new AgingPriorityBlockingQueue<Job>(2, 0, JOB_PRIORITY);
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+}
@@ -0,0 +1,116 @@
+package org.gengine.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gengine.util.HashedWheelTimer.Timeout;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test class for {@link HashedWheelTimer}.
+ */
+public class HashedWheelTimerTest
+{
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp()
+    {
+        timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 8);
+    }
+
+    @After
+    public void tearDown()
+    {
+        timer.stop();
+    }
+
+    @Test
+    public void testTimeoutExpires() throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        Timeout timeout = timer.newTimeout(new Runnable()
+        {
+            public void run()
+            {
+                latch.countDown();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+        assertTrue(timeout.isExpired());
+        assertEquals(0, timer.getPendingTimeoutCount());
+    }
+
+    @Test
+    public void testTimeoutLongerThanWheelRevolution() throws Exception
+    {
+        // 8 buckets of 10ms, so this needs more than two revolutions
+        final CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        timer.newTimeout(new Runnable()
+        {
+            public void run()
+            {
+                latch.countDown();
+            }
+        }, 200, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+    }
+
+    @Test
+    public void testCancelledTimeoutDoesNotRun() throws Exception
+    {
+        final AtomicInteger runCount = new AtomicInteger();
+        Timeout timeout = timer.newTimeout(new Runnable()
+        {
+            public void run()
+            {
+                runCount.incrementAndGet();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertEquals(0, timer.getPendingTimeoutCount());
+
+        Thread.sleep(150);
+        assertEquals(0, runCount.get());
+        assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    public void testManyTimeouts() throws Exception
+    {
+        int count = 100000;
+        final CountDownLatch latch = new CountDownLatch(count / 2);
+        Runnable task = new Runnable()
+        {
+            public void run()
+            {
+                latch.countDown();
+            }
+        };
+        for (int i = 0; i < count; i++)
+        {
+            Timeout timeout = timer.newTimeout(task, 20 + (i % 50), TimeUnit.MILLISECONDS);
+            if (i % 2 == 0)
+            {
+                timeout.cancel();
+            }
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(0, timer.getPendingTimeoutCount());
+    }
+
+}
@@ -1,11 +1,24 @@
 package org.gengine.content.hash;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.gengine.content.AbstractContentWorker;
 import org.gengine.content.ContentIOException;
 import org.gengine.content.ContentReference;
@@ -14,10 +27,22 @@ import org.gengine.content.ContentWorkResult;
 /**
  * Abstract hash node worker which uses a content reference handler to convert the
  * content reference into a usable input stream for the actual implementation.
+ * <p>
+ * The sources of a request may be hashed in parallel, see {@link #setMaxParallelism(int)}.
+ * By default a source which can't be hashed fails the whole request, see
+ * {@link #setReportSourceErrors(boolean)}.
  *
  */
 public abstract class AbstractContentHashWorker extends AbstractContentWorker implements ContentHashWorker
 {
+    private static final Log logger = LogFactory.getLog(AbstractContentHashWorker.class);
+
+    public static final int DEFAULT_MAX_PARALLELISM = 1;
+
+    private int maxParallelism = DEFAULT_MAX_PARALLELISM;
+    private boolean reportSourceErrors = false;
+    private volatile ExecutorService executorService;
+    private boolean isExecutorServiceOwned = false;
 
     @Override
     public void initialize()
@@ -29,29 +54,317 @@ public abstract class AbstractContentHashWorker extends AbstractContentWorker im
         }
     }
 
+    /**
+     * Hashes a single source, returning the details of its result
+     */
+    protected interface SourceHasher
+    {
+        public Map<String, Object> generateHash(ContentReference source)
+                throws ContentIOException, InterruptedException, ContentHashException;
+    }
+
+    /**
+     * Sets the maximum number of sources of a request hashed at once.  Defaults to 1,
+     * hashing sources one after another on the calling thread.
+     * <p>
+     * When greater than 1 sources are hashed on the executor service, overlapping
+     * the fetching and digesting of sources.
+     *
+     * @param maxParallelism
+     */
+    public void setMaxParallelism(int maxParallelism)
+    {
+        if (maxParallelism < 1)
+        {
+            throw new IllegalArgumentException("maxParallelism must be at least 1");
+        }
+        this.maxParallelism = maxParallelism;
+    }
+
+    /**
+     * Sets whether a source which can't be hashed is reported by an
+     * {@link ContentHashWorker#RESULT_DETAIL_ERROR} detail in its result, letting the
+     * other sources of the request complete.  Defaults to false, where the first
+     * failure is thrown and fails the whole request.
+     *
+     * @param reportSourceErrors
+     */
+    public void setReportSourceErrors(boolean reportSourceErrors)
+    {
+        this.reportSourceErrors = reportSourceErrors;
+    }
+
+    /**
+     * Sets the executor used to hash sources in parallel, defaulting to a pool
+     * of <code>maxParallelism</code> daemon threads created on first use
+     *
+     * @param executorService
+     */
+    public void setExecutorService(ExecutorService executorService)
+    {
+        this.executorService = executorService;
+    }
+
+    protected ExecutorService getExecutorService()
+    {
+        if (executorService == null)
+        {
+            synchronized (this)
+            {
+                if (executorService == null)
+                {
+                    final AtomicInteger threadCount = new AtomicInteger();
+                    executorService = Executors.newFixedThreadPool(maxParallelism, new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable runnable)
+                        {
+                            Thread thread = new Thread(runnable, "gengine-hash-worker-" + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                    isExecutorServiceOwned = true;
+                }
+            }
+        }
+        return executorService;
+    }
+
+    /**
+     * Shuts down the default executor if one was created
+     */
+    public void shutdown()
+    {
+        if (isExecutorServiceOwned && executorService != null)
+        {
+            executorService.shutdownNow();
+        }
+    }
+
     @Override
     public List<ContentWorkResult> generateHashes(
             List<ContentReference> sources,
-            String hashAlgorithm) throws ContentIOException, InterruptedException, ContentHashException
+            final String hashAlgorithm) throws ContentIOException, InterruptedException, ContentHashException
+    {
+        return generateHashes(sources, new SourceHasher()
+        {
+            public Map<String, Object> generateHash(ContentReference source)
+                    throws ContentIOException, InterruptedException, ContentHashException
+            {
+                String value = generateHashInternal(
+                        sourceContentReferenceHandler.getInputStream(source, true),
+                        hashAlgorithm);
+                Map<String, Object> resultDetails = new HashMap<String, Object>();
+                resultDetails.put(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUE, value);
+                return resultDetails;
+            }
+        });
+    }
+
+    @Override
+    public List<ContentWorkResult> generateHashes(
+            List<ContentReference> sources,
+            final Set<String> hashAlgorithms) throws ContentIOException, InterruptedException, ContentHashException
+    {
+        if (hashAlgorithms == null || hashAlgorithms.isEmpty())
+        {
+            throw new IllegalArgumentException("hashAlgorithms must not be empty");
+        }
+        return generateHashes(sources, new SourceHasher()
+        {
+            public Map<String, Object> generateHash(ContentReference source)
+                    throws ContentIOException, InterruptedException, ContentHashException
+            {
+                Map<String, String> values = generateHashesInternal(
+                        sourceContentReferenceHandler.getInputStream(source, true),
+                        hashAlgorithms);
+                Map<String, Object> resultDetails = new HashMap<String, Object>();
+                resultDetails.put(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUE,
+                        values.get(hashAlgorithms.iterator().next()));
+                resultDetails.put(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUES, values);
+                return resultDetails;
+            }
+        });
+    }
+
+    /**
+     * Hashes the given sources with the given hasher, in parallel if
+     * <code>maxParallelism</code> allows
+     *
+     * @param sources
+     * @param hasher
+     * @return the results in the order of the sources
+     * @throws ContentIOException
+     * @throws InterruptedException
+     * @throws ContentHashException
+     */
+    protected List<ContentWorkResult> generateHashes(
+            List<ContentReference> sources,
+            SourceHasher hasher) throws ContentIOException, InterruptedException, ContentHashException
     {
         List<ContentWorkResult> results = new ArrayList<ContentWorkResult>();
         if (sources == null || sources.size() == 0)
         {
             return results;
         }
+        if (maxParallelism > 1 && sources.size() > 1)
+        {
+            return generateHashesInParallel(sources, hasher);
+        }
         for (ContentReference source : sources)
         {
-            String value = generateHashInternal(
-                        sourceContentReferenceHandler.getInputStream(source, true),
-                        hashAlgorithm);
-            Map<String, Object> resultDetails = new HashMap<String, Object>();
-            resultDetails.put(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUE, value);
-            ContentWorkResult result = new ContentWorkResult(source, resultDetails);
-            results.add(result);
+            if (!reportSourceErrors)
+            {
+                results.add(new ContentWorkResult(source, hasher.generateHash(source)));
+                continue;
+            }
+            results.add(generateResult(source, hasher));
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException("Interrupted while generating hashes");
+            }
         }
         return results;
     }
 
+    /**
+     * Hashes the given sources on up to <code>maxParallelism</code> tasks of the executor
+     * service, each taking the next unhashed source until none are left, so a request
+     * never occupies more than that many threads.  Unless source errors are reported
+     * the first failure cancels the remaining tasks and is thrown.
+     */
+    protected List<ContentWorkResult> generateHashesInParallel(
+            final List<ContentReference> sources,
+            final SourceHasher hasher) throws ContentIOException, InterruptedException, ContentHashException
+    {
+        final ContentWorkResult[] results = new ContentWorkResult[sources.size()];
+        final AtomicInteger nextIndex = new AtomicInteger();
+        int taskCount = Math.min(maxParallelism, sources.size());
+        List<Future<?>> futures = new ArrayList<Future<?>>(taskCount);
+        for (int i = 0; i < taskCount; i++)
+        {
+            futures.add(getExecutorService().submit(new Callable<Void>()
+            {
+                public Void call() throws Exception
+                {
+                    int index;
+                    while ((index = nextIndex.getAndIncrement()) < results.length)
+                    {
+                        ContentReference source = sources.get(index);
+                        results[index] = reportSourceErrors ? generateResult(source, hasher) :
+                            new ContentWorkResult(source, hasher.generateHash(source));
+                        if (Thread.currentThread().isInterrupted())
+                        {
+                            return null;
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        try
+        {
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            for (Future<?> future : futures)
+            {
+                future.cancel(true);
+            }
+            throw e;
+        }
+        catch (ExecutionException e)
+        {
+            for (Future<?> future : futures)
+            {
+                future.cancel(true);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof ContentHashException)
+            {
+                throw (ContentHashException) cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new ContentHashException("Could not generate hashes", cause);
+        }
+        return new ArrayList<ContentWorkResult>(Arrays.asList(results));
+    }
+
+    /**
+     * Hashes a single source, reporting any failure in the result's details
+     */
+    private ContentWorkResult generateResult(ContentReference source, SourceHasher hasher)
+    {
+        try
+        {
+            return new ContentWorkResult(source, hasher.generateHash(source));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return createErrorResult(source, e);
+        }
+        catch (Exception e)
+        {
+            logger.warn("Could not generate hash for " + source.getUri() + ": " + e.getMessage());
+            return createErrorResult(source, e);
+        }
+    }
+
+    protected ContentWorkResult createErrorResult(ContentReference source, Exception e)
+    {
+        Map<String, Object> resultDetails = new HashMap<String, Object>();
+        resultDetails.put(ContentHashWorker.RESULT_DETAIL_ERROR,
+                e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        return new ContentWorkResult(source, resultDetails);
+    }
+
+    /**
+     * Computes the hash values for the given input stream using each of the given
+     * algorithms.
+     * <p>
+     * This implementation only supports a single algorithm, implementations which can
+     * compute several from one read of the stream should override it.
+     *
+     * @param source
+     * @param hashAlgorithms
+     * @return the hex encoded hash values keyed by algorithm, in the order given
+     * @throws ContentIOException
+     * @throws InterruptedException
+     * @throws ContentHashException
+     */
+    public Map<String, String> generateHashesInternal(
+            InputStream source,
+            Set<String> hashAlgorithms) throws ContentIOException, InterruptedException, ContentHashException
+    {
+        if (hashAlgorithms.size() != 1)
+        {
+            try
+            {
+                source.close();
+            }
+            catch (IOException e)
+            {
+            }
+            throw new ContentHashException(getClass().getSimpleName() + " does not support multiple hash algorithms");
+        }
+        String hashAlgorithm = hashAlgorithms.iterator().next();
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        values.put(hashAlgorithm, generateHashInternal(source, hashAlgorithm));
+        return values;
+    }
+
     /**
      * Computes the hash value for the given input stream using the given algorithm
      *
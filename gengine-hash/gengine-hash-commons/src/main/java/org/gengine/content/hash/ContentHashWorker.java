@@ -1,6 +1,11 @@
 package org.gengine.content.hash;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.gengine.content.ContentIOException;
 import org.gengine.content.ContentReference;
@@ -18,6 +23,8 @@ public interface ContentHashWorker extends ContentWorker
     public static final String HASH_ALGORITHM_SHA_512 = "SHA-512";
 
     public static final String RESULT_DETAIL_HEX_ENCODED_VALUE = "HEX_ENCODED_VALUE";
+    public static final String RESULT_DETAIL_HEX_ENCODED_VALUES = "HEX_ENCODED_VALUES";
+    public static final String RESULT_DETAIL_ERROR = "ERROR";
 
     /**
      * Generates a hash value for the given content reference using the given algorithm
@@ -31,6 +38,65 @@ public interface ContentHashWorker extends ContentWorker
             List<ContentReference> sources,
             String hashAlgorithm) throws ContentIOException, InterruptedException, ContentHashException;
 
+    /**
+     * Generates hash values for the given content references using each of the given
+     * algorithms.
+     * <p>
+     * Each result's {@link #RESULT_DETAIL_HEX_ENCODED_VALUES} detail maps the algorithms
+     * to their values and {@link #RESULT_DETAIL_HEX_ENCODED_VALUE} holds the value of the
+     * first algorithm.
+     * <p>
+     * The default implementation calls {@link #generateHashes(List, String)} once per
+     * algorithm, implementations which can compute several from one read of each
+     * source override it.
+     *
+     * @param sources
+     * @param hashAlgorithms
+     * @return the results with hex encoded hash values
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    public default List<ContentWorkResult> generateHashes(
+            List<ContentReference> sources,
+            Set<String> hashAlgorithms) throws ContentIOException, InterruptedException, ContentHashException
+    {
+        if (hashAlgorithms == null || hashAlgorithms.isEmpty())
+        {
+            throw new IllegalArgumentException("hashAlgorithms must not be empty");
+        }
+        List<ContentWorkResult> results = null;
+        for (String hashAlgorithm : hashAlgorithms)
+        {
+            List<ContentWorkResult> algorithmResults = generateHashes(sources, hashAlgorithm);
+            if (results == null)
+            {
+                // The first algorithm's results give the single value detail
+                results = new ArrayList<ContentWorkResult>(algorithmResults.size());
+                for (ContentWorkResult algorithmResult : algorithmResults)
+                {
+                    Map<String, Object> details = new HashMap<String, Object>(algorithmResult.getDetails());
+                    details.put(RESULT_DETAIL_HEX_ENCODED_VALUES, new LinkedHashMap<String, String>());
+                    results.add(new ContentWorkResult(algorithmResult.getContentReference(), details));
+                }
+            }
+            for (int i = 0; i < algorithmResults.size(); i++)
+            {
+                Map<String, Object> details = results.get(i).getDetails();
+                Map<String, Object> algorithmDetails = algorithmResults.get(i).getDetails();
+                if (algorithmDetails.containsKey(RESULT_DETAIL_ERROR))
+                {
+                    details.put(RESULT_DETAIL_ERROR, algorithmDetails.get(RESULT_DETAIL_ERROR));
+                }
+                else
+                {
+                    ((Map<String, String>) details.get(RESULT_DETAIL_HEX_ENCODED_VALUES)).put(
+                            hashAlgorithm, (String) algorithmDetails.get(RESULT_DETAIL_HEX_ENCODED_VALUE));
+                }
+            }
+        }
+        return results;
+    }
+
     /**
      * Determines whether or not the given hash algorithm is supported
      * by the implementation.
@@ -0,0 +1,107 @@
+package org.gengine.content.hash;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.gengine.content.ContentIOException;
+import org.gengine.content.ContentReference;
+import org.gengine.content.ContentWorkResult;
+import org.junit.Test;
+
+/**
+ * Tests the default multiple algorithm implementation of {@link ContentHashWorker}
+ */
+public class ContentHashWorkerTest
+{
+
+    /**
+     * Worker which only implements single algorithm hashing, with values made of
+     * the algorithm and source URI and an error for sources named "missing"
+     */
+    private static class SingleAlgorithmHashWorker implements ContentHashWorker
+    {
+        private int callCount = 0;
+
+        public boolean isAvailable()
+        {
+            return true;
+        }
+
+        public String getVersionString()
+        {
+            return "1.0";
+        }
+
+        public String getVersionDetailsString()
+        {
+            return "1.0";
+        }
+
+        public List<ContentWorkResult> generateHashes(List<ContentReference> sources, String hashAlgorithm)
+                throws ContentIOException, InterruptedException, ContentHashException
+        {
+            callCount++;
+            List<ContentWorkResult> results = new ArrayList<ContentWorkResult>();
+            for (ContentReference source : sources)
+            {
+                Map<String, Object> details = new HashMap<String, Object>();
+                if (source.getUri().equals("missing"))
+                {
+                    details.put(RESULT_DETAIL_ERROR, "not found");
+                }
+                else
+                {
+                    details.put(RESULT_DETAIL_HEX_ENCODED_VALUE, hashAlgorithm + ":" + source.getUri());
+                }
+                results.add(new ContentWorkResult(source, details));
+            }
+            return results;
+        }
+
+        public boolean isAlgorithmSupported(String hashAlgorithm)
+        {
+            return true;
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDefaultMultipleAlgorithms() throws Exception
+    {
+        SingleAlgorithmHashWorker worker = new SingleAlgorithmHashWorker();
+        List<ContentReference> sources = Arrays.asList(
+                new ContentReference("a", "text/plain"),
+                new ContentReference("missing", "text/plain"));
+
+        List<ContentWorkResult> results = worker.generateHashes(sources, new LinkedHashSet<String>(Arrays.asList(
+                ContentHashWorker.HASH_ALGORITHM_SHA_256, ContentHashWorker.HASH_ALGORITHM_MD5)));
+
+        assertEquals(2, worker.callCount);
+        assertEquals(2, results.size());
+        Map<String, Object> details = results.get(0).getDetails();
+        assertSame(sources.get(0), results.get(0).getContentReference());
+        assertEquals("SHA-256:a", details.get(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUE));
+        Map<String, String> values = (Map<String, String>)
+                details.get(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUES);
+        assertEquals(Arrays.asList("SHA-256", "MD5"), new ArrayList<String>(values.keySet()));
+        assertEquals("MD5:a", values.get(ContentHashWorker.HASH_ALGORITHM_MD5));
+
+        details = results.get(1).getDetails();
+        assertEquals("not found", details.get(ContentHashWorker.RESULT_DETAIL_ERROR));
+        assertTrue(((Map<String, String>) details.get(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUES)).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDefaultNoAlgorithms() throws Exception
+    {
+        new SingleAlgorithmHashWorker().generateHashes(
+                new ArrayList<ContentReference>(), new LinkedHashSet<String>());
+    }
+
+}
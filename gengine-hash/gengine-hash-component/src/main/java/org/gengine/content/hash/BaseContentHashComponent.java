@@ -1,6 +1,8 @@
 package org.gengine.content.hash;
 
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -22,16 +24,31 @@ public class BaseContentHashComponent extends AbstractComponent<ContentHashWorke
     protected void onReceiveImpl(Object message)
     {
         HashRequest request = (HashRequest) message;
+        if (!registerRequest(request))
+        {
+            return;
+        }
         if (logger.isDebugEnabled())
         {
             logger.info("Processing hash requestId=" + request.getRequestId());
         }
+        boolean isFinished = false;
         try
         {
 
-            List<ContentWorkResult> results = worker.generateHashes(
-                    request.getSourceContentReferences(),
-                    request.getHashAlgorithm());
+            List<ContentWorkResult> results;
+            if (request.getHashAlgorithms() == null || request.getHashAlgorithms().isEmpty())
+            {
+                results = worker.generateHashes(
+                        request.getSourceContentReferences(),
+                        request.getHashAlgorithm());
+            }
+            else
+            {
+                results = worker.generateHashes(
+                        request.getSourceContentReferences(),
+                        getHashAlgorithms(request));
+            }
 
             HashReply reply = new HashReply(request);
             reply.setResults(results);
@@ -41,12 +58,43 @@ public class BaseContentHashComponent extends AbstractComponent<ContentHashWorke
                 logger.debug("Sending reply");
             }
             messageProducer.send(reply, request.getReplyTo());
+            isFinished = true;
+            completeRequest(request, reply);
         }
         catch (Exception e)
         {
             logger.error(e.getMessage(), e);
+            if (!isFinished)
+            {
+                isFinished = true;
+                failRequest(request, null);
+            }
             // TODO send error reply
         }
+        finally
+        {
+            if (!isFinished)
+            {
+                releaseRequest(request);
+            }
+        }
+    }
+
+    /**
+     * Gets the request's <code>hashAlgorithm</code>, if any, followed by its <code>hashAlgorithms</code>
+     *
+     * @param request
+     * @return the algorithms to compute
+     */
+    protected Set<String> getHashAlgorithms(HashRequest request)
+    {
+        Set<String> hashAlgorithms = new LinkedHashSet<String>();
+        if (request.getHashAlgorithm() != null)
+        {
+            hashAlgorithms.add(request.getHashAlgorithm());
+        }
+        hashAlgorithms.addAll(request.getHashAlgorithms());
+        return hashAlgorithms;
     }
 
     public Class<?> getConsumingMessageBodyClass()
@@ -1,6 +1,8 @@
 package org.gengine.content.hash;
 
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.gengine.content.AbstractContentRequest;
 import org.gengine.content.ContentReference;
@@ -13,6 +15,7 @@ import org.gengine.messaging.Request;
 public class HashRequest extends AbstractContentRequest implements Request<HashReply>
 {
     private String hashAlgorithm;
+    private Set<String> hashAlgorithms;
 
     public HashRequest()
     {
@@ -26,6 +29,13 @@ public class HashRequest extends AbstractContentRequest implements Request<HashR
         this.hashAlgorithm = hashAlgorithm;
     }
 
+    public HashRequest(List<ContentReference> sourceContentReferences, Set<String> hashAlgorithms)
+    {
+        super();
+        setSourceContentReferences(sourceContentReferences);
+        setHashAlgorithms(hashAlgorithms);
+    }
+
     /**
      * Gets the hash algorithm to be used
      *
@@ -46,6 +56,27 @@ public class HashRequest extends AbstractContentRequest implements Request<HashR
         this.hashAlgorithm = hashAlgorithm;
     }
 
+    /**
+     * Gets the hash algorithms to be used, all computed from a single read
+     * of each source
+     *
+     * @return the hash algorithms, or null if only <code>hashAlgorithm</code> is used
+     */
+    public Set<String> getHashAlgorithms()
+    {
+        return hashAlgorithms;
+    }
+
+    /**
+     * Sets the hash algorithms to be used, in addition to any <code>hashAlgorithm</code>
+     *
+     * @param hashAlgorithms
+     */
+    public void setHashAlgorithms(Set<String> hashAlgorithms)
+    {
+        this.hashAlgorithms = hashAlgorithms == null ? null : new LinkedHashSet<String>(hashAlgorithms);
+    }
+
     @Override
     public Class<HashReply> getReplyClass()
     {
@@ -0,0 +1,19 @@
+package org.gengine.content.hash;
+
+import org.gengine.messaging.jackson.TypeIdProvider;
+import org.gengine.messaging.jackson.TypeIdRegistry;
+
+/**
+ * Registers type ids for hash messages
+ *
+ */
+public class HashTypeIdProvider implements TypeIdProvider
+{
+
+    public void registerTypeIds(TypeIdRegistry registry)
+    {
+        registry.register("HashRequest", HashRequest.class);
+        registry.register("HashReply", HashReply.class);
+    }
+
+}
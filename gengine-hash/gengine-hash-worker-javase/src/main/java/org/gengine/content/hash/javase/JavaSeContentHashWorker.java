@@ -5,13 +5,19 @@ import java.io.InputStream;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import org.gengine.content.ContentIOException;
 import org.gengine.content.hash.AbstractContentHashWorker;
 import org.gengine.content.hash.ContentHashException;
 
 /**
- * A Java SE implementation of a content hash node worker
+ * A Java SE implementation of a content hash node worker.
+ * <p>
+ * Multiple algorithms are computed in a single read of the source, with
+ * each buffer fed to every digest.
  *
  */
 public class JavaSeContentHashWorker extends AbstractContentHashWorker
@@ -57,6 +63,60 @@ public class JavaSeContentHashWorker extends AbstractContentHashWorker
         }
     }
 
+    @Override
+    public Map<String, String> generateHashesInternal(InputStream source, Set<String> hashAlgorithms)
+            throws ContentIOException, InterruptedException, ContentHashException
+    {
+        if (source == null || hashAlgorithms == null || hashAlgorithms.isEmpty()) {
+            throw new IllegalArgumentException("source and hashAlgorithms must not be null or empty");
+        }
+        try
+        {
+            MessageDigest[] messageDigests = new MessageDigest[hashAlgorithms.size()];
+            int i = 0;
+            for (String hashAlgorithm : hashAlgorithms)
+            {
+                messageDigests[i++] = MessageDigest.getInstance(hashAlgorithm);
+            }
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            int bytesRead = 0;
+            while( (bytesRead = source.read(buffer)) > 0) {
+                for (MessageDigest messageDigest : messageDigests)
+                {
+                    messageDigest.update(buffer, 0, bytesRead);
+                }
+            }
+
+            Map<String, String> values = new LinkedHashMap<String, String>();
+            i = 0;
+            for (String hashAlgorithm : hashAlgorithms)
+            {
+                values.put(hashAlgorithm, encodeHex(messageDigests[i++].digest()));
+            }
+            return values;
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Could not read content for hashing", e);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new ContentHashException(e);
+        }
+        finally
+        {
+            try
+            {
+                source.close();
+            }
+            catch (IOException e)
+            {
+            }
+        }
+    }
+
     /**
      * Performs a hex encoding of the given byte array
      *
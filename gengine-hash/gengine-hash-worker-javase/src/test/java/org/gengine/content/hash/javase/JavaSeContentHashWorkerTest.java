@@ -2,9 +2,14 @@ package org.gengine.content.hash.javase;
 
 import static junit.framework.Assert.*;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
+import org.gengine.content.ContentIOException;
 import org.gengine.content.ContentReference;
 import org.gengine.content.ContentWorkResult;
 import org.gengine.content.handler.FileContentReferenceHandlerImpl;
@@ -66,6 +71,120 @@ public class JavaSeContentHashWorkerTest
                 foundResult.getDetails().get(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUE));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMultipleAlgorithms() throws Exception
+    {
+        ContentReference source = new ContentReference(
+                this.getClass().getResource("/quick/quick.mpg").toURI().toString(), "video/mpeg");
+
+        List<ContentWorkResult> results = worker.generateHashes(Arrays.asList(source),
+                new LinkedHashSet<String>(Arrays.asList(
+                        ContentHashWorker.HASH_ALGORITHM_SHA_256,
+                        ContentHashWorker.HASH_ALGORITHM_MD5,
+                        ContentHashWorker.HASH_ALGORITHM_SHA_512)));
+
+        assertEquals(1, results.size());
+        Map<String, String> values = (Map<String, String>)
+                results.get(0).getDetails().get(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUES);
+        assertEquals(3, values.size());
+        assertEquals(EXPECTED_VALUE_MD5, values.get(ContentHashWorker.HASH_ALGORITHM_MD5));
+        assertEquals(EXPECTED_VALUE_SHA_256, values.get(ContentHashWorker.HASH_ALGORITHM_SHA_256));
+        assertEquals(EXPECTED_VALUE_SHA_512, values.get(ContentHashWorker.HASH_ALGORITHM_SHA_512));
+        assertEquals(EXPECTED_VALUE_SHA_256,
+                results.get(0).getDetails().get(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUE));
+    }
+
+    @Test
+    public void testParallelSources() throws Exception
+    {
+        testSourcesWithMissingSource(3);
+    }
+
+    /**
+     * A source which can't be hashed gives the same result whether or not
+     * sources are hashed in parallel
+     */
+    @Test
+    public void testSequentialSources() throws Exception
+    {
+        testSourcesWithMissingSource(1);
+    }
+
+    @Test
+    public void testSequentialSourceFailure() throws Exception
+    {
+        testSourceFailure(1);
+    }
+
+    @Test
+    public void testParallelSourceFailure() throws Exception
+    {
+        testSourceFailure(3);
+    }
+
+    /**
+     * Unless source errors are reported a source which can't be hashed fails the request
+     */
+    protected void testSourceFailure(int maxParallelism) throws Exception
+    {
+        ((JavaSeContentHashWorker) worker).setMaxParallelism(maxParallelism);
+        try
+        {
+            worker.generateHashes(createSourcesWithMissingSource(), ContentHashWorker.HASH_ALGORITHM_MD5);
+            fail("Expected the missing source to fail the request");
+        }
+        catch (ContentIOException e)
+        {
+            // expected
+        }
+        finally
+        {
+            ((JavaSeContentHashWorker) worker).shutdown();
+        }
+    }
+
+    protected List<ContentReference> createSourcesWithMissingSource() throws Exception
+    {
+        ContentReference source = new ContentReference(
+                this.getClass().getResource("/quick/quick.mpg").toURI().toString(), "video/mpeg");
+        ContentReference missingSource = new ContentReference(
+                new File(new File(this.getClass().getResource("/quick").toURI()), "missing.mpg").toURI().toString(),
+                "video/mpeg");
+        List<ContentReference> sources = new ArrayList<ContentReference>();
+        for (int i = 0; i < 10; i++)
+        {
+            sources.add(i == 4 ? missingSource : new ContentReference(source.getUri(), source.getMediaType()));
+        }
+        return sources;
+    }
+
+    protected void testSourcesWithMissingSource(int maxParallelism) throws Exception
+    {
+        ((JavaSeContentHashWorker) worker).setMaxParallelism(maxParallelism);
+        ((JavaSeContentHashWorker) worker).setReportSourceErrors(true);
+        List<ContentReference> sources = createSourcesWithMissingSource();
+
+        List<ContentWorkResult> results = worker.generateHashes(sources, ContentHashWorker.HASH_ALGORITHM_MD5);
+
+        assertEquals(sources.size(), results.size());
+        for (int i = 0; i < sources.size(); i++)
+        {
+            assertSame(sources.get(i), results.get(i).getContentReference());
+            if (i == 4)
+            {
+                assertNotNull(results.get(i).getDetails().get(ContentHashWorker.RESULT_DETAIL_ERROR));
+                assertNull(results.get(i).getDetails().get(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUE));
+            }
+            else
+            {
+                assertEquals(EXPECTED_VALUE_MD5,
+                        results.get(i).getDetails().get(ContentHashWorker.RESULT_DETAIL_HEX_ENCODED_VALUE));
+            }
+        }
+        ((JavaSeContentHashWorker) worker).shutdown();
+    }
+
     @Test
     public void testMd5() throws Exception
     {
@@ -3,25 +3,41 @@ package org.gengine.messaging.amqp;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.qpid.amqp_1_0.jms.BytesMessage;
 import org.apache.qpid.amqp_1_0.jms.Connection;
 import org.apache.qpid.amqp_1_0.jms.ConnectionFactory;
 import org.apache.qpid.amqp_1_0.jms.Session;
 import org.apache.qpid.amqp_1_0.jms.TextMessage;
 import org.apache.qpid.amqp_1_0.jms.impl.ConnectionFactoryImpl;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.StringWriter;
-import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.MessageListener;
 
+import org.gengine.content.AbstractContentRequest;
+import org.gengine.messaging.FlowControlledEndpoint;
 import org.gengine.messaging.MessageConsumer;
 import org.gengine.messaging.MessageProducer;
 import org.gengine.messaging.MessagingException;
 import org.gengine.messaging.Request;
+import org.gengine.messaging.codec.JacksonMessageBodyCodec;
+import org.gengine.messaging.codec.MessageBodyCodec;
+import org.gengine.messaging.codec.MessageBodyCodecFactory;
+import org.gengine.messaging.codec.MessageBodyCompressor;
+import org.gengine.messaging.codec.MessageBodyCompressorFactory;
+import org.gengine.messaging.codec.ReusableByteArrayOutputStream;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -30,13 +46,20 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * queues directly using Apache Qpid.
  *
  */
-public class AmqpDirectEndpoint implements MessageProducer
+public class AmqpDirectEndpoint implements MessageProducer, FlowControlledEndpoint
 {
     private static final Log logger = LogFactory.getLog(AmqpDirectEndpoint.class);
 
     private static final int DEFAULT_PORT = 5672;
     private static final String DEFAULT_USERNAME = "guest";
     private static final String DEFAULT_PASSWORD = "password";
+    private static final int DEFAULT_CONSUMER_COUNT = 1;
+    private static final int DEFAULT_CONSUMER_PREFETCH = 1;
+    private static final int DEFAULT_PRODUCER_SESSION_COUNT = 4;
+    private static final int DEFAULT_PRODUCER_CACHE_SIZE = 32;
+    private static final int DEFAULT_MAX_DELIVERY_ATTEMPTS = 5;
+    private static final int MAX_TRACKED_FAILED_MESSAGES = 1024;
+    private static final String PROPERTY_DELIVERY_COUNT = "JMSXDeliveryCount";
 
     private static final String ENDPOINT_PREFIX_QUEUE = "queue:";
     private static final String ENDPOINT_PREFIX_TOPIC = "topic:";
@@ -50,95 +73,389 @@ public class AmqpDirectEndpoint implements MessageProducer
     private String password = DEFAULT_PASSWORD;
     private String receiveEndpoint;
     private String sendEndpoint;
+    private int consumerCount = DEFAULT_CONSUMER_COUNT;
+    private int consumerPrefetch = DEFAULT_CONSUMER_PREFETCH;
+    private boolean acknowledgeBeforeProcessing = false;
+    private int maxDeliveryAttempts = DEFAULT_MAX_DELIVERY_ATTEMPTS;
+    private ExecutorService executorService;
+    private int producerSessionCount = DEFAULT_PRODUCER_SESSION_COUNT;
+    private int producerCacheSize = DEFAULT_PRODUCER_CACHE_SIZE;
 
     private Connection consumerConnection;
     private Connection producerConnection;
-    private Session consumerSession;
-    private Session producerSession;
-    private org.apache.qpid.amqp_1_0.jms.MessageProducer defaultMessageProducer;
+    private volatile AmqpProducerSessionPool producerSessionPool;
+    private volatile AmqpProducerSessionPool batchProducerSessionPool;
+
+    private final Object pauseLock = new Object();
+    private volatile boolean paused = false;
 
     private MessageConsumer messageConsumer;
     private AmqpListener listener;
     private ObjectMapper objectMapper;
+    private String contentType = MessageBodyCodec.CONTENT_TYPE_JSON;
+    private MessageBodyCodec jsonCodec;
+    private final ConcurrentMap<String, MessageBodyCodec> codecs =
+            new ConcurrentHashMap<String, MessageBodyCodec>();
+    private int compressionThreshold = 0;
 
+    /**
+     * Creates the consumer sessions, each with its own consumer and
+     * {@link AmqpMessageListener}, then starts the consumer connection.
+     * <p>
+     * Unless messages are acknowledged before processing each consumer processes
+     * its messages one at a time, so <code>consumerCount * consumerPrefetch</code>
+     * sessions are created to allow that many messages in flight.
+     */
     protected class AmqpListener implements Runnable
     {
-        protected boolean isInitialized = false;
+        protected volatile boolean isInitialized = false;
 
         public void run()
         {
             try
             {
-                Destination receiveDestination =
-                        AmqpDirectEndpoint.getDestination(getConsumerSession(), receiveEndpoint);
-                org.apache.qpid.amqp_1_0.jms.MessageConsumer receiver =
-                        getConsumerSession().createConsumer(receiveDestination);
+                int sessionCount = acknowledgeBeforeProcessing ? consumerCount : consumerCount * consumerPrefetch;
+                for (int i = 0; i < sessionCount; i++)
+                {
+                    Session session = createConsumerSession();
+                    Destination receiveDestination =
+                            AmqpDirectEndpoint.getDestination(session, receiveEndpoint);
+                    org.apache.qpid.amqp_1_0.jms.MessageConsumer receiver =
+                            session.createConsumer(receiveDestination);
+                    receiver.setMessageListener(acknowledgeBeforeProcessing ?
+                            new AmqpMessageListener(session, consumerPrefetch) : new AmqpMessageListener(session, 1));
+                }
 
                 isInitialized = true;
 
-                logger.info("Waiting for an AMQP message on " + host + ":" + receiveEndpoint);
-                receiver.setMessageListener(new MessageListener()
+                logger.info("Waiting for an AMQP message on " + host + ":" + receiveEndpoint +
+                        " with " + sessionCount + " consumer session(s), prefetch " + consumerPrefetch +
+                        (acknowledgeBeforeProcessing ? ", acknowledging before processing" : ""));
+
+                getConsumerConnection().start();
+            }
+            catch (Exception e)
+            {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Listener for a single consumer session.
+     * <p>
+     * Qpid delivers messages for a session on that session's own dispatcher thread,
+     * one at a time.  By default each message is processed on the dispatcher thread
+     * and acknowledged once processing completes, so a message is redelivered if the
+     * node fails while processing it.
+     * <p>
+     * Only if the session acknowledges automatically, see
+     * {@link AmqpDirectEndpoint#setAcknowledgeBeforeProcessing(boolean)}, and an executor
+     * service is set are messages handed off to the executor so that up to
+     * <code>prefetch</code> messages per consumer are processed concurrently.
+     * Those messages have already been acknowledged and are lost if the node fails.
+     */
+    protected class AmqpMessageListener implements MessageListener
+    {
+        private final Session session;
+        private final int prefetch;
+        private final Semaphore inFlightPermits;
+        // Failed attempts by message ID, only used on the session's dispatcher thread
+        private final Map<String, Integer> failedAttempts = new LinkedHashMap<String, Integer>()
+        {
+            private static final long serialVersionUID = -2203482415378409526L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest)
+            {
+                return size() > MAX_TRACKED_FAILED_MESSAGES;
+            }
+        };
+
+        public AmqpMessageListener(Session session, int prefetch)
+        {
+            this.session = session;
+            this.prefetch = prefetch;
+            this.inFlightPermits = new Semaphore(prefetch);
+        }
+
+        public void onMessage(final javax.jms.Message message)
+        {
+            try
+            {
+                awaitResumed();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while paused, not processing " + message.toString());
+                recover();
+                return;
+            }
+            if (!acknowledgeBeforeProcessing)
+            {
+                processAndAcknowledge(message);
+                return;
+            }
+            if (executorService == null || prefetch <= 1)
+            {
+                processMessage(message);
+                return;
+            }
+            try
+            {
+                inFlightPermits.acquire();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while waiting to process " + message.toString());
+                return;
+            }
+            try
+            {
+                executorService.execute(new Runnable()
                 {
-                    public void onMessage(final javax.jms.Message message)
+                    public void run()
                     {
                         try
                         {
-                            logger.trace("Processing AMQP message");
-                            String stringMessage = null;
-
-                            if (message instanceof TextMessage)
-                            {
-                                stringMessage = ((TextMessage) message).getText();
-                            }
-                            if (stringMessage != null)
-                            {
-                                Object pojoMessage = objectMapper.readValue(stringMessage,
-                                        messageConsumer.getConsumingMessageBodyClass());
-                                if (pojoMessage == null)
-                                {
-                                    logger.error("Request could not be unmarshalled");
-                                }
-                                else
-                                {
-                                    if (pojoMessage instanceof Request<?>)
-                                    {
-                                        // Check for a reply to queue message header
-                                       if (StringUtils.isEmpty(((Request<?>) pojoMessage).getReplyTo()))
-                                       {
-                                           if (message.getJMSReplyTo() != null)
-
-                                           {
-                                               String replyQueueName = message.getJMSReplyTo().toString();
-                                               if (!StringUtils.isEmpty(replyQueueName))
-                                               {
-                                                   ((Request<?>) pojoMessage).setReplyTo(replyQueueName);
-                                               }
-                                           }
-                                       }
-                                    }
-
-                                    messageConsumer.onReceive(pojoMessage);
-                                }
-                            }
-                            else
-                            {
-                                logger.error("No valid message body found in " + message.toString());
-                            }
+                            processMessage(message);
                         }
-                        catch (JMSException | IOException e)
+                        finally
                         {
-                            logger.error(e.getMessage(), e);
+                            inFlightPermits.release();
                         }
                     }
                 });
+            }
+            catch (RejectedExecutionException e)
+            {
+                inFlightPermits.release();
+                logger.warn("Executor rejected message, processing on the listener thread");
+                processMessage(message);
+            }
+        }
 
-                getConsumerConnection().start();
+        /**
+         * Processes the message then acknowledges it.  If processing fails unexpectedly
+         * the session is recovered so that the message is redelivered, unless it has
+         * already been delivered <code>maxDeliveryAttempts</code> times in which case
+         * it's acknowledged and discarded so it can't block the session.
+         *
+         * @param message
+         */
+        protected void processAndAcknowledge(javax.jms.Message message)
+        {
+            String messageId = getMessageId(message);
+            try
+            {
+                processMessage(message);
             }
-            catch (Exception e)
+            catch (RuntimeException e)
             {
-                logger.error(e.getMessage(), e);
+                int deliveryCount = getDeliveryCount(message, messageId);
+                if (deliveryCount < maxDeliveryAttempts)
+                {
+                    failedAttempts.put(messageId, deliveryCount);
+                    logger.error("Error processing " + message.toString() + " on delivery attempt "
+                            + deliveryCount + ", recovering session", e);
+                    recover();
+                    return;
+                }
+                logger.error("Error processing " + message.toString() + " on delivery attempt "
+                        + deliveryCount + ", discarding it", e);
+            }
+            failedAttempts.remove(messageId);
+            try
+            {
+                message.acknowledge();
+            }
+            catch (JMSException e)
+            {
+                logger.error("Could not acknowledge " + message.toString(), e);
+            }
+        }
+
+        /**
+         * Gets the number of times the given message has been delivered, from
+         * <code>JMSXDeliveryCount</code> if the provider sets it or otherwise from
+         * the failed attempts seen by this listener
+         */
+        protected int getDeliveryCount(javax.jms.Message message, String messageId)
+        {
+            Integer failed = failedAttempts.get(messageId);
+            int deliveryCount = failed == null ? 1 : failed + 1;
+            try
+            {
+                if (message.propertyExists(PROPERTY_DELIVERY_COUNT))
+                {
+                    deliveryCount = Math.max(deliveryCount, message.getIntProperty(PROPERTY_DELIVERY_COUNT));
+                }
+            }
+            catch (JMSException | RuntimeException e)
+            {
+                logger.debug("Could not read " + PROPERTY_DELIVERY_COUNT + ": " + e.getMessage());
+            }
+            return deliveryCount;
+        }
+
+        private String getMessageId(javax.jms.Message message)
+        {
+            try
+            {
+                return message.getJMSMessageID();
+            }
+            catch (JMSException e)
+            {
+                return null;
+            }
+        }
+
+        private void recover()
+        {
+            if (acknowledgeBeforeProcessing)
+            {
+                return;
+            }
+            try
+            {
+                session.recover();
+            }
+            catch (JMSException e)
+            {
+                logger.error("Could not recover consumer session", e);
+            }
+        }
+    }
+
+    /**
+     * Blocks the calling listener thread while consumption is paused.
+     * <p>
+     * A listener may not stop its own connection so pausing holds each consumer's
+     * dispatcher thread here, which stops further messages being taken from that session.
+     *
+     * @throws InterruptedException
+     */
+    protected void awaitResumed() throws InterruptedException
+    {
+        if (!paused)
+        {
+            return;
+        }
+        synchronized (pauseLock)
+        {
+            while (paused)
+            {
+                pauseLock.wait();
+            }
+        }
+    }
+
+    @Override
+    public void pause()
+    {
+        synchronized (pauseLock)
+        {
+            paused = true;
+        }
+        logger.debug("Paused consumption from " + receiveEndpoint);
+    }
+
+    @Override
+    public void resume()
+    {
+        synchronized (pauseLock)
+        {
+            paused = false;
+            pauseLock.notifyAll();
+        }
+        logger.debug("Resumed consumption from " + receiveEndpoint);
+    }
+
+    @Override
+    public boolean isPaused()
+    {
+        return paused;
+    }
+
+    /**
+     * Unmarshals the given JMS message and hands it to the message consumer.
+     *
+     * @param message
+     */
+    protected void processMessage(javax.jms.Message message)
+    {
+        try
+        {
+            logger.trace("Processing AMQP message");
+            Object pojoMessage = null;
+            boolean hasBody = false;
+
+            if (message instanceof TextMessage)
+            {
+                String stringMessage = ((TextMessage) message).getText();
+                if (stringMessage != null)
+                {
+                    hasBody = true;
+                    pojoMessage = objectMapper.readValue(stringMessage,
+                            messageConsumer.getConsumingMessageBodyClass());
+                }
+            }
+            else if (message instanceof javax.jms.BytesMessage)
+            {
+                javax.jms.BytesMessage bytesMessage = (javax.jms.BytesMessage) message;
+                int length = (int) bytesMessage.getBodyLength();
+                byte[] bytes = ReusableByteArrayOutputStream.getThreadLocalInstance().reset(length);
+                bytesMessage.readBytes(bytes, length);
+                hasBody = true;
+                String contentEncoding = message.getStringProperty(MessageBodyCompressor.HEADER_CONTENT_ENCODING);
+                if (!StringUtils.isEmpty(contentEncoding))
+                {
+                    bytes = MessageBodyCompressorFactory.getInstance(contentEncoding).decompress(bytes, 0, length);
+                    length = bytes.length;
+                }
+                // Decoding completes before the consumer is called, which may reuse the buffer to send
+                pojoMessage = getCodec(message.getStringProperty(MessageBodyCodec.HEADER_CONTENT_TYPE)).decode(
+                        new ByteArrayInputStream(bytes, 0, length), messageConsumer.getConsumingMessageBodyClass());
+            }
+            if (hasBody)
+            {
+                if (pojoMessage == null)
+                {
+                    logger.error("Request could not be unmarshalled");
+                }
+                else
+                {
+                    if (pojoMessage instanceof Request<?>)
+                    {
+                        // Check for a reply to queue message header
+                       if (StringUtils.isEmpty(((Request<?>) pojoMessage).getReplyTo()))
+                       {
+                           if (message.getJMSReplyTo() != null)
+
+                           {
+                               String replyQueueName = message.getJMSReplyTo().toString();
+                               if (!StringUtils.isEmpty(replyQueueName))
+                               {
+                                   ((Request<?>) pojoMessage).setReplyTo(replyQueueName);
+                               }
+                           }
+                       }
+                    }
+
+                    messageConsumer.onReceive(pojoMessage);
+                }
+            }
+            else
+            {
+                logger.error("No valid message body found in " + message.toString());
             }
         }
+        catch (JMSException | IOException | IllegalArgumentException e)
+        {
+            logger.error(e.getMessage(), e);
+        }
     }
 
     public void setHost(String host)
@@ -184,6 +501,155 @@ public class AmqpDirectEndpoint implements MessageProducer
     public void setObjectMapper(ObjectMapper objectMapper)
     {
         this.objectMapper = objectMapper;
+        this.jsonCodec = new JacksonMessageBodyCodec(objectMapper, MessageBodyCodec.CONTENT_TYPE_JSON);
+    }
+
+    /**
+     * Sets the content type messages are sent with, one of the types supported by
+     * {@link MessageBodyCodecFactory}.  Binary content types are sent as a
+     * <code>BytesMessage</code> with the {@link MessageBodyCodec#HEADER_CONTENT_TYPE}
+     * property set.  Defaults to JSON sent as a <code>TextMessage</code>.
+     * <p>
+     * Received messages are decoded according to their content type regardless
+     * of this setting.
+     *
+     * @param contentType
+     */
+    public void setContentType(String contentType)
+    {
+        if (!MessageBodyCodecFactory.isSupported(contentType))
+        {
+            throw new IllegalArgumentException("Unsupported content type: " + contentType);
+        }
+        this.contentType = StringUtils.isEmpty(contentType) ? MessageBodyCodec.CONTENT_TYPE_JSON : contentType;
+    }
+
+    /**
+     * Sets the number of consumer sessions, each with its own consumer,
+     * created for the receive endpoint.  Defaults to 1.
+     *
+     * @param consumerCount
+     */
+    public void setConsumerCount(int consumerCount)
+    {
+        if (consumerCount < 1)
+        {
+            throw new IllegalArgumentException("consumerCount must be at least 1");
+        }
+        this.consumerCount = consumerCount;
+    }
+
+    /**
+     * Sets the maximum number of messages each consumer may have in flight.
+     * Defaults to 1.
+     * <p>
+     * By default a consumer session is created per in-flight message so that each
+     * message is acknowledged only after it has been processed.  When acknowledging
+     * before processing the messages are instead dispatched to the executor service.
+     *
+     * @param consumerPrefetch
+     */
+    public void setConsumerPrefetch(int consumerPrefetch)
+    {
+        if (consumerPrefetch < 1)
+        {
+            throw new IllegalArgumentException("consumerPrefetch must be at least 1");
+        }
+        this.consumerPrefetch = consumerPrefetch;
+    }
+
+    /**
+     * Sets the maximum number of producer sessions used concurrently for sending.
+     * Defaults to 4.
+     *
+     * @param producerSessionCount
+     */
+    public void setProducerSessionCount(int producerSessionCount)
+    {
+        if (producerSessionCount < 1)
+        {
+            throw new IllegalArgumentException("producerSessionCount must be at least 1");
+        }
+        this.producerSessionCount = producerSessionCount;
+    }
+
+    /**
+     * Sets the maximum number of producers, keyed by destination, cached
+     * per producer session.  Defaults to 32.
+     *
+     * @param producerCacheSize
+     */
+    public void setProducerCacheSize(int producerCacheSize)
+    {
+        if (producerCacheSize < 1)
+        {
+            throw new IllegalArgumentException("producerCacheSize must be at least 1");
+        }
+        this.producerCacheSize = producerCacheSize;
+    }
+
+    /**
+     * Sets the encoded size in bytes at or above which sent messages are
+     * compressed with LZ4 and sent as a <code>BytesMessage</code> with the
+     * {@link MessageBodyCompressor#HEADER_CONTENT_ENCODING} property set.
+     * Defaults to 0, disabled, as receivers must be able to decompress.
+     * <p>
+     * Received messages are decompressed according to their content encoding
+     * regardless of this setting.
+     *
+     * @param compressionThreshold
+     */
+    public void setCompressionThreshold(int compressionThreshold)
+    {
+        if (compressionThreshold < 0)
+        {
+            throw new IllegalArgumentException("compressionThreshold must not be negative");
+        }
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Sets the optional executor service received messages are dispatched to
+     * when acknowledging before processing and the consumer prefetch is greater than one.
+     *
+     * @param executorService
+     */
+    public void setExecutorService(ExecutorService executorService)
+    {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Sets whether received messages are acknowledged automatically as they are
+     * delivered, before they have been processed, allowing them to be dispatched to the
+     * executor service.  Defaults to false.
+     * <p>
+     * This gives at-most-once delivery: messages being processed when the node
+     * fails are lost rather than redelivered.
+     *
+     * @param acknowledgeBeforeProcessing
+     */
+    public void setAcknowledgeBeforeProcessing(boolean acknowledgeBeforeProcessing)
+    {
+        this.acknowledgeBeforeProcessing = acknowledgeBeforeProcessing;
+    }
+
+    /**
+     * Sets the number of times a message whose processing fails is delivered before
+     * it's acknowledged and discarded with an error logged, so a message which can
+     * never be processed doesn't block its consumer.  Defaults to 5.
+     * <p>
+     * Only applies when messages are acknowledged after processing.
+     *
+     * @param maxDeliveryAttempts
+     */
+    public void setMaxDeliveryAttempts(int maxDeliveryAttempts)
+    {
+        if (maxDeliveryAttempts < 1)
+        {
+            throw new IllegalArgumentException("maxDeliveryAttempts must be at least 1");
+        }
+        this.maxDeliveryAttempts = maxDeliveryAttempts;
     }
 
     private Connection getConsumerConnection() throws JMSException
@@ -200,7 +666,7 @@ public class AmqpDirectEndpoint implements MessageProducer
         return consumerConnection;
     }
 
-    private Connection getProducerConnection() throws JMSException
+    private synchronized Connection getProducerConnection() throws JMSException
     {
         if (producerConnection == null)
         {
@@ -214,25 +680,71 @@ public class AmqpDirectEndpoint implements MessageProducer
         return producerConnection;
     }
 
-    private Session getConsumerSession() throws JMSException
+    private Session createConsumerSession() throws JMSException
+    {
+        return getConsumerConnection().createSession(false,
+                acknowledgeBeforeProcessing ? Session.AUTO_ACKNOWLEDGE : Session.CLIENT_ACKNOWLEDGE);
+    }
+
+    private AmqpProducerSessionPool getProducerSessionPool() throws JMSException
+    {
+        if (producerSessionPool == null)
+        {
+            synchronized (this)
+            {
+                if (producerSessionPool == null)
+                {
+                    producerSessionPool = new AmqpProducerSessionPool(
+                            getProducerConnection(), producerSessionCount, producerCacheSize);
+                }
+            }
+        }
+        return producerSessionPool;
+    }
+
+    private AmqpProducerSessionPool getBatchProducerSessionPool() throws JMSException
     {
-        if (consumerSession == null)
+        if (batchProducerSessionPool == null)
         {
-            consumerSession = getConsumerConnection().createSession(false, Session.AUTO_ACKNOWLEDGE);
+            synchronized (this)
+            {
+                if (batchProducerSessionPool == null)
+                {
+                    batchProducerSessionPool = new AmqpProducerSessionPool(
+                            getProducerConnection(), producerSessionCount, producerCacheSize, true);
+                }
+            }
         }
-        return consumerSession;
+        return batchProducerSessionPool;
     }
 
-    private Session getProducerSession() throws JMSException
+    /**
+     * Gets the codec for the given content type, the configured object mapper
+     * being used for JSON.
+     *
+     * @param contentType
+     * @return the codec
+     */
+    protected MessageBodyCodec getCodec(String contentType)
     {
-        if (producerSession == null)
+        if (StringUtils.isEmpty(contentType) || MessageBodyCodec.CONTENT_TYPE_JSON.equals(contentType))
+        {
+            return jsonCodec;
+        }
+        MessageBodyCodec codec = codecs.get(contentType);
+        if (codec == null)
         {
-            producerSession = getProducerConnection().createSession(false, Session.AUTO_ACKNOWLEDGE);
+            codec = MessageBodyCodecFactory.createInstance(contentType);
+            MessageBodyCodec existing = codecs.putIfAbsent(contentType, codec);
+            if (existing != null)
+            {
+                codec = existing;
+            }
         }
-        return producerSession;
+        return codec;
     }
 
-    private static Destination getDestination(Session session, String endpoint) throws JMSException
+    protected static Destination getDestination(Session session, String endpoint) throws JMSException
     {
         Destination destination = null;
         if (endpoint.startsWith(ENDPOINT_PREFIX_QUEUE))
@@ -250,28 +762,6 @@ public class AmqpDirectEndpoint implements MessageProducer
         return destination;
     }
 
-    private org.apache.qpid.amqp_1_0.jms.MessageProducer getDefaultMessageProducer() throws JMSException
-    {
-        if (defaultMessageProducer == null)
-        {
-            Destination sendDestination =
-                    getDestination(getProducerSession(), sendEndpoint);
-            defaultMessageProducer = getProducerSession().createProducer(sendDestination);
-        }
-        return defaultMessageProducer;
-    }
-
-    private org.apache.qpid.amqp_1_0.jms.MessageProducer getMessageProducer(String endpoint) throws JMSException
-    {
-        if (sendEndpoint.equals(endpoint))
-        {
-            return getDefaultMessageProducer();
-        }
-        Destination sendDestination =
-                getDestination(getProducerSession(), endpoint);
-        return getProducerSession().createProducer(sendDestination);
-    }
-
     public void send(Object message) {
         send(message, sendEndpoint);
     }
@@ -289,25 +779,150 @@ public class AmqpDirectEndpoint implements MessageProducer
         throw new UnsupportedOperationException("Headers not currently supported");
     }
 
+    /**
+     * Encodes the given message with the configured content type and creates
+     * the JMS message for it from the given session
+     *
+     * @param session
+     * @param message
+     * @param queueName used for logging
+     * @return the JMS message
+     * @throws JMSException
+     * @throws IOException
+     */
+    protected javax.jms.Message createMessage(Session session, Object message, String queueName)
+            throws JMSException, IOException
+    {
+        MessageBodyCodec codec = getCodec(contentType);
+        if (compressionThreshold > 0)
+        {
+            return createCompressibleMessage(session, codec, message, queueName);
+        }
+        if (codec.isBinary())
+        {
+            // Encoded straight into this thread's buffer which is handed to the BytesMessage
+            ReusableByteArrayOutputStream binaryMessage = ReusableByteArrayOutputStream.getThreadLocalInstance();
+            codec.encode(message, binaryMessage);
+            if (logger.isTraceEnabled())
+            {
+                logger.trace("Sending message to " + host + ":" + queueName + ": " +
+                        binaryMessage.size() + " bytes of " + codec.getContentType());
+            }
+            BytesMessage bytesMessage = session.createBytesMessage();
+            bytesMessage.writeBytes(binaryMessage.getBuffer(), 0, binaryMessage.size());
+            bytesMessage.setStringProperty(MessageBodyCodec.HEADER_CONTENT_TYPE, codec.getContentType());
+            return bytesMessage;
+        }
+        // Jackson writes via its own recycled buffers, leaving only the String for the TextMessage
+        String stringMessage = objectMapper.writeValueAsString(message);
+        if (logger.isTraceEnabled())
+        {
+            logger.trace("Sending message to " + host + ":" + queueName + ": " + stringMessage);
+        }
+        return session.createTextMessage(stringMessage);
+    }
+
+    /**
+     * Encodes the given message into this thread's buffer then creates a compressed
+     * <code>BytesMessage</code> if it reaches the compression threshold, or the same
+     * message {@link #createMessage(Session, Object, String)} would otherwise.
+     */
+    private javax.jms.Message createCompressibleMessage(Session session, MessageBodyCodec codec,
+            Object message, String queueName) throws JMSException, IOException
+    {
+        ReusableByteArrayOutputStream encodedMessage = ReusableByteArrayOutputStream.getThreadLocalInstance();
+        codec.encode(message, encodedMessage);
+        byte[] bytes = encodedMessage.getBuffer();
+        int length = encodedMessage.size();
+        String contentEncoding = null;
+        if (length >= compressionThreshold)
+        {
+            MessageBodyCompressor compressor =
+                    MessageBodyCompressorFactory.getInstance(MessageBodyCompressor.CONTENT_ENCODING_LZ4);
+            byte[] compressed = compressor.compress(bytes, 0, length);
+            // Incompressible bodies are sent as is
+            if (compressed.length < length)
+            {
+                bytes = compressed;
+                length = compressed.length;
+                contentEncoding = compressor.getContentEncoding();
+            }
+        }
+        if (logger.isTraceEnabled())
+        {
+            logger.trace("Sending message to " + host + ":" + queueName + ": " + length + " bytes of " +
+                    codec.getContentType() + (contentEncoding == null ? "" : " compressed with " + contentEncoding));
+        }
+        if (contentEncoding == null && !codec.isBinary())
+        {
+            return session.createTextMessage(new String(bytes, 0, length, StandardCharsets.UTF_8));
+        }
+        BytesMessage bytesMessage = session.createBytesMessage();
+        bytesMessage.writeBytes(bytes, 0, length);
+        bytesMessage.setStringProperty(MessageBodyCodec.HEADER_CONTENT_TYPE, codec.getContentType());
+        if (contentEncoding != null)
+        {
+            bytesMessage.setStringProperty(MessageBodyCompressor.HEADER_CONTENT_ENCODING, contentEncoding);
+        }
+        return bytesMessage;
+    }
+
+    /**
+     * Sends the JMS message with the priority of the request it was created from,
+     * if it has one, otherwise the producer's default priority
+     *
+     * @param producer
+     * @param jmsMessage
+     * @param message
+     * @throws JMSException
+     */
+    protected void send(org.apache.qpid.amqp_1_0.jms.MessageProducer producer, javax.jms.Message jmsMessage,
+            Object message) throws JMSException
+    {
+        Integer priority = null;
+        if (message instanceof AbstractContentRequest)
+        {
+            priority = ((AbstractContentRequest) message).getPriority();
+        }
+        if (priority == null)
+        {
+            producer.send(jmsMessage);
+        }
+        else
+        {
+            producer.send(jmsMessage, producer.getDeliveryMode(), priority, producer.getTimeToLive());
+        }
+    }
+
     public void send(Object message, String queueName) {
         try
         {
-            Writer strWriter = new StringWriter();
-            objectMapper.writeValue(strWriter, message);
-            String stringMessage = strWriter.toString();
-
             if (StringUtils.isEmpty(queueName))
             {
                 queueName = sendEndpoint;
             }
 
-            TextMessage textMessage = getProducerSession().createTextMessage(stringMessage);
-
-            if (logger.isTraceEnabled())
+            AmqpProducerSessionPool pool = getProducerSessionPool();
+            AmqpProducerSessionPool.PooledProducerSession pooledSession = pool.borrow();
+            try
+            {
+                javax.jms.Message jmsMessage = createMessage(pooledSession.getSession(), message, queueName);
+                send(pooledSession.getProducer(queueName), jmsMessage, message);
+            }
+            catch (JMSException | RuntimeException e)
             {
-                logger.trace("Sending message to " + host + ":" + queueName + ": " + stringMessage);
+                // Don't hand a possibly broken session to the next sender
+                pool.invalidate(pooledSession);
+                pooledSession = null;
+                throw e;
+            }
+            finally
+            {
+                if (pooledSession != null)
+                {
+                    pool.release(pooledSession);
+                }
             }
-            getMessageProducer(queueName).send(textMessage);
         }
         catch (Exception e)
         {
@@ -315,6 +930,69 @@ public class AmqpDirectEndpoint implements MessageProducer
         }
     }
 
+    /**
+     * Sends the messages on a transacted session, committing once for the whole batch
+     * so that the broker round trip is paid per batch rather than per message.
+     * The batch is rolled back if any message can not be sent.
+     */
+    @Override
+    public void sendBatch(List<?> messages, String queueName) throws MessagingException
+    {
+        if (messages == null || messages.isEmpty())
+        {
+            return;
+        }
+        try
+        {
+            if (StringUtils.isEmpty(queueName))
+            {
+                queueName = sendEndpoint;
+            }
+
+            AmqpProducerSessionPool pool = getBatchProducerSessionPool();
+            AmqpProducerSessionPool.PooledProducerSession pooledSession = pool.borrow();
+            try
+            {
+                Session session = pooledSession.getSession();
+                org.apache.qpid.amqp_1_0.jms.MessageProducer producer = pooledSession.getProducer(queueName);
+                for (Object message : messages)
+                {
+                    send(producer, createMessage(session, message, queueName), message);
+                }
+                session.commit();
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Committed batch of " + messages.size() + " messages to " + host + ":" + queueName);
+                }
+            }
+            catch (JMSException | IOException | RuntimeException e)
+            {
+                try
+                {
+                    pooledSession.getSession().rollback();
+                }
+                catch (JMSException rollbackException)
+                {
+                    logger.warn("Could not roll back batch: " + rollbackException.getMessage());
+                }
+                pool.invalidate(pooledSession);
+                pooledSession = null;
+                throw e;
+            }
+            finally
+            {
+                if (pooledSession != null)
+                {
+                    pool.release(pooledSession);
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            throw new MessagingException("Error sending batch of " + messages.size() + " messages", e);
+        }
+    }
+
     public void startListener() {
         if (listener == null)
         {
@@ -337,6 +1015,39 @@ public class AmqpDirectEndpoint implements MessageProducer
         return listener != null && listener.isInitialized;
     }
 
+    /**
+     * Stops receiving messages, then closes the producer session pools and the connections
+     */
+    public synchronized void close()
+    {
+        closeConnection(consumerConnection, "consumer");
+        if (producerSessionPool != null)
+        {
+            producerSessionPool.close();
+        }
+        if (batchProducerSessionPool != null)
+        {
+            batchProducerSessionPool.close();
+        }
+        closeConnection(producerConnection, "producer");
+    }
+
+    private void closeConnection(Connection connection, String name)
+    {
+        if (connection == null)
+        {
+            return;
+        }
+        try
+        {
+            connection.close();
+        }
+        catch (JMSException e)
+        {
+            logger.warn("Could not close " + name + " connection: " + e.getMessage());
+        }
+    }
+
     @Override
     public String toString()
     {
@@ -351,6 +1062,18 @@ public class AmqpDirectEndpoint implements MessageProducer
         builder.append(", ");
         builder.append("receiveEndpoint: " + receiveEndpoint);
         builder.append(", ");
+        builder.append("contentType: " + contentType);
+        builder.append(", ");
+        builder.append("consumerCount: " + consumerCount);
+        builder.append(", ");
+        builder.append("consumerPrefetch: " + consumerPrefetch);
+        builder.append(", ");
+        builder.append("producerSessionCount: " + producerSessionCount);
+        builder.append(", ");
+        builder.append("producerCacheSize: " + producerCacheSize);
+        builder.append(", ");
+        builder.append("compressionThreshold: " + compressionThreshold);
+        builder.append(", ");
         builder.append("isInitialized: " + isInitialized());
         builder.append("]");
         return builder.toString();
@@ -23,6 +23,15 @@ public class AmqpNodeBootstrapUtils
     public static final String PROP_MESSAGING_BROKER_PASSWORD = "gengine.messaging.broker.password";
     public static final String PROP_MESSAGING_QUEUE_REQUEST = "gengine.messaging.queue.request";
     public static final String PROP_MESSAGING_QUEUE_REPLY = "gengine.messaging.queue.reply";
+    public static final String PROP_MESSAGING_CONTENT_TYPE = "gengine.messaging.content.type";
+    public static final String PROP_MESSAGING_PRODUCER_ASYNC_MAX_IN_FLIGHT = "gengine.messaging.producer.async.inflight";
+    public static final String PROP_MESSAGING_CONSUMER_COUNT = "gengine.messaging.consumer.count";
+    public static final String PROP_MESSAGING_CONSUMER_PREFETCH = "gengine.messaging.consumer.prefetch";
+    public static final String PROP_MESSAGING_CONSUMER_ACK_BEFORE_PROCESSING = "gengine.messaging.consumer.ack.beforeprocessing";
+    public static final String PROP_MESSAGING_CONSUMER_MAX_DELIVERY_ATTEMPTS = "gengine.messaging.consumer.max.delivery.attempts";
+    public static final String PROP_MESSAGING_PRODUCER_SESSIONS = "gengine.messaging.producer.sessions";
+    public static final String PROP_MESSAGING_PRODUCER_CACHE_SIZE = "gengine.messaging.producer.cache.size";
+    public static final String PROP_MESSAGING_COMPRESSION_THRESHOLD = "gengine.messaging.compression.threshold";
 
     /**
      * Creates an AMQP endpoint (sender and receiver) from the given arguments
@@ -91,9 +100,51 @@ public class AmqpNodeBootstrapUtils
         String receiveQueueName = properties.getProperty(PROP_MESSAGING_QUEUE_REQUEST);
         String replyQueueName = properties.getProperty(PROP_MESSAGING_QUEUE_REPLY);
         validate(brokerUrl, receiveQueueName, replyQueueName);
-        return createEndpoint(messageConsumer,
+        AmqpDirectEndpoint endpoint = createEndpoint(messageConsumer,
                 brokerUrl, brokerUsername, brokerPassword,
                 receiveQueueName, replyQueueName);
+
+        String contentType = properties.getProperty(PROP_MESSAGING_CONTENT_TYPE);
+        if (!StringUtils.isEmpty(contentType))
+        {
+            endpoint.setContentType(contentType.trim());
+        }
+        String consumerCount = properties.getProperty(PROP_MESSAGING_CONSUMER_COUNT);
+        if (!StringUtils.isEmpty(consumerCount))
+        {
+            endpoint.setConsumerCount(Integer.parseInt(consumerCount.trim()));
+        }
+        String consumerPrefetch = properties.getProperty(PROP_MESSAGING_CONSUMER_PREFETCH);
+        if (!StringUtils.isEmpty(consumerPrefetch))
+        {
+            endpoint.setConsumerPrefetch(Integer.parseInt(consumerPrefetch.trim()));
+        }
+        String ackBeforeProcessing = properties.getProperty(PROP_MESSAGING_CONSUMER_ACK_BEFORE_PROCESSING);
+        if (!StringUtils.isEmpty(ackBeforeProcessing))
+        {
+            endpoint.setAcknowledgeBeforeProcessing(Boolean.parseBoolean(ackBeforeProcessing.trim()));
+        }
+        String maxDeliveryAttempts = properties.getProperty(PROP_MESSAGING_CONSUMER_MAX_DELIVERY_ATTEMPTS);
+        if (!StringUtils.isEmpty(maxDeliveryAttempts))
+        {
+            endpoint.setMaxDeliveryAttempts(Integer.parseInt(maxDeliveryAttempts.trim()));
+        }
+        String producerSessions = properties.getProperty(PROP_MESSAGING_PRODUCER_SESSIONS);
+        if (!StringUtils.isEmpty(producerSessions))
+        {
+            endpoint.setProducerSessionCount(Integer.parseInt(producerSessions.trim()));
+        }
+        String producerCacheSize = properties.getProperty(PROP_MESSAGING_PRODUCER_CACHE_SIZE);
+        if (!StringUtils.isEmpty(producerCacheSize))
+        {
+            endpoint.setProducerCacheSize(Integer.parseInt(producerCacheSize.trim()));
+        }
+        String compressionThreshold = properties.getProperty(PROP_MESSAGING_COMPRESSION_THRESHOLD);
+        if (!StringUtils.isEmpty(compressionThreshold))
+        {
+            endpoint.setCompressionThreshold(Integer.parseInt(compressionThreshold.trim()));
+        }
+        return endpoint;
     }
 
     public static void validate(
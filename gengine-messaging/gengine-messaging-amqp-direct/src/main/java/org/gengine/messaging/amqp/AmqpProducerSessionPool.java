@@ -0,0 +1,336 @@
+package org.gengine.messaging.amqp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.qpid.amqp_1_0.jms.Connection;
+import org.apache.qpid.amqp_1_0.jms.MessageProducer;
+import org.apache.qpid.amqp_1_0.jms.Session;
+
+/**
+ * A bounded pool of producer sessions on a single connection.
+ * <p>
+ * JMS sessions are not thread safe so each {@link PooledProducerSession} is
+ * used by only one thread at a time between {@link #borrow()} and
+ * {@link #release(PooledProducerSession)}.  Sessions are created lazily up to
+ * the configured size, after which callers wait for a session to be released
+ * or invalidated.
+ * <p>
+ * Each pooled session keeps an LRU cache of producers keyed by endpoint so
+ * that repeated sends to the same destination, i.e. replies to a client's
+ * <code>replyTo</code> queue, don't pay the link setup cost each time.
+ *
+ */
+public class AmqpProducerSessionPool
+{
+    private static final Log logger = LogFactory.getLog(AmqpProducerSessionPool.class);
+
+    private final Connection connection;
+    private final int maxSessions;
+    private final int producerCacheSize;
+    private final boolean transacted;
+
+    private final Deque<PooledProducerSession> idleSessions = new ArrayDeque<PooledProducerSession>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition sessionAvailable = lock.newCondition();
+    private int sessionCount = 0;
+    private boolean isClosed = false;
+
+    /**
+     * A producer session and its cache of producers
+     */
+    public static class PooledProducerSession
+    {
+        private final Session session;
+        private final Map<String, MessageProducer> producers;
+
+        protected PooledProducerSession(Session session, final int producerCacheSize)
+        {
+            this.session = session;
+            this.producers = new LinkedHashMap<String, MessageProducer>(16, 0.75f, true)
+            {
+                private static final long serialVersionUID = 4717652314553081367L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, MessageProducer> eldest)
+                {
+                    if (size() > producerCacheSize)
+                    {
+                        closeProducer(eldest.getKey(), eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        public Session getSession()
+        {
+            return session;
+        }
+
+        /**
+         * Gets the cached producer for the given endpoint, creating it if needed
+         *
+         * @param endpoint
+         * @return the producer
+         * @throws JMSException
+         */
+        public MessageProducer getProducer(String endpoint) throws JMSException
+        {
+            MessageProducer producer = producers.get(endpoint);
+            if (producer == null)
+            {
+                Destination destination = AmqpDirectEndpoint.getDestination(session, endpoint);
+                producer = session.createProducer(destination);
+                producers.put(endpoint, producer);
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Created producer for " + endpoint);
+                }
+            }
+            return producer;
+        }
+
+        protected void close()
+        {
+            for (Map.Entry<String, MessageProducer> entry : producers.entrySet())
+            {
+                closeProducer(entry.getKey(), entry.getValue());
+            }
+            producers.clear();
+            try
+            {
+                session.close();
+            }
+            catch (JMSException e)
+            {
+                logger.warn("Could not close producer session: " + e.getMessage());
+            }
+        }
+
+        private static void closeProducer(String endpoint, MessageProducer producer)
+        {
+            try
+            {
+                producer.close();
+            }
+            catch (JMSException e)
+            {
+                logger.warn("Could not close producer for " + endpoint + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public AmqpProducerSessionPool(Connection connection, int maxSessions, int producerCacheSize)
+    {
+        this(connection, maxSessions, producerCacheSize, false);
+    }
+
+    /**
+     * Creates a pool whose sessions are optionally transacted, in which case
+     * borrowers must commit or roll back the session before releasing it.
+     *
+     * @param connection
+     * @param maxSessions
+     * @param producerCacheSize
+     * @param transacted
+     */
+    public AmqpProducerSessionPool(Connection connection, int maxSessions, int producerCacheSize,
+            boolean transacted)
+    {
+        if (maxSessions < 1)
+        {
+            throw new IllegalArgumentException("maxSessions must be at least 1");
+        }
+        if (producerCacheSize < 1)
+        {
+            throw new IllegalArgumentException("producerCacheSize must be at least 1");
+        }
+        this.connection = connection;
+        this.maxSessions = maxSessions;
+        this.producerCacheSize = producerCacheSize;
+        this.transacted = transacted;
+    }
+
+    /**
+     * Borrows a session from the pool, creating one if the pool isn't full
+     * or waiting for one to be released or invalidated otherwise.
+     *
+     * @return the pooled session
+     * @throws JMSException if the pool is closed, the wait is interrupted or
+     *         a session could not be created
+     */
+    public PooledProducerSession borrow() throws JMSException
+    {
+        lock.lock();
+        try
+        {
+            while (true)
+            {
+                if (isClosed)
+                {
+                    throw new JMSException("Producer session pool is closed");
+                }
+                PooledProducerSession pooledSession = idleSessions.pollFirst();
+                if (pooledSession != null)
+                {
+                    return pooledSession;
+                }
+                if (sessionCount < maxSessions)
+                {
+                    sessionCount++;
+                    break;
+                }
+                sessionAvailable.await();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            JMSException jmsException = new JMSException("Interrupted waiting for a producer session");
+            jmsException.initCause(e);
+            throw jmsException;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        // The session is created outside the lock so other borrowers aren't held up
+        try
+        {
+            Session session = connection.createSession(transacted,
+                    transacted ? Session.SESSION_TRANSACTED : Session.AUTO_ACKNOWLEDGE);
+            return new PooledProducerSession(session, producerCacheSize);
+        }
+        catch (JMSException | RuntimeException e)
+        {
+            removeSession();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a borrowed session to the pool, closing it if the pool has been closed
+     *
+     * @param pooledSession
+     */
+    public void release(PooledProducerSession pooledSession)
+    {
+        lock.lock();
+        try
+        {
+            if (!isClosed)
+            {
+                idleSessions.addLast(pooledSession);
+                sessionAvailable.signal();
+                return;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        invalidate(pooledSession);
+    }
+
+    /**
+     * Closes a borrowed session which should not be reused, i.e. after an error,
+     * making room for a new one to be created.
+     *
+     * @param pooledSession
+     */
+    public void invalidate(PooledProducerSession pooledSession)
+    {
+        removeSession();
+        pooledSession.close();
+    }
+
+    private void removeSession()
+    {
+        lock.lock();
+        try
+        {
+            sessionCount--;
+            sessionAvailable.signal();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of sessions created and not yet closed, whether idle or borrowed
+     *
+     * @return the session count
+     */
+    public int getSessionCount()
+    {
+        lock.lock();
+        try
+        {
+            return sessionCount;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of sessions waiting in the pool to be borrowed
+     *
+     * @return the idle session count
+     */
+    public int getIdleSessionCount()
+    {
+        lock.lock();
+        try
+        {
+            return idleSessions.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes all idle sessions and their producers.  Sessions still borrowed are
+     * closed when they're released and waiting borrowers fail.
+     */
+    public void close()
+    {
+        List<PooledProducerSession> closing;
+        lock.lock();
+        try
+        {
+            isClosed = true;
+            closing = new ArrayList<PooledProducerSession>(idleSessions);
+            idleSessions.clear();
+            sessionCount -= closing.size();
+            sessionAvailable.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        for (PooledProducerSession pooledSession : closing)
+        {
+            pooledSession.close();
+        }
+    }
+
+}
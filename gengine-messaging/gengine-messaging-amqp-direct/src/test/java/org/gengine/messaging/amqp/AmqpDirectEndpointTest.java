@@ -0,0 +1,197 @@
+package org.gengine.messaging.amqp;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.jms.Message;
+
+import org.apache.qpid.amqp_1_0.jms.Session;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the {@link AmqpDirectEndpoint} message listener against fake sessions and messages
+ */
+public class AmqpDirectEndpointTest
+{
+    private static final int MAX_DELIVERY_ATTEMPTS = 3;
+
+    private FailingEndpoint endpoint;
+    private FakeSession fakeSession;
+    private AmqpDirectEndpoint.AmqpMessageListener listener;
+
+    @Before
+    public void setUp()
+    {
+        endpoint = new FailingEndpoint();
+        endpoint.setMaxDeliveryAttempts(MAX_DELIVERY_ATTEMPTS);
+        fakeSession = new FakeSession();
+        listener = endpoint.new AmqpMessageListener(fakeSession.proxy, 1);
+    }
+
+    @Test
+    public void testProcessedMessageIsAcknowledged()
+    {
+        endpoint.failing = false;
+        FakeMessage message = new FakeMessage("id-1", null);
+
+        listener.onMessage(message.proxy);
+
+        assertEquals(1, endpoint.processed);
+        assertEquals(1, message.acknowledged);
+        assertEquals(0, fakeSession.recovered);
+    }
+
+    @Test
+    public void testFailedMessageIsRecovered()
+    {
+        FakeMessage message = new FakeMessage("id-1", null);
+
+        listener.onMessage(message.proxy);
+
+        assertEquals(0, message.acknowledged);
+        assertEquals(1, fakeSession.recovered);
+    }
+
+    @Test
+    public void testPoisonMessageIsDiscardedAfterMaxDeliveryAttempts()
+    {
+        FakeMessage message = new FakeMessage("id-1", null);
+
+        for (int i = 1; i < MAX_DELIVERY_ATTEMPTS; i++)
+        {
+            listener.onMessage(message.proxy);
+            assertEquals(0, message.acknowledged);
+            assertEquals(i, fakeSession.recovered);
+        }
+        listener.onMessage(message.proxy);
+
+        assertEquals(MAX_DELIVERY_ATTEMPTS, endpoint.processed);
+        assertEquals(1, message.acknowledged);
+        assertEquals(MAX_DELIVERY_ATTEMPTS - 1, fakeSession.recovered);
+
+        // A different message starts counting again
+        FakeMessage nextMessage = new FakeMessage("id-2", null);
+        listener.onMessage(nextMessage.proxy);
+        assertEquals(0, nextMessage.acknowledged);
+        assertEquals(MAX_DELIVERY_ATTEMPTS, fakeSession.recovered);
+    }
+
+    @Test
+    public void testDeliveryCountPropertyIsUsed()
+    {
+        FakeMessage message = new FakeMessage("id-1", MAX_DELIVERY_ATTEMPTS);
+
+        listener.onMessage(message.proxy);
+
+        assertEquals(1, message.acknowledged);
+        assertEquals(0, fakeSession.recovered);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxDeliveryAttempts()
+    {
+        endpoint.setMaxDeliveryAttempts(0);
+    }
+
+    /**
+     * Creates a proxy for the given interface with the given handler
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T createProxy(Class<T> type, InvocationHandler handler)
+    {
+        return (T) Proxy.newProxyInstance(AmqpDirectEndpointTest.class.getClassLoader(),
+                new Class<?>[] { type }, handler);
+    }
+
+    private static Object invokeObjectMethod(Object proxy, Method method, Object[] args)
+    {
+        if (method.getName().equals("equals"))
+        {
+            return proxy == args[0];
+        }
+        if (method.getName().equals("hashCode"))
+        {
+            return System.identityHashCode(proxy);
+        }
+        return proxy.getClass().getSimpleName();
+    }
+
+    private static class FailingEndpoint extends AmqpDirectEndpoint
+    {
+        private volatile boolean failing = true;
+        private volatile int processed;
+
+        @Override
+        protected void processMessage(Message message)
+        {
+            processed++;
+            if (failing)
+            {
+                throw new IllegalStateException("Cannot process message");
+            }
+        }
+    }
+
+    private static class FakeSession implements InvocationHandler
+    {
+        private final Session proxy = createProxy(Session.class, this);
+        private volatile int recovered;
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            if (method.getDeclaringClass() == Object.class)
+            {
+                return invokeObjectMethod(proxy, method, args);
+            }
+            if (method.getName().equals("recover"))
+            {
+                recovered++;
+            }
+            return null;
+        }
+    }
+
+    private static class FakeMessage implements InvocationHandler
+    {
+        private final Message proxy = createProxy(Message.class, this);
+        private final String messageId;
+        private final Integer deliveryCount;
+        private volatile int acknowledged;
+
+        public FakeMessage(String messageId, Integer deliveryCount)
+        {
+            this.messageId = messageId;
+            this.deliveryCount = deliveryCount;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            if (method.getDeclaringClass() == Object.class)
+            {
+                return invokeObjectMethod(proxy, method, args);
+            }
+            if (method.getName().equals("getJMSMessageID"))
+            {
+                return messageId;
+            }
+            if (method.getName().equals("propertyExists"))
+            {
+                return "JMSXDeliveryCount".equals(args[0]) && deliveryCount != null;
+            }
+            if (method.getName().equals("getIntProperty"))
+            {
+                return deliveryCount;
+            }
+            if (method.getName().equals("acknowledge"))
+            {
+                acknowledged++;
+            }
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,320 @@
+package org.gengine.messaging.amqp;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.jms.JMSException;
+
+import org.apache.qpid.amqp_1_0.jms.Connection;
+import org.apache.qpid.amqp_1_0.jms.MessageProducer;
+import org.apache.qpid.amqp_1_0.jms.Session;
+import org.gengine.messaging.amqp.AmqpProducerSessionPool.PooledProducerSession;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of {@link AmqpProducerSessionPool} against a fake connection
+ */
+public class AmqpProducerSessionPoolTest
+{
+    private FakeConnection fakeConnection;
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp()
+    {
+        fakeConnection = new FakeConnection();
+        executorService = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown()
+    {
+        executorService.shutdownNow();
+    }
+
+    protected Future<PooledProducerSession> borrowAsync(final AmqpProducerSessionPool pool)
+    {
+        return executorService.submit(new Callable<PooledProducerSession>()
+        {
+            public PooledProducerSession call() throws Exception
+            {
+                return pool.borrow();
+            }
+        });
+    }
+
+    protected void assertWaiting(Future<PooledProducerSession> future) throws Exception
+    {
+        try
+        {
+            future.get(200, TimeUnit.MILLISECONDS);
+            fail("Expected borrow to wait for a session");
+        }
+        catch (TimeoutException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReleasedSessionIsReused() throws Exception
+    {
+        AmqpProducerSessionPool pool = new AmqpProducerSessionPool(fakeConnection.proxy, 2, 4);
+        PooledProducerSession pooledSession = pool.borrow();
+        pool.release(pooledSession);
+
+        assertSame(pooledSession, pool.borrow());
+        assertEquals(1, fakeConnection.sessions.size());
+        assertEquals(1, pool.getSessionCount());
+        assertEquals(0, pool.getIdleSessionCount());
+    }
+
+    @Test
+    public void testBorrowWaitsForRelease() throws Exception
+    {
+        AmqpProducerSessionPool pool = new AmqpProducerSessionPool(fakeConnection.proxy, 2, 4);
+        PooledProducerSession first = pool.borrow();
+        PooledProducerSession second = pool.borrow();
+        assertNotSame(first, second);
+        assertEquals(2, fakeConnection.sessions.size());
+
+        Future<PooledProducerSession> future = borrowAsync(pool);
+        assertWaiting(future);
+        pool.release(first);
+
+        assertSame(first, future.get(5, TimeUnit.SECONDS));
+        assertEquals(2, fakeConnection.sessions.size());
+    }
+
+    @Test
+    public void testInvalidateMakesRoomForNewSession() throws Exception
+    {
+        AmqpProducerSessionPool pool = new AmqpProducerSessionPool(fakeConnection.proxy, 1, 4);
+        PooledProducerSession invalid = pool.borrow();
+
+        Future<PooledProducerSession> future = borrowAsync(pool);
+        assertWaiting(future);
+        pool.invalidate(invalid);
+
+        PooledProducerSession replacement = future.get(5, TimeUnit.SECONDS);
+        assertNotSame(invalid, replacement);
+        assertTrue(fakeConnection.sessions.get(0).closed);
+        assertEquals(2, fakeConnection.sessions.size());
+        assertEquals(1, pool.getSessionCount());
+    }
+
+    @Test
+    public void testCreateSessionFailureFreesSlot() throws Exception
+    {
+        AmqpProducerSessionPool pool = new AmqpProducerSessionPool(fakeConnection.proxy, 1, 4);
+        fakeConnection.failure = new JMSException("connection lost");
+        try
+        {
+            pool.borrow();
+            fail("Expected session creation to fail");
+        }
+        catch (JMSException e)
+        {
+            assertSame(fakeConnection.failure, e);
+        }
+        assertEquals(0, pool.getSessionCount());
+
+        fakeConnection.failure = null;
+        assertNotNull(pool.borrow());
+    }
+
+    @Test
+    public void testProducerCacheEvictsLeastRecentlyUsed() throws Exception
+    {
+        AmqpProducerSessionPool pool = new AmqpProducerSessionPool(fakeConnection.proxy, 1, 2);
+        PooledProducerSession pooledSession = pool.borrow();
+        FakeSession session = fakeConnection.sessions.get(0);
+
+        MessageProducer producer1 = pooledSession.getProducer("queue:one");
+        pooledSession.getProducer("topic:two");
+        assertSame(producer1, pooledSession.getProducer("queue:one"));
+        pooledSession.getProducer("three");
+
+        // topic:two was least recently used
+        assertEquals(3, session.producers.size());
+        assertTrue(session.producers.get(1).closed);
+        assertFalse(session.producers.get(0).closed);
+        assertSame(producer1, pooledSession.getProducer("queue:one"));
+        assertEquals("topic:two", session.destinations.get(1));
+
+        pooledSession.getProducer("topic:two");
+        assertEquals(4, session.producers.size());
+    }
+
+    @Test
+    public void testCloseClosesIdleAndReleasedSessions() throws Exception
+    {
+        AmqpProducerSessionPool pool = new AmqpProducerSessionPool(fakeConnection.proxy, 2, 4);
+        PooledProducerSession idle = pool.borrow();
+        PooledProducerSession borrowed = pool.borrow();
+        idle.getProducer("queue:one");
+        pool.release(idle);
+
+        pool.close();
+        assertTrue(fakeConnection.sessions.get(0).closed);
+        assertTrue(fakeConnection.sessions.get(0).producers.get(0).closed);
+        assertFalse(fakeConnection.sessions.get(1).closed);
+        try
+        {
+            pool.borrow();
+            fail("Expected borrow from a closed pool to fail");
+        }
+        catch (JMSException e)
+        {
+            // expected
+        }
+
+        pool.release(borrowed);
+        assertTrue(fakeConnection.sessions.get(1).closed);
+        assertEquals(0, pool.getSessionCount());
+        assertEquals(0, pool.getIdleSessionCount());
+    }
+
+    @Test
+    public void testCloseFailsWaitingBorrower() throws Exception
+    {
+        AmqpProducerSessionPool pool = new AmqpProducerSessionPool(fakeConnection.proxy, 1, 4);
+        pool.borrow();
+
+        Future<PooledProducerSession> future = borrowAsync(pool);
+        assertWaiting(future);
+        pool.close();
+        try
+        {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected waiting borrow to fail");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof JMSException);
+        }
+    }
+
+    /**
+     * Creates a proxy for the given interface with the given handler
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T createProxy(Class<T> type, InvocationHandler handler)
+    {
+        return (T) Proxy.newProxyInstance(AmqpProducerSessionPoolTest.class.getClassLoader(),
+                new Class<?>[] { type }, handler);
+    }
+
+    private static Object invokeObjectMethod(Object proxy, Method method, Object[] args)
+    {
+        if (method.getName().equals("equals"))
+        {
+            return proxy == args[0];
+        }
+        if (method.getName().equals("hashCode"))
+        {
+            return System.identityHashCode(proxy);
+        }
+        return proxy.getClass().getSimpleName();
+    }
+
+    private static class FakeConnection implements InvocationHandler
+    {
+        private final Connection proxy = createProxy(Connection.class, this);
+        private final List<FakeSession> sessions = new CopyOnWriteArrayList<FakeSession>();
+        private volatile JMSException failure;
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            if (method.getDeclaringClass() == Object.class)
+            {
+                return invokeObjectMethod(proxy, method, args);
+            }
+            if (method.getName().equals("createSession"))
+            {
+                if (failure != null)
+                {
+                    throw failure;
+                }
+                FakeSession session = new FakeSession();
+                sessions.add(session);
+                return session.proxy;
+            }
+            return null;
+        }
+    }
+
+    private static class FakeSession implements InvocationHandler
+    {
+        private final Session proxy = createProxy(Session.class, this);
+        private final List<FakeProducer> producers = new CopyOnWriteArrayList<FakeProducer>();
+        private final List<String> destinations = new CopyOnWriteArrayList<String>();
+        private volatile boolean closed = false;
+        private String lastDestination;
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            if (method.getDeclaringClass() == Object.class)
+            {
+                return invokeObjectMethod(proxy, method, args);
+            }
+            if (method.getName().equals("createQueue") || method.getName().equals("createTopic"))
+            {
+                lastDestination = (method.getName().equals("createTopic") ? "topic:" : "queue:") + args[0];
+                return createProxy(method.getReturnType(), new InvocationHandler()
+                {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                    {
+                        return invokeObjectMethod(proxy, method, args);
+                    }
+                });
+            }
+            if (method.getName().equals("createProducer"))
+            {
+                FakeProducer producer = new FakeProducer();
+                producers.add(producer);
+                destinations.add(lastDestination);
+                return producer.proxy;
+            }
+            if (method.getName().equals("close"))
+            {
+                closed = true;
+            }
+            return null;
+        }
+    }
+
+    private static class FakeProducer implements InvocationHandler
+    {
+        private final MessageProducer proxy = createProxy(MessageProducer.class, this);
+        private volatile boolean closed = false;
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            if (method.getDeclaringClass() == Object.class)
+            {
+                return invokeObjectMethod(proxy, method, args);
+            }
+            if (method.getName().equals("close"))
+            {
+                closed = true;
+            }
+            return null;
+        }
+    }
+
+}
@@ -1,11 +1,21 @@
 package org.gengine.messaging.benchmark;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.gengine.messaging.MessageConsumer;
 
 /**
- * Consumer of {@link BenchmarkMessage}s which maintains a count of messages received.
+ * Consumer of {@link BenchmarkMessage}s which maintains a count of messages received
+ * and a histogram of their end-to-end latency in microseconds.  It may be called by
+ * concurrent consumers.
+ * <p>
+ * Latency is measured from the message's sent time to its receipt using the wall
+ * clock, so producers and consumers in different JVMs should run on the same host
+ * or on hosts with closely synchronized clocks.
  *
  */
 public class BenchmarkConsumer implements MessageConsumer
@@ -13,7 +23,8 @@ public class BenchmarkConsumer implements MessageConsumer
     private static final Log logger = LogFactory.getLog(BenchmarkConsumer.class);
 
     protected int logAfterNumMessages = 1000;
-    protected int messageCount = 0;
+    protected final AtomicInteger messageCount = new AtomicInteger();
+    protected final Histogram latencyHistogram = new ConcurrentHistogram(3);
 
     public void setLogAfterNumMessages(int logAfterNumMessages)
     {
@@ -28,18 +39,19 @@ public class BenchmarkConsumer implements MessageConsumer
             logger.trace("Receiving message, current messageCount=" + messageCount + "...");
         }
         validateMessage(message);
+        recordLatency((BenchmarkMessage) message);
 
-        messageCount++;
+        int count = messageCount.incrementAndGet();
 
-        if (messageCount > 0 && messageCount % logAfterNumMessages == 0)
+        if (count % logAfterNumMessages == 0)
         {
-            logger.debug("Received " + messageCount + " messages...");
+            logger.debug("Received " + count + " messages...");
         }
         else
         {
             if (logger.isTraceEnabled())
             {
-                logger.trace("Received " + messageCount + " messages...");
+                logger.trace("Received " + count + " messages...");
             }
         }
     }
@@ -53,6 +65,18 @@ public class BenchmarkConsumer implements MessageConsumer
         }
     }
 
+    protected void recordLatency(BenchmarkMessage message)
+    {
+        long sentTimeMicros = message.getSentTimeMicros();
+        if (sentTimeMicros == 0)
+        {
+            // Sent by an older producer with only a millisecond timestamp
+            sentTimeMicros = message.getTimestamp() * 1000;
+        }
+        // Clock adjustments can make latency appear negative
+        latencyHistogram.recordValue(Math.max(0, BenchmarkMessage.currentTimeMicros() - sentTimeMicros));
+    }
+
     @Override
     public Class<?> getConsumingMessageBodyClass()
     {
@@ -61,6 +85,16 @@ public class BenchmarkConsumer implements MessageConsumer
 
     public int getMessageCount()
     {
-        return messageCount;
+        return messageCount.get();
+    }
+
+    /**
+     * Gets the histogram of end-to-end latencies in microseconds
+     *
+     * @return the latency histogram
+     */
+    public Histogram getLatencyHistogram()
+    {
+        return latencyHistogram;
     }
 }
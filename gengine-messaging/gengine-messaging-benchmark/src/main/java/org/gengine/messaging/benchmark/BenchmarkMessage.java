@@ -1,7 +1,9 @@
 package org.gengine.messaging.benchmark;
 
+import java.time.Instant;
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -17,6 +19,7 @@ public class BenchmarkMessage
 
     private String id;
     private Long timestamp;
+    private long sentTimeMicros;
     private String value;
 
     public String getId()
@@ -39,6 +42,22 @@ public class BenchmarkMessage
         this.timestamp = timestamp;
     }
 
+    /**
+     * Gets the time the message was created for sending, with microsecond
+     * resolution where the platform clock allows
+     *
+     * @return microseconds since the epoch, or 0 if not set
+     */
+    public long getSentTimeMicros()
+    {
+        return sentTimeMicros;
+    }
+
+    public void setSentTimeMicros(long sentTimeMicros)
+    {
+        this.sentTimeMicros = sentTimeMicros;
+    }
+
     public String getValue()
     {
         return value;
@@ -54,10 +73,23 @@ public class BenchmarkMessage
         BenchmarkMessage message = new BenchmarkMessage();
         message.setId(UUID.randomUUID().toString());
         message.setTimestamp((new Date()).getTime());
+        message.setSentTimeMicros(currentTimeMicros());
         message.setValue(getDefaultValue());
         return message;
     }
 
+    /**
+     * Gets the current wall clock time in microseconds, which unlike
+     * <code>System.nanoTime()</code> can be compared across JVMs on the same host
+     *
+     * @return microseconds since the epoch
+     */
+    public static long currentTimeMicros()
+    {
+        Instant now = Instant.now();
+        return TimeUnit.SECONDS.toMicros(now.getEpochSecond()) + TimeUnit.NANOSECONDS.toMicros(now.getNano());
+    }
+
     public static String getDefaultValue()
     {
         if (DEFAULT_VALUE == null)
@@ -85,11 +117,17 @@ public class BenchmarkMessage
         NUM_SECTIONS = numSections;
     }
 
+    public static int getDefaultNumSections()
+    {
+        return NUM_SECTIONS;
+    }
+
     @Override
     public int hashCode() {
         return new HashCodeBuilder(17, 31).
             append(id).
             append(timestamp).
+            append(sentTimeMicros).
             append(value).
             toHashCode();
     }
@@ -113,6 +151,7 @@ public class BenchmarkMessage
         return new EqualsBuilder().
             append(id, thatMessage.id).
             append(timestamp, thatMessage.timestamp).
+            append(sentTimeMicros, thatMessage.sentTimeMicros).
             append(value, thatMessage.value).
             isEquals();
     }
@@ -1,5 +1,6 @@
 package org.gengine.messaging.benchmark;
 
+import org.HdrHistogram.Histogram;
 import org.apache.activemq.ActiveMQConnectionFactory;
 import org.apache.camel.CamelContext;
 import org.apache.camel.builder.RouteBuilder;
@@ -12,9 +13,17 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.jms.ConnectionFactory;
 
@@ -22,6 +31,7 @@ import org.gengine.messaging.MessageConsumer;
 import org.gengine.messaging.MessageProducer;
 import org.gengine.messaging.amqp.AmqpDirectEndpoint;
 import org.gengine.messaging.amqp.AmqpNodeBootstrapUtils;
+import org.gengine.messaging.benchmark.result.BenchmarkResult;
 import org.gengine.messaging.camel.CamelMessageProducer;
 import org.gengine.messaging.jackson.ObjectMapperFactory;
 
@@ -34,6 +44,9 @@ import org.gengine.messaging.jackson.ObjectMapperFactory;
  * <ul>
  *  <li><code>tcp</code>: creates a Camel-based endpoint using JSON object marshaling/unmarshaling</li>
  *  <li><code>amqp</code>: creates an {@link AmqpDirectEndpoint} without object marshaling</li>
+ *  <li><code>vm</code>: creates a Camel-based endpoint using ActiveMQ's in-JVM transport</li>
+ *  <li><code>embedded</code>: starts an {@link EmbeddedBroker} and creates a Camel-based endpoint</li>
+ *  <li><code>embedded+amqp</code>: starts an {@link EmbeddedBroker} and creates an {@link AmqpDirectEndpoint}</li>
  * </ul>
  *
  */
@@ -46,6 +59,9 @@ public class BenchmarkRunner
 
     private static final long CHECK_CONSUMER_COMPLETE_PERIOD_MS = 100;
 
+    protected static final double DEFAULT_LATENCY_SLO_MS = 100.0;
+    protected static final double DEFAULT_LATENCY_SLO_PERCENTILE = 99.0;
+
     protected int logAfterNumMessages = 1000;
 
     protected String brokerUrl;
@@ -56,6 +72,25 @@ public class BenchmarkRunner
     protected int numMessages;
     protected boolean runProducer;
     protected boolean runConsumer;
+    protected int numProducers = 1;
+    protected int numConsumers = 1;
+    protected double[] targetRates;
+    protected double latencySloMs = DEFAULT_LATENCY_SLO_MS;
+    protected double latencySloPercentile = DEFAULT_LATENCY_SLO_PERCENTILE;
+
+    /**
+     * The outcome of sending at one target rate in fixed rate mode
+     */
+    protected static class FixedRateStepResult
+    {
+        protected double targetRate;
+        protected int sent;
+        protected int received;
+        protected long sendTimeNanos;
+        protected long receiveTimeNanos;
+        protected Histogram latencyHistogram;
+        protected boolean isSloMet;
+    }
 
     public BenchmarkRunner(String brokerUrl, String brokerUsername, String brokerPassword,
                            String endpointSend, String endpointReceive,
@@ -71,6 +106,76 @@ public class BenchmarkRunner
         this.runConsumer = runConsumer;
     }
 
+    /**
+     * Sets the number of threads sending messages, which split the messages
+     * between them.  Defaults to 1.
+     *
+     * @param numProducers
+     */
+    public void setNumProducers(int numProducers)
+    {
+        if (numProducers < 1)
+        {
+            throw new IllegalArgumentException("numProducers must be at least 1");
+        }
+        this.numProducers = numProducers;
+    }
+
+    /**
+     * Sets the number of concurrent consumers of the receive endpoint.  Defaults to 1.
+     * <p>
+     * Note that each consumer of a topic receives every message.
+     *
+     * @param numConsumers
+     */
+    public void setNumConsumers(int numConsumers)
+    {
+        if (numConsumers < 1)
+        {
+            throw new IllegalArgumentException("numConsumers must be at least 1");
+        }
+        this.numConsumers = numConsumers;
+    }
+
+    /**
+     * Sets the open loop target rates in messages per second, sending the messages
+     * split evenly over steps at each rate in turn, or null to send as fast as
+     * possible.  Defaults to null.
+     *
+     * @param targetRates
+     */
+    public void setTargetRates(double[] targetRates)
+    {
+        if (targetRates != null)
+        {
+            for (double targetRate : targetRates)
+            {
+                if (targetRate <= 0)
+                {
+                    throw new IllegalArgumentException("targetRates must be greater than 0");
+                }
+            }
+        }
+        this.targetRates = targetRates;
+    }
+
+    /**
+     * Sets the latency objective a fixed rate step must meet to be sustainable,
+     * i.e. 100ms at the 99th percentile, the defaults
+     *
+     * @param latencySloMs
+     * @param latencySloPercentile
+     */
+    public void setLatencySlo(double latencySloMs, double latencySloPercentile)
+    {
+        if (latencySloMs <= 0 || latencySloPercentile <= 0 || latencySloPercentile > 100)
+        {
+            throw new IllegalArgumentException("Invalid latency SLO: p" + latencySloPercentile + " <= " + latencySloMs + "ms");
+        }
+        this.latencySloMs = latencySloMs;
+        this.latencySloPercentile = latencySloPercentile;
+    }
+
     protected String getDefaultReceiveEndpoint(String endpointSend)
     {
         return endpointSend;
@@ -88,7 +193,13 @@ public class BenchmarkRunner
         return consumer;
     }
 
-    public void runBenchmark() throws Exception
+    /**
+     * Runs the benchmark, logging the results to sys out
+     *
+     * @return the results, a single closed loop result or one per fixed rate step
+     * @throws Exception
+     */
+    public List<BenchmarkResult> runBenchmark() throws Exception
     {
         if (endpointSend == null)
         {
@@ -99,14 +210,40 @@ public class BenchmarkRunner
             endpointReceive = getDefaultReceiveEndpoint(endpointSend);
         }
         BenchmarkConsumer messageConsumer = null;
-        MessageProducer producer = null;
-
         if (runConsumer)
         {
             messageConsumer = getBenchmarkConsumer();
         }
 
-        if (brokerUrl.startsWith("tcp") || brokerUrl.startsWith("failover") || brokerUrl.startsWith("ssl"))
+        if (!EmbeddedBroker.isEmbeddedUrl(brokerUrl))
+        {
+            return runBenchmark(brokerUrl, messageConsumer);
+        }
+        EmbeddedBroker embeddedBroker = EmbeddedBroker.createInstance(brokerUrl);
+        try
+        {
+            embeddedBroker.start();
+            return runBenchmark(embeddedBroker.getClientBrokerUrl(brokerUrl), messageConsumer);
+        }
+        finally
+        {
+            embeddedBroker.stop();
+        }
+    }
+
+    /**
+     * Runs the benchmark against the given client broker URL
+     *
+     * @param brokerUrl the broker URL, or the client URL of an embedded broker
+     * @param messageConsumer the consumer, or null if not consuming
+     * @return the results
+     * @throws Exception
+     */
+    protected List<BenchmarkResult> runBenchmark(String brokerUrl, BenchmarkConsumer messageConsumer) throws Exception
+    {
+        MessageProducer producer = null;
+        if (brokerUrl.startsWith("tcp") || brokerUrl.startsWith("failover") || brokerUrl.startsWith("ssl")
+                || brokerUrl.startsWith("vm"))
         {
             logger.debug("Initializing Camel Endpoint: "+brokerUrl+(brokerUsername != null ? " ("+brokerUsername+")": ""));
             producer = initializeCamelEndpoint(brokerUrl, brokerUsername, brokerPassword,
@@ -124,31 +261,21 @@ public class BenchmarkRunner
             throw new IllegalArgumentException("Unsupported transport in " + brokerUrl);
         }
 
-        logStart(numMessages, brokerUrl, endpointSend, endpointReceive, runProducer, runConsumer);
+        logStart(numMessages, (!brokerUrl.equals(this.brokerUrl) ? this.brokerUrl + " (" + brokerUrl + ")" : brokerUrl), endpointSend, endpointReceive, runProducer, runConsumer);
+
+        if (targetRates != null && runProducer)
+        {
+            List<FixedRateStepResult> results = runFixedRateSteps(producer, messageConsumer);
+            logFixedRateStatistics(results, messageConsumer != null);
+            return getFixedRateResults(results, messageConsumer != null);
+        }
 
         long start = (new Date()).getTime();
         long sendTime = 0;
 
         if (runProducer)
         {
-            // Send the messages
-            for (int i = 0; i < numMessages; i++)
-            {
-                Object message = getBenchmarkMessage(i);
-                producer.send(message);
-
-                if (i > 0 && i % logAfterNumMessages == 0)
-                {
-                    logger.debug("Sent " + (i + 1) + " messages...");
-                }
-                else
-                {
-                    if (logger.isTraceEnabled())
-                    {
-                        logger.trace("Sent " + (i + 1) + " messages...");
-                    }
-                }
-            }
+            sendMessages(producer);
             long endSend = (new Date()).getTime();
             sendTime = endSend - start;
         }
@@ -156,57 +283,353 @@ public class BenchmarkRunner
         long receiveTime = 0;
         if (runConsumer)
         {
-            int noneConsumedCount = 0;
-            int lastMessageCount = messageConsumer.getMessageCount();
+            awaitMessages(messageConsumer, numMessages);
+            long end = (new Date()).getTime();
+            receiveTime = end - start;
+        }
+
+        if (producer instanceof AmqpDirectEndpoint)
+        {
+            // TODO why is this needed to enqueue all messages for AMQP (eg. when running "produce-only")
+            // note: not currently counted in throughput calculations
+            int delaySecs = 5;
+            logger.debug("Waiting for "+delaySecs+" secs ...");
+            Thread.sleep(delaySecs*1000);
+        }
+
+        logStatistics((runProducer ? producer : null), (runConsumer ? messageConsumer : null),
+                getBenchmarkMessage(0), numMessages, (runConsumer ? messageConsumer.getMessageCount() : 0),
+                sendTime, receiveTime);
+
+        List<BenchmarkResult> results = new ArrayList<BenchmarkResult>(1);
+        results.add(getClosedLoopResult((runConsumer ? messageConsumer : null),
+                numMessages, (runConsumer ? messageConsumer.getMessageCount() : 0), sendTime, receiveTime));
+        return results;
+    }
 
-            // Wait for consumer to dequeue all expected messages (or else timeout)
-            while ((lastMessageCount < numMessages) && (noneConsumedCount < 100))
+    /**
+     * Creates a result with the parameters common to all runs
+     *
+     * @param name
+     * @return the result
+     */
+    protected BenchmarkResult createResult(String name)
+    {
+        BenchmarkResult result = new BenchmarkResult(name);
+        result.addParameter("brokerUrl", brokerUrl);
+        result.addParameter("endpointSend", endpointSend);
+        result.addParameter("endpointReceive", endpointReceive);
+        result.addParameter("numMessages", numMessages);
+        result.addParameter("numSections", BenchmarkMessage.getDefaultNumSections());
+        result.addParameter("runProducer", runProducer);
+        result.addParameter("runConsumer", runConsumer);
+        result.addParameter("numProducers", numProducers);
+        result.addParameter("numConsumers", numConsumers);
+        return result;
+    }
+
+    protected BenchmarkResult getClosedLoopResult(BenchmarkConsumer consumer,
+            int numMessagesSent, int numMessagesReceived, long sendTime, long receiveTime)
+    {
+        BenchmarkResult result = createResult("closedLoop");
+        if (runProducer)
+        {
+            result.addMetric("sent", numMessagesSent, "messages", true);
+            result.addMetric("sendTime", sendTime, "ms", false);
+        }
+        if (consumer != null)
+        {
+            result.addMetric("received", numMessagesReceived, "messages", true);
+            result.addMetric("receiveTime", receiveTime, "ms", false);
+        }
+        long time = consumer != null ? receiveTime : sendTime;
+        if (time > 0)
+        {
+            result.addMetric("throughput", numMessagesSent / (time / 1000.0), "messages/second", true);
+        }
+        if (consumer != null)
+        {
+            addLatencyMetrics(result, consumer.getLatencyHistogram());
+        }
+        return result;
+    }
+
+    /**
+     * Gets a result for each fixed rate step, and a summary of the highest
+     * target rate which met the latency SLO if messages were consumed
+     *
+     * @param stepResults
+     * @param isConsumed
+     * @return the results
+     */
+    protected List<BenchmarkResult> getFixedRateResults(List<FixedRateStepResult> stepResults, boolean isConsumed)
+    {
+        List<BenchmarkResult> results = new ArrayList<BenchmarkResult>(stepResults.size() + 1);
+        double sustainableRate = 0;
+        for (FixedRateStepResult stepResult : stepResults)
+        {
+            BenchmarkResult result = createResult("fixedRate-" + Math.round(stepResult.targetRate));
+            result.addParameter("targetRate", stepResult.targetRate);
+            result.addMetric("sent", stepResult.sent, "messages", true);
+            result.addMetric("sendRate", stepResult.sent / (stepResult.sendTimeNanos / 1e9), "messages/second", true);
+            if (isConsumed)
             {
-                try
+                result.addMetric("received", stepResult.received, "messages", true);
+                addLatencyMetrics(result, stepResult.latencyHistogram);
+                if (stepResult.isSloMet && stepResult.targetRate > sustainableRate)
                 {
-                    if (logger.isTraceEnabled())
+                    sustainableRate = stepResult.targetRate;
+                }
+            }
+            results.add(result);
+        }
+        if (isConsumed)
+        {
+            BenchmarkResult summary = createResult("fixedRate");
+            summary.addParameter("targetRates", formatRates(targetRates));
+            summary.addParameter("latencySloMs", latencySloMs);
+            summary.addParameter("latencySloPercentile", latencySloPercentile);
+            summary.addMetric("sustainableThroughput", sustainableRate, "messages/second", true);
+            results.add(summary);
+        }
+        return results;
+    }
+
+    /**
+     * Adds the percentiles of the given latency histogram, recorded in microseconds,
+     * as millisecond metrics
+     *
+     * @param result
+     * @param histogram
+     */
+    protected void addLatencyMetrics(BenchmarkResult result, Histogram histogram)
+    {
+        if (histogram.getTotalCount() == 0)
+        {
+            return;
+        }
+        result.addMetric("latencyP50", histogram.getValueAtPercentile(50.0) / 1000.0, "ms", false);
+        result.addMetric("latencyP90", histogram.getValueAtPercentile(90.0) / 1000.0, "ms", false);
+        result.addMetric("latencyP99", histogram.getValueAtPercentile(99.0) / 1000.0, "ms", false);
+        result.addMetric("latencyP99.9", histogram.getValueAtPercentile(99.9) / 1000.0, "ms", false);
+        result.addMetric("latencyMax", histogram.getMaxValue() / 1000.0, "ms", false);
+        result.addMetric("latencyMean", histogram.getMean() / 1000.0, "ms", false);
+    }
+
+    /**
+     * Sends the messages from <code>numProducers</code> threads, each sending an equal
+     * share with any remainder spread over the first threads, and waits for them all
+     *
+     * @param producer
+     * @throws Exception the first error thrown by a producer thread
+     */
+    protected void sendMessages(final MessageProducer producer) throws Exception
+    {
+        final AtomicInteger sentCount = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(numProducers);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(numProducers);
+        int messageIndex = 0;
+        for (int thread = 0; thread < numProducers; thread++)
+        {
+            final int firstMessage = messageIndex;
+            final int threadMessages = numMessages / numProducers + (thread < numMessages % numProducers ? 1 : 0);
+            messageIndex += threadMessages;
+            futures.add(executorService.submit(new Callable<Void>()
+            {
+                public Void call() throws Exception
+                {
+                    for (int i = firstMessage; i < firstMessage + threadMessages; i++)
                     {
-                        logger.trace("Consumer still working, sleeping " + CHECK_CONSUMER_COMPLETE_PERIOD_MS + "ms");
+                        Object message = getBenchmarkMessage(i);
+                        producer.send(message);
+
+                        int sent = sentCount.incrementAndGet();
+                        if (sent % logAfterNumMessages == 0)
+                        {
+                            logger.debug("Sent " + sent + " messages...");
+                        }
+                        else
+                        {
+                            if (logger.isTraceEnabled())
+                            {
+                                logger.trace("Sent " + sent + " messages...");
+                            }
+                        }
                     }
-                    Thread.sleep(CHECK_CONSUMER_COMPLETE_PERIOD_MS);
+                    return null;
                 }
-                catch (InterruptedException e)
+            }));
+        }
+        executorService.shutdown();
+        try
+        {
+            for (Future<Void> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (ExecutionException e)
+        {
+            executorService.shutdownNow();
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Waits for the consumer to have received the expected number of messages,
+     * or until none have been received for 100 checks
+     *
+     * @param messageConsumer
+     * @param expectedCount
+     */
+    protected void awaitMessages(BenchmarkConsumer messageConsumer, int expectedCount)
+    {
+        int noneConsumedCount = 0;
+        int lastMessageCount = messageConsumer.getMessageCount();
+
+        // Wait for consumer to dequeue all expected messages (or else timeout)
+        while ((lastMessageCount < expectedCount) && (noneConsumedCount < 100))
+        {
+            try
+            {
+                if (logger.isTraceEnabled())
                 {
+                    logger.trace("Consumer still working, sleeping " + CHECK_CONSUMER_COMPLETE_PERIOD_MS + "ms");
                 }
+                Thread.sleep(CHECK_CONSUMER_COMPLETE_PERIOD_MS);
+            }
+            catch (InterruptedException e)
+            {
+            }
+
+            if (lastMessageCount < messageConsumer.getMessageCount())
+            {
+                lastMessageCount = messageConsumer.getMessageCount();
+                noneConsumedCount = 0;
+            }
+            else
+            {
+                noneConsumedCount++;
 
-                if (lastMessageCount < messageConsumer.getMessageCount())
+                if (logger.isTraceEnabled())
                 {
-                    lastMessageCount = messageConsumer.getMessageCount();
-                    noneConsumedCount = 0;
+                    logger.trace("Anymore messages - none received since last sleep (x" + noneConsumedCount + ")");
                 }
-                else
-                {
-                    noneConsumedCount++;
+            }
+        }
+    }
 
-                    if (logger.isTraceEnabled())
+    /**
+     * Runs a fixed rate step for each target rate in turn, waiting for the
+     * consumer, if any, to receive each step's messages before the next
+     *
+     * @param producer
+     * @param messageConsumer may be null
+     * @return the result of each step
+     * @throws Exception
+     */
+    protected List<FixedRateStepResult> runFixedRateSteps(MessageProducer producer,
+            BenchmarkConsumer messageConsumer) throws Exception
+    {
+        List<FixedRateStepResult> results = new ArrayList<FixedRateStepResult>(targetRates.length);
+        int expectedCount = messageConsumer != null ? messageConsumer.getMessageCount() : 0;
+        for (int step = 0; step < targetRates.length; step++)
+        {
+            int stepMessages = numMessages / targetRates.length + (step < numMessages % targetRates.length ? 1 : 0);
+            FixedRateStepResult result = new FixedRateStepResult();
+            result.targetRate = targetRates[step];
+            result.sent = stepMessages;
+            logger.debug("Sending " + stepMessages + " messages at " + result.targetRate + " messages/second...");
+
+            if (messageConsumer != null)
+            {
+                messageConsumer.getLatencyHistogram().reset();
+            }
+            long start = System.nanoTime();
+            sendMessagesAtFixedRate(producer, result.targetRate, stepMessages);
+            result.sendTimeNanos = System.nanoTime() - start;
+
+            if (messageConsumer != null)
+            {
+                expectedCount += stepMessages;
+                awaitMessages(messageConsumer, expectedCount);
+                result.receiveTimeNanos = System.nanoTime() - start;
+                result.received = stepMessages - (expectedCount - messageConsumer.getMessageCount());
+                result.latencyHistogram = messageConsumer.getLatencyHistogram().copy();
+                result.isSloMet = result.received == stepMessages &&
+                        result.latencyHistogram.getValueAtPercentile(latencySloPercentile) / 1000.0 <= latencySloMs;
+                // Don't count messages lost in this step against the next
+                expectedCount = messageConsumer.getMessageCount();
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Sends messages open loop: each message has an intended send time on a fixed
+     * schedule from the start of the step, which producer threads wait for but never
+     * skip, so a producer held up by a slow send catches up rather than lowering the
+     * offered rate.
+     * <p>
+     * The messages' sent times are set to their intended send times, so measured
+     * latency includes any time spent waiting to be sent, avoiding coordinated omission.
+     *
+     * @param producer
+     * @param targetRate messages per second across all producer threads
+     * @param stepMessages
+     * @throws Exception the first error thrown by a producer thread
+     */
+    protected void sendMessagesAtFixedRate(final MessageProducer producer, final double targetRate,
+            final int stepMessages) throws Exception
+    {
+        // Wall clock first so that any delay between the two readings can only overstate latency
+        final long startMicros = BenchmarkMessage.currentTimeMicros();
+        final long startNanos = System.nanoTime();
+        final double intervalNanos = TimeUnit.SECONDS.toNanos(1) / targetRate;
+        ExecutorService executorService = Executors.newFixedThreadPool(numProducers);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(numProducers);
+        for (int thread = 0; thread < numProducers; thread++)
+        {
+            final int firstMessage = thread;
+            futures.add(executorService.submit(new Callable<Void>()
+            {
+                public Void call() throws Exception
+                {
+                    // Threads take interleaved slots of the schedule
+                    for (int i = firstMessage; i < stepMessages; i += numProducers)
                     {
-                        logger.trace("Anymore messages - none received since last sleep (x" + noneConsumedCount + ")");
+                        long intendedOffsetNanos = (long) (i * intervalNanos);
+                        long delayNanos;
+                        while ((delayNanos = startNanos + intendedOffsetNanos - System.nanoTime()) > 0)
+                        {
+                            LockSupport.parkNanos(delayNanos);
+                        }
+                        Object message = getBenchmarkMessage(i);
+                        if (message instanceof BenchmarkMessage)
+                        {
+                            ((BenchmarkMessage) message).setSentTimeMicros(
+                                    startMicros + TimeUnit.NANOSECONDS.toMicros(intendedOffsetNanos));
+                        }
+                        producer.send(message);
                     }
+                    return null;
                 }
+            }));
+        }
+        executorService.shutdown();
+        try
+        {
+            for (Future<Void> future : futures)
+            {
+                future.get();
             }
-            long end = (new Date()).getTime();
-            receiveTime = end - start;
         }
-
-        if (producer instanceof AmqpDirectEndpoint)
+        catch (ExecutionException e)
         {
-            // TODO why is this needed to enqueue all messages for AMQP (eg. when running "produce-only")
-            // note: not currently counted in throughput calculations
-            int delaySecs = 5;
-            logger.debug("Waiting for "+delaySecs+" secs ...");
-            Thread.sleep(delaySecs*1000);
+            executorService.shutdownNow();
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
         }
-
-        logStatistics((runProducer ? producer : null), (runConsumer ? messageConsumer : null),
-                getBenchmarkMessage(0), numMessages, (runConsumer ? messageConsumer.getMessageCount() : 0),
-                sendTime, receiveTime);
-
-        System.exit(0);
     }
 
     /**
@@ -240,7 +663,7 @@ public class BenchmarkRunner
         {
             context.addRoutes(new RouteBuilder() {
                 public void configure() {
-                    from("amqp:" + endpointReceive).unmarshal(dataFormat).bean(messageConsumer, "onReceive");
+                    from("amqp:" + getConcurrentConsumersEndpoint(endpointReceive)).unmarshal(dataFormat).bean(messageConsumer, "onReceive");
                 }
             });
         }
@@ -260,6 +683,22 @@ public class BenchmarkRunner
         return messageProducer;
     }
 
+    /**
+     * Adds the number of concurrent consumers to the given Camel JMS endpoint
+     *
+     * @param endpoint
+     * @return the endpoint URI
+     */
+    protected String getConcurrentConsumersEndpoint(String endpoint)
+    {
+        if (numConsumers <= 1)
+        {
+            return endpoint;
+        }
+        return endpoint + (endpoint.contains("?") ? "&" : "?") +
+                "concurrentConsumers=" + numConsumers + "&maxConcurrentConsumers=" + numConsumers;
+    }
+
     /**
      * Initializes a Qpid-based AMQP endpoint with no object marshaling with given
      * brokerUrl, endpoint, and messageConsumer.
@@ -276,6 +715,12 @@ public class BenchmarkRunner
     {
         AmqpDirectEndpoint amqpEndpoint =
                 AmqpNodeBootstrapUtils.createEndpoint(messageConsumer, brokerUrl, brokerUsername, brokerPassword, endpointSend, endpointReceive);
+        amqpEndpoint.setConsumerCount(numConsumers);
+        if (numProducers > 1)
+        {
+            // A session per producer thread so sends aren't serialized on the pool
+            amqpEndpoint.setProducerSessionCount(numProducers);
+        }
 
         if (messageConsumer != null)
         {
@@ -316,6 +761,9 @@ public class BenchmarkRunner
                 + (runProducer && !runConsumer  ? "Sending..." + "\n\n": "")
                 + (runConsumer && !runProducer ? "Receiving..." + "\n\n": "")
                 + "Number of Messages: " + numMessages + "\n"
+                + (runProducer ? "Producer Threads:   " + numProducers + "\n": "")
+                + (runConsumer ? "Consumers:          " + numConsumers + "\n": "")
+                + (runProducer && targetRates != null ? "Target Rates:       " + formatRates(targetRates) + " messages/second\n": "")
                 + "Broker URL:         " + brokerUrl + "\n"
                 + (runProducer ? "Send Endpoint:      " + endpointSend + "\n": "")
                 + (runConsumer ? "Receive Endpoint:   " + endpointReceive + "\n": "")
@@ -349,6 +797,7 @@ public class BenchmarkRunner
                 + (consumer != null ? "Received:        " + numMessagesReceived + " messages in " + formatMillis(receiveTime)
                     + (numMessagesReceived != numMessagesSent ? " (*)" : "") + "\n" : "")
                 + "Throughput:      " + Math.round(messagesPerSecond) + " messages/second\n"
+                + (consumer != null ? formatLatency(consumer.getLatencyHistogram()) : "")
                 + LOG_SEPERATOR + "\n"
                 + "Note that results include time taken for factors\n"
                 + "like marshalling/unmarshalling of messages, network\n"
@@ -356,6 +805,90 @@ public class BenchmarkRunner
                 + "broker's performance.\n");
     }
 
+    /**
+     * Logs the results of each fixed rate step and the highest target rate
+     * which met the latency SLO to sys out
+     *
+     * @param results
+     * @param isConsumed whether messages were consumed, so latency was measured
+     */
+    protected void logFixedRateStatistics(List<FixedRateStepResult> results, boolean isConsumed)
+    {
+        StringBuilder report = new StringBuilder("\n"
+                + LOG_SEPERATOR
+                + "BENCHMARK RESULTS (FIXED RATE)\n"
+                + LOG_SEPERATOR);
+        double sustainableRate = 0;
+        for (FixedRateStepResult result : results)
+        {
+            report.append("Target Rate:     " + Math.round(result.targetRate) + " messages/second\n");
+            report.append("Sent:            " + result.sent + " messages in "
+                    + formatMillis(TimeUnit.NANOSECONDS.toMillis(result.sendTimeNanos))
+                    + " (" + Math.round(result.sent / (result.sendTimeNanos / 1e9)) + " messages/second)\n");
+            if (isConsumed)
+            {
+                report.append("Received:        " + result.received + " messages in "
+                        + formatMillis(TimeUnit.NANOSECONDS.toMillis(result.receiveTimeNanos))
+                        + (result.received != result.sent ? " (*)" : "") + "\n");
+                report.append(formatLatency(result.latencyHistogram));
+                report.append("SLO:             " + (result.isSloMet ? "met" : "missed") + "\n");
+                if (result.isSloMet && result.targetRate > sustainableRate)
+                {
+                    sustainableRate = result.targetRate;
+                }
+            }
+            report.append("\n");
+        }
+        if (isConsumed)
+        {
+            report.append("Sustainable throughput at p" + new DecimalFormat("#.###").format(latencySloPercentile)
+                    + " <= " + new DecimalFormat("#.###").format(latencySloMs) + "ms: "
+                    + (sustainableRate > 0 ? Math.round(sustainableRate) + " messages/second" : "none of the target rates")
+                    + "\n");
+        }
+        report.append(LOG_SEPERATOR + "\n"
+                + "Latency is measured from each message's intended send time\n"
+                + "so includes any time it waited behind a slow producer.\n");
+        System.out.println(report.toString());
+    }
+
+    /**
+     * Formats the percentiles of the given latency histogram, recorded in microseconds
+     *
+     * @param histogram
+     * @return the latency lines of the report, or an empty string if nothing was recorded
+     */
+    protected String formatLatency(Histogram histogram)
+    {
+        if (histogram.getTotalCount() == 0)
+        {
+            return "";
+        }
+        DecimalFormat df = new DecimalFormat("0.000");
+        return "Latency (ms):    "
+                + "p50=" + df.format(histogram.getValueAtPercentile(50.0) / 1000.0)
+                + " p90=" + df.format(histogram.getValueAtPercentile(90.0) / 1000.0)
+                + " p99=" + df.format(histogram.getValueAtPercentile(99.0) / 1000.0)
+                + " p99.9=" + df.format(histogram.getValueAtPercentile(99.9) / 1000.0)
+                + " max=" + df.format(histogram.getMaxValue() / 1000.0) + "\n"
+                + "                 mean=" + df.format(histogram.getMean() / 1000.0)
+                + " over " + histogram.getTotalCount() + " messages\n";
+    }
+
+    protected String formatRates(double[] rates)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (double rate : rates)
+        {
+            if (builder.length() > 0)
+            {
+                builder.append(", ");
+            }
+            builder.append(Math.round(rate));
+        }
+        return builder.toString();
+    }
+
     /**
      * Formats a millisecond value for rounded seconds if sufficiently large
      *
@@ -1,7 +1,12 @@
 package org.gengine.messaging.benchmark;
 
+import java.io.File;
+import java.util.List;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.gengine.messaging.benchmark.result.BenchmarkResult;
+import org.gengine.messaging.benchmark.result.BenchmarkResults;
 
 /**
  * Boostrap which creates and runs a {@link BenchmarkRunner}
@@ -13,8 +18,10 @@ public class Bootstrap
 
     protected static final String USAGE_MESSAGE =
             "\n\nUSAGE: brokerUrl numMessages [un=<username>] [pw=<password>] "
-            + "[endpointSend] [endpointReceive] [consume-only] [produce-only] [sections=<n>]\n\n"
-            + "\tbrokerUrl\tThe broker URL, examples: tcp://localhost:61616, amqp://my.host.test:5672, ampqs://my.host.test:5671, amqp+ssl://my.host.test:5671\n"
+            + "[endpointSend] [endpointReceive] [consume-only] [produce-only] [sections=<n>] "
+            + "[producers=<n>] [consumers=<n>] [rate=<rates>] [slo=<ms>] [sloPercentile=<p>] [results=<file>]\n\n"
+            + "\tbrokerUrl\tThe broker URL, examples: tcp://localhost:61616, amqp://my.host.test:5672, ampqs://my.host.test:5671, amqp+ssl://my.host.test:5671, "
+            + "vm://localhost, or embedded:// or embedded+amqp:// to start an in-process broker\n"
             + "\tun=<username>\tThe broker username, example: un=admin\n"
             + "\tpw=<password>\tThe broker password, example: pw=mysecretpassword\n"
             + "\tnumMessages\tThe number of messages to send and/or expect\n"
@@ -22,7 +29,15 @@ public class Bootstrap
             + "\tendpointReceive\tThe endpoint to consumer messages from, default: queue:gengine.test.benchmark\n"
             + "\tconsume-only\tConsume only, do not produce messages\n"
             + "\tproduce-only\tProduce only, do not consumer messages\n"
-            + "\tsections=<n>\tNumber of sections (x approx 446 bytes) on default message (default = 100)\n";
+            + "\tsections=<n>\tNumber of sections (x approx 446 bytes) on default message (default = 100)\n"
+            + "\tproducers=<n>\tNumber of producer threads splitting the messages between them (default = 1)\n"
+            + "\tconsumers=<n>\tNumber of concurrent consumers of the receive endpoint (default = 1)\n"
+            + "\trate=<rates>\tSend open loop at fixed rates in messages/second, splitting the messages over steps, "
+            + "examples: rate=1000, rate=1000,2000,4000, rate=1000-5000x5 (5 steps from 1000 to 5000)\n"
+            + "\tslo=<ms>\tLatency objective a fixed rate step must meet (default = 100)\n"
+            + "\tsloPercentile=<p>\tPercentile the latency objective applies to (default = 99)\n"
+            + "\tresults=<file>\tWrite the results with environment details to the file, as CSV if it ends with .csv otherwise JSON, "
+            + "see BenchmarkResultComparator to compare two result files\n";
 
     public static void main(String[] args)
     {
@@ -41,13 +56,23 @@ public class Bootstrap
                     argsObject.numMessages,
                     argsObject.runProducer,
                     argsObject.runConsumer);
-            runner.runBenchmark();
+            runner.setNumProducers(argsObject.numProducers);
+            runner.setNumConsumers(argsObject.numConsumers);
+            runner.setTargetRates(argsObject.targetRates);
+            runner.setLatencySlo(argsObject.latencySloMs, argsObject.latencySloPercentile);
+            List<BenchmarkResult> results = runner.runBenchmark();
+            if (argsObject.resultsFile != null)
+            {
+                BenchmarkResults.write(results, new File(argsObject.resultsFile));
+                System.out.println("Results written to " + argsObject.resultsFile);
+            }
         }
         catch (Exception e)
         {
             logger.error(e.getMessage(), e);
             System.exit(1);
         }
+        System.exit(0);
     }
 
     public static BootstrapArguments parse(String args[])
@@ -63,7 +88,7 @@ public class Bootstrap
 
         argsObject.numMessages = Integer.valueOf(args[1]);
 
-        for (int i = 2; i < 8; i++)
+        for (int i = 2; i < args.length; i++)
         {
             if (args.length > i)
             {
@@ -91,6 +116,54 @@ public class Bootstrap
                         argsObject.numSections = Integer.valueOf(split[1]);
                     }
                 }
+                else if (args[i].startsWith("producers="))
+                {
+                    String[] split = args[i].split("producers=");
+                    if (split.length == 2)
+                    {
+                        argsObject.numProducers = Integer.valueOf(split[1]);
+                    }
+                }
+                else if (args[i].startsWith("consumers="))
+                {
+                    String[] split = args[i].split("consumers=");
+                    if (split.length == 2)
+                    {
+                        argsObject.numConsumers = Integer.valueOf(split[1]);
+                    }
+                }
+                else if (args[i].startsWith("rate="))
+                {
+                    String[] split = args[i].split("rate=");
+                    if (split.length == 2)
+                    {
+                        argsObject.targetRates = parseRates(split[1]);
+                    }
+                }
+                else if (args[i].startsWith("sloPercentile="))
+                {
+                    String[] split = args[i].split("sloPercentile=");
+                    if (split.length == 2)
+                    {
+                        argsObject.latencySloPercentile = Double.valueOf(split[1]);
+                    }
+                }
+                else if (args[i].startsWith("slo="))
+                {
+                    String[] split = args[i].split("slo=");
+                    if (split.length == 2)
+                    {
+                        argsObject.latencySloMs = Double.valueOf(split[1]);
+                    }
+                }
+                else if (args[i].startsWith("results="))
+                {
+                    String[] split = args[i].split("results=");
+                    if (split.length == 2)
+                    {
+                        argsObject.resultsFile = split[1];
+                    }
+                }
                 else if (args[i].equals("consume-only"))
                 {
                     argsObject.runProducer = false;
@@ -113,6 +186,42 @@ public class Bootstrap
         return argsObject;
     }
 
+    /**
+     * Parses a comma separated list of rates, or a ramp of the form
+     * <code>&lt;from&gt;-&lt;to&gt;x&lt;steps&gt;</code> with evenly spaced steps
+     *
+     * @param rates
+     * @return the rates
+     */
+    protected static double[] parseRates(String rates)
+    {
+        int rampStepsIndex = rates.indexOf('x');
+        if (rampStepsIndex > 0)
+        {
+            String[] range = rates.substring(0, rampStepsIndex).split("-");
+            int steps = Integer.valueOf(rates.substring(rampStepsIndex + 1));
+            if (range.length != 2 || steps < 1)
+            {
+                throw new IllegalArgumentException("Invalid rate ramp: " + rates);
+            }
+            double from = Double.valueOf(range[0]);
+            double to = Double.valueOf(range[1]);
+            double[] parsed = new double[steps];
+            for (int i = 0; i < steps; i++)
+            {
+                parsed[i] = steps == 1 ? from : from + (to - from) * i / (steps - 1);
+            }
+            return parsed;
+        }
+        String[] split = rates.split(",");
+        double[] parsed = new double[split.length];
+        for (int i = 0; i < split.length; i++)
+        {
+            parsed[i] = Double.valueOf(split[i].trim());
+        }
+        return parsed;
+    }
+
     protected static boolean isSupportedEndpoint(String endpoint)
     {
         return endpoint != null && (endpoint.startsWith("queue") || endpoint.startsWith("topic"));
@@ -11,4 +11,10 @@ public class BootstrapArguments
     public boolean runProducer = true;
     public boolean runConsumer = true;
     public int numSections = 100; // see also BenchmarkMessage
+    public int numProducers = 1;
+    public int numConsumers = 1;
+    public double[] targetRates; // null for closed loop, see also BenchmarkRunner
+    public double latencySloMs = 100.0;
+    public double latencySloPercentile = 99.0;
+    public String resultsFile; // null for none, .csv for CSV otherwise JSON
 }
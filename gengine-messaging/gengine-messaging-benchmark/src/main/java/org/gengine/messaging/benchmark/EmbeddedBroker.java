@@ -0,0 +1,192 @@
+package org.gengine.messaging.benchmark;
+
+import java.net.URI;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An ActiveMQ broker started inside the benchmark JVM so that results can be
+ * reproduced on a single machine without an external broker.
+ * <p>
+ * The broker is non-persistent with JMX and advisories disabled, and listens on
+ * OpenWire and AMQP connectors bound to the loopback interface.  Connector ports
+ * default to free ephemeral ports.
+ *
+ */
+public class EmbeddedBroker
+{
+    private static final Log logger = LogFactory.getLog(EmbeddedBroker.class);
+
+    public static final String URL_PREFIX_EMBEDDED = "embedded://";
+    public static final String URL_PREFIX_EMBEDDED_AMQP = "embedded+amqp://";
+
+    private static final String DEFAULT_HOST = "localhost";
+    private static final String BROKER_NAME = "gengine-benchmark";
+
+    private String host = DEFAULT_HOST;
+    private int openWirePort = 0;
+    private int amqpPort = 0;
+
+    private BrokerService brokerService;
+    private URI openWireUri;
+    private URI amqpUri;
+
+    /**
+     * Determines whether the given broker URL selects an embedded broker
+     *
+     * @param brokerUrl
+     * @return true for <code>embedded://</code> or <code>embedded+amqp://</code> URLs
+     */
+    public static boolean isEmbeddedUrl(String brokerUrl)
+    {
+        return brokerUrl != null &&
+                (brokerUrl.startsWith(URL_PREFIX_EMBEDDED) || brokerUrl.startsWith(URL_PREFIX_EMBEDDED_AMQP));
+    }
+
+    /**
+     * Creates an embedded broker from a URL such as <code>embedded://</code> or
+     * <code>embedded+amqp://localhost:5672</code>, where a given port is used for
+     * the connector of the selected protocol
+     *
+     * @param brokerUrl
+     * @return the unstarted broker
+     */
+    public static EmbeddedBroker createInstance(String brokerUrl)
+    {
+        if (!isEmbeddedUrl(brokerUrl))
+        {
+            throw new IllegalArgumentException("Invalid embedded broker URL: " + brokerUrl);
+        }
+        boolean isAmqp = brokerUrl.startsWith(URL_PREFIX_EMBEDDED_AMQP);
+        // Parsed by hand as java.net.URI rejects an empty authority, i.e. embedded://
+        String authority = brokerUrl.substring(
+                (isAmqp ? URL_PREFIX_EMBEDDED_AMQP : URL_PREFIX_EMBEDDED).length());
+        int authorityEnd = authority.indexOf('/');
+        if (authorityEnd >= 0)
+        {
+            authority = authority.substring(0, authorityEnd);
+        }
+        EmbeddedBroker broker = new EmbeddedBroker();
+        int portIndex = authority.lastIndexOf(':');
+        String host = portIndex >= 0 ? authority.substring(0, portIndex) : authority;
+        if (!host.isEmpty())
+        {
+            broker.setHost(host);
+        }
+        if (portIndex >= 0)
+        {
+            int port;
+            try
+            {
+                port = Integer.parseInt(authority.substring(portIndex + 1));
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("Invalid embedded broker URL: " + brokerUrl, e);
+            }
+            if (isAmqp)
+            {
+                broker.setAmqpPort(port);
+            }
+            else
+            {
+                broker.setOpenWirePort(port);
+            }
+        }
+        return broker;
+    }
+
+    public String getHost()
+    {
+        return host;
+    }
+
+    public int getOpenWirePort()
+    {
+        return openWirePort;
+    }
+
+    public int getAmqpPort()
+    {
+        return amqpPort;
+    }
+
+    public void setHost(String host)
+    {
+        this.host = host;
+    }
+
+    public void setOpenWirePort(int openWirePort)
+    {
+        this.openWirePort = openWirePort;
+    }
+
+    public void setAmqpPort(int amqpPort)
+    {
+        this.amqpPort = amqpPort;
+    }
+
+    /**
+     * Starts the broker and waits for it to accept connections
+     *
+     * @throws Exception
+     */
+    public void start() throws Exception
+    {
+        brokerService = new BrokerService();
+        brokerService.setBrokerName(BROKER_NAME);
+        brokerService.setPersistent(false);
+        brokerService.setUseJmx(false);
+        brokerService.setAdvisorySupport(false);
+        brokerService.setUseShutdownHook(true);
+        TransportConnector openWireConnector = brokerService.addConnector(
+                "tcp://" + host + ":" + openWirePort);
+        TransportConnector amqpConnector = brokerService.addConnector(
+                "amqp://" + host + ":" + amqpPort);
+        brokerService.start();
+        brokerService.waitUntilStarted();
+
+        // The connect URIs have the bound ports once started
+        openWireUri = openWireConnector.getConnectUri();
+        amqpUri = amqpConnector.getConnectUri();
+        logger.info("Started embedded broker, OpenWire: " + openWireUri + ", AMQP: " + amqpUri);
+    }
+
+    /**
+     * Stops the broker
+     *
+     * @throws Exception
+     */
+    public void stop() throws Exception
+    {
+        if (brokerService == null)
+        {
+            return;
+        }
+        brokerService.stop();
+        brokerService.waitUntilStopped();
+        brokerService = null;
+    }
+
+    /**
+     * Gets the URL clients should use in place of the given embedded URL,
+     * an OpenWire <code>tcp://</code> URL for <code>embedded://</code> and an
+     * <code>amqp://</code> URL for <code>embedded+amqp://</code>
+     *
+     * @param embeddedUrl
+     * @return the client broker URL
+     */
+    public String getClientBrokerUrl(String embeddedUrl)
+    {
+        if (brokerService == null)
+        {
+            throw new IllegalStateException("Embedded broker not started");
+        }
+        URI uri = embeddedUrl.startsWith(URL_PREFIX_EMBEDDED_AMQP) ? amqpUri : openWireUri;
+        return uri.getScheme() + "://" + host + ":" + uri.getPort();
+    }
+
+}
@@ -0,0 +1,187 @@
+package org.gengine.messaging.benchmark.result;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The named metrics of a single benchmark run, with the parameters and
+ * environment they were measured with.
+ *
+ */
+public class BenchmarkResult
+{
+    private String name;
+    private long timestamp;
+    private Map<String, String> parameters = new LinkedHashMap<String, String>();
+    private Map<String, String> environment = new LinkedHashMap<String, String>();
+    private Map<String, Metric> metrics = new LinkedHashMap<String, Metric>();
+
+    /**
+     * A measured value and whether a higher value is an improvement,
+     * i.e. true for throughput and false for latency
+     */
+    public static class Metric
+    {
+        private double value;
+        private String unit;
+        private boolean higherBetter;
+
+        public Metric()
+        {
+        }
+
+        public Metric(double value, String unit, boolean higherBetter)
+        {
+            this.value = value;
+            this.unit = unit;
+            this.higherBetter = higherBetter;
+        }
+
+        public double getValue()
+        {
+            return value;
+        }
+
+        public void setValue(double value)
+        {
+            this.value = value;
+        }
+
+        public String getUnit()
+        {
+            return unit;
+        }
+
+        public void setUnit(String unit)
+        {
+            this.unit = unit;
+        }
+
+        public boolean isHigherBetter()
+        {
+            return higherBetter;
+        }
+
+        public void setHigherBetter(boolean higherBetter)
+        {
+            this.higherBetter = higherBetter;
+        }
+    }
+
+    public BenchmarkResult()
+    {
+    }
+
+    /**
+     * Creates a result timestamped now with the current environment
+     *
+     * @param name
+     */
+    public BenchmarkResult(String name)
+    {
+        this.name = name;
+        this.timestamp = System.currentTimeMillis();
+        this.environment = getCurrentEnvironment();
+    }
+
+    /**
+     * Gets the details of the JVM and host which may affect results
+     *
+     * @return the environment
+     */
+    public static Map<String, String> getCurrentEnvironment()
+    {
+        Map<String, String> environment = new LinkedHashMap<String, String>();
+        try
+        {
+            environment.put("host", InetAddress.getLocalHost().getHostName());
+        }
+        catch (UnknownHostException e)
+        {
+            environment.put("host", "unknown");
+        }
+        environment.put("os.name", System.getProperty("os.name"));
+        environment.put("os.arch", System.getProperty("os.arch"));
+        environment.put("os.version", System.getProperty("os.version"));
+        environment.put("java.version", System.getProperty("java.version"));
+        environment.put("java.vm.name", System.getProperty("java.vm.name"));
+        environment.put("jvm.args", String.join(" ", ManagementFactory.getRuntimeMXBean().getInputArguments()));
+        environment.put("processors", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        environment.put("max.memory.mb", String.valueOf(Runtime.getRuntime().maxMemory() / (1024 * 1024)));
+        Package benchmarkPackage = BenchmarkResult.class.getPackage();
+        if (benchmarkPackage != null && benchmarkPackage.getImplementationVersion() != null)
+        {
+            environment.put("gengine.version", benchmarkPackage.getImplementationVersion());
+        }
+        return environment;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Gets the time the result was created
+     *
+     * @return milliseconds since the epoch
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp)
+    {
+        this.timestamp = timestamp;
+    }
+
+    public Map<String, String> getParameters()
+    {
+        return parameters;
+    }
+
+    public void setParameters(Map<String, String> parameters)
+    {
+        this.parameters = parameters;
+    }
+
+    public void addParameter(String name, Object value)
+    {
+        parameters.put(name, String.valueOf(value));
+    }
+
+    public Map<String, String> getEnvironment()
+    {
+        return environment;
+    }
+
+    public void setEnvironment(Map<String, String> environment)
+    {
+        this.environment = environment;
+    }
+
+    public Map<String, Metric> getMetrics()
+    {
+        return metrics;
+    }
+
+    public void setMetrics(Map<String, Metric> metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    public void addMetric(String name, double value, String unit, boolean higherBetter)
+    {
+        metrics.put(name, new Metric(value, unit, higherBetter));
+    }
+
+}
@@ -0,0 +1,203 @@
+package org.gengine.messaging.benchmark.result;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares benchmark results with a baseline, flagging metrics which are worse
+ * than the baseline by more than a tolerance.
+ * <p>
+ * Run with the baseline and current result files and an optional tolerance
+ * percentage, defaulting to 5%.  The exit code is 1 if any metric regressed.
+ *
+ */
+public class BenchmarkResultComparator
+{
+    public static final double DEFAULT_TOLERANCE_PERCENT = 5.0;
+
+    protected static final String USAGE_MESSAGE =
+            "\n\nUSAGE: baselineFile currentFile [tolerancePercent]\n\n";
+
+    private double tolerancePercent = DEFAULT_TOLERANCE_PERCENT;
+
+    /**
+     * The change in one metric of a result present in both files
+     */
+    public static class Comparison
+    {
+        private final String resultName;
+        private final String metricName;
+        private final BenchmarkResult.Metric baseline;
+        private final BenchmarkResult.Metric current;
+        private final double changePercent;
+        private final boolean isRegression;
+
+        protected Comparison(String resultName, String metricName,
+                BenchmarkResult.Metric baseline, BenchmarkResult.Metric current, double tolerancePercent)
+        {
+            this.resultName = resultName;
+            this.metricName = metricName;
+            this.baseline = baseline;
+            this.current = current;
+            if (baseline.getValue() == 0)
+            {
+                // Any change from zero, e.g. a latency of 0 to 50 ms, is infinitely large
+                this.changePercent = current.getValue() == 0 ? 0 :
+                    Math.copySign(Double.POSITIVE_INFINITY, current.getValue());
+            }
+            else
+            {
+                this.changePercent =
+                    (current.getValue() - baseline.getValue()) / Math.abs(baseline.getValue()) * 100.0;
+            }
+            double worsePercent = current.isHigherBetter() ? -changePercent : changePercent;
+            this.isRegression = worsePercent > tolerancePercent;
+        }
+
+        public String getResultName()
+        {
+            return resultName;
+        }
+
+        public String getMetricName()
+        {
+            return metricName;
+        }
+
+        public BenchmarkResult.Metric getBaseline()
+        {
+            return baseline;
+        }
+
+        public BenchmarkResult.Metric getCurrent()
+        {
+            return current;
+        }
+
+        /**
+         * Gets the change from the baseline value as a percentage of it
+         *
+         * @return the percentage change, positive if the value increased, or infinite
+         *         if the value changed from a zero baseline
+         */
+        public double getChangePercent()
+        {
+            return changePercent;
+        }
+
+        public boolean isRegression()
+        {
+            return isRegression;
+        }
+    }
+
+    /**
+     * Sets the percentage a metric may be worse than the baseline without
+     * being flagged, defaults to 5
+     *
+     * @param tolerancePercent
+     */
+    public void setTolerancePercent(double tolerancePercent)
+    {
+        if (tolerancePercent < 0)
+        {
+            throw new IllegalArgumentException("tolerancePercent must not be negative");
+        }
+        this.tolerancePercent = tolerancePercent;
+    }
+
+    /**
+     * Compares the metrics of results with the same name in both lists,
+     * ignoring results and metrics only present in one
+     *
+     * @param baselineResults
+     * @param currentResults
+     * @return the comparisons in the order of the current results
+     */
+    public List<Comparison> compare(List<BenchmarkResult> baselineResults, List<BenchmarkResult> currentResults)
+    {
+        Map<String, BenchmarkResult> baselineByName = new LinkedHashMap<String, BenchmarkResult>();
+        for (BenchmarkResult result : baselineResults)
+        {
+            baselineByName.put(result.getName(), result);
+        }
+        List<Comparison> comparisons = new ArrayList<Comparison>();
+        for (BenchmarkResult current : currentResults)
+        {
+            BenchmarkResult baseline = baselineByName.get(current.getName());
+            if (baseline == null)
+            {
+                continue;
+            }
+            for (Map.Entry<String, BenchmarkResult.Metric> entry : current.getMetrics().entrySet())
+            {
+                BenchmarkResult.Metric baselineMetric = baseline.getMetrics().get(entry.getKey());
+                if (baselineMetric != null)
+                {
+                    comparisons.add(new Comparison(current.getName(), entry.getKey(),
+                            baselineMetric, entry.getValue(), tolerancePercent));
+                }
+            }
+        }
+        return comparisons;
+    }
+
+    /**
+     * Formats the given comparisons as a report, one line per metric
+     *
+     * @param comparisons
+     * @return the report
+     */
+    public String format(List<Comparison> comparisons)
+    {
+        DecimalFormat valueFormat = new DecimalFormat("0.###");
+        DecimalFormat changeFormat = new DecimalFormat("+0.0;-0.0");
+        StringBuilder report = new StringBuilder();
+        int regressions = 0;
+        for (Comparison comparison : comparisons)
+        {
+            String unit = comparison.getCurrent().getUnit() == null ? "" : " " + comparison.getCurrent().getUnit();
+            report.append(comparison.getResultName() + " " + comparison.getMetricName() + ": "
+                    + valueFormat.format(comparison.getBaseline().getValue()) + " -> "
+                    + valueFormat.format(comparison.getCurrent().getValue()) + unit
+                    + " (" + changeFormat.format(comparison.getChangePercent()) + "%)"
+                    + (comparison.isRegression() ? " REGRESSION" : "") + "\n");
+            if (comparison.isRegression())
+            {
+                regressions++;
+            }
+        }
+        report.append(comparisons.size() + " metrics compared, " + regressions
+                + " regressed by more than " + valueFormat.format(tolerancePercent) + "%\n");
+        return report.toString();
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2)
+        {
+            throw new IllegalArgumentException(USAGE_MESSAGE);
+        }
+        BenchmarkResultComparator comparator = new BenchmarkResultComparator();
+        if (args.length > 2)
+        {
+            comparator.setTolerancePercent(Double.valueOf(args[2]));
+        }
+        List<Comparison> comparisons = comparator.compare(
+                BenchmarkResults.read(new File(args[0])), BenchmarkResults.read(new File(args[1])));
+        System.out.print(comparator.format(comparisons));
+        for (Comparison comparison : comparisons)
+        {
+            if (comparison.isRegression())
+            {
+                System.exit(1);
+            }
+        }
+    }
+
+}
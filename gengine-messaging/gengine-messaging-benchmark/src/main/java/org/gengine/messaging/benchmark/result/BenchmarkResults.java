@@ -0,0 +1,270 @@
+package org.gengine.messaging.benchmark.result;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Reads and writes {@link BenchmarkResult}s.
+ * <p>
+ * Results are written and read as JSON, or as CSV with one row per metric if the
+ * file name ends with <code>.csv</code>.  CSV files do not hold result parameters.
+ * Result files written by JMH with <code>-rf json</code> can also be read, so
+ * microbenchmarks can be compared in the same way.
+ *
+ */
+public class BenchmarkResults
+{
+    private static final String CSV_HEADER = "name,timestamp,metric,value,unit,higherBetter";
+    private static final String CSV_COMMENT_PREFIX = "# ";
+    private static final int CSV_NUM_COLUMNS = 6;
+
+    private static final String JMH_PRIMARY_METRIC = "primaryMetric";
+    private static final String JMH_SECONDARY_METRICS = "secondaryMetrics";
+    private static final String JMH_MODE_THROUGHPUT = "thrpt";
+    private static final String JMH_ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT);
+
+    /**
+     * Writes the given results to the given file, as CSV if the file name
+     * ends with <code>.csv</code> and as JSON otherwise
+     *
+     * @param results
+     * @param file
+     * @throws IOException
+     */
+    public static void write(List<BenchmarkResult> results, File file) throws IOException
+    {
+        if (file.getName().toLowerCase().endsWith(".csv"))
+        {
+            writeCsv(results, file);
+        }
+        else
+        {
+            mapper.writeValue(file, results);
+        }
+    }
+
+    /**
+     * Reads the results in the given file, written either by {@link #write(List, File)}
+     * or by JMH, as CSV if the file name ends with <code>.csv</code> and as JSON otherwise
+     *
+     * @param file
+     * @return the results
+     * @throws IOException
+     */
+    public static List<BenchmarkResult> read(File file) throws IOException
+    {
+        if (file.getName().toLowerCase().endsWith(".csv"))
+        {
+            return readCsv(file);
+        }
+        JsonNode root = mapper.readTree(file);
+        if (root.isArray() && root.size() > 0 && root.get(0).has(JMH_PRIMARY_METRIC))
+        {
+            return readJmh(root);
+        }
+        return mapper.convertValue(root, new TypeReference<List<BenchmarkResult>>() {});
+    }
+
+    protected static void writeCsv(List<BenchmarkResult> results, File file) throws IOException
+    {
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name()))
+        {
+            if (!results.isEmpty())
+            {
+                for (Map.Entry<String, String> entry : results.get(0).getEnvironment().entrySet())
+                {
+                    writer.println(CSV_COMMENT_PREFIX + entry.getKey() + "=" + entry.getValue());
+                }
+            }
+            writer.println(CSV_HEADER);
+            for (BenchmarkResult result : results)
+            {
+                for (Map.Entry<String, BenchmarkResult.Metric> entry : result.getMetrics().entrySet())
+                {
+                    BenchmarkResult.Metric metric = entry.getValue();
+                    writer.println(escapeCsv(result.getName()) + "," + result.getTimestamp() + ","
+                            + escapeCsv(entry.getKey()) + "," + metric.getValue() + ","
+                            + escapeCsv(metric.getUnit()) + "," + metric.isHigherBetter());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads CSV written by {@link #writeCsv(List, File)}, grouping the metric rows into
+     * results by name and timestamp and giving each the environment in the leading comments
+     */
+    protected static List<BenchmarkResult> readCsv(File file) throws IOException
+    {
+        Map<String, String> environment = new LinkedHashMap<String, String>();
+        Map<String, BenchmarkResult> results = new LinkedHashMap<String, BenchmarkResult>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8))
+        {
+            lineNumber++;
+            if (line.startsWith(CSV_COMMENT_PREFIX))
+            {
+                int separator = line.indexOf('=');
+                if (separator > 0)
+                {
+                    environment.put(line.substring(CSV_COMMENT_PREFIX.length(), separator),
+                            line.substring(separator + 1));
+                }
+                continue;
+            }
+            if (line.isEmpty() || line.equals(CSV_HEADER))
+            {
+                continue;
+            }
+            List<String> columns = parseCsvLine(line);
+            if (columns.size() != CSV_NUM_COLUMNS)
+            {
+                throw new IOException("Expected " + CSV_NUM_COLUMNS + " columns but found "
+                        + columns.size() + " on line " + lineNumber + " of " + file);
+            }
+            BenchmarkResult result = results.get(columns.get(0) + "," + columns.get(1));
+            try
+            {
+                if (result == null)
+                {
+                    result = new BenchmarkResult();
+                    result.setName(columns.get(0));
+                    result.setTimestamp(Long.parseLong(columns.get(1)));
+                    result.setEnvironment(new LinkedHashMap<String, String>(environment));
+                    results.put(columns.get(0) + "," + columns.get(1), result);
+                }
+                result.addMetric(columns.get(2), Double.parseDouble(columns.get(3)),
+                        columns.get(4).isEmpty() ? null : columns.get(4),
+                        Boolean.parseBoolean(columns.get(5)));
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IOException("Invalid number on line " + lineNumber + " of " + file, e);
+            }
+        }
+        return new ArrayList<BenchmarkResult>(results.values());
+    }
+
+    /**
+     * Splits a CSV line, unquoting values escaped by {@link #escapeCsv(String)}
+     */
+    protected static List<String> parseCsvLine(String line)
+    {
+        List<String> columns = new ArrayList<String>();
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+            if (quoted)
+            {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"')
+                {
+                    column.append('"');
+                    i++;
+                }
+                else if (c == '"')
+                {
+                    quoted = false;
+                }
+                else
+                {
+                    column.append(c);
+                }
+            }
+            else if (c == '"')
+            {
+                quoted = true;
+            }
+            else if (c == ',')
+            {
+                columns.add(column.toString());
+                column.setLength(0);
+            }
+            else
+            {
+                column.append(c);
+            }
+        }
+        columns.add(column.toString());
+        return columns;
+    }
+
+    protected static String escapeCsv(String value)
+    {
+        if (value == null)
+        {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+        {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Converts JMH results, naming each by its benchmark and parameters, with the
+     * primary score and normalized allocation rate as metrics
+     */
+    protected static List<BenchmarkResult> readJmh(JsonNode root)
+    {
+        List<BenchmarkResult> results = new ArrayList<BenchmarkResult>(root.size());
+        for (JsonNode jmhResult : root)
+        {
+            StringBuilder name = new StringBuilder(jmhResult.path("benchmark").asText());
+            BenchmarkResult result = new BenchmarkResult();
+            JsonNode params = jmhResult.path("params");
+            if (params.size() > 0)
+            {
+                name.append("[");
+                Iterator<Map.Entry<String, JsonNode>> iterator = params.fields();
+                while (iterator.hasNext())
+                {
+                    Map.Entry<String, JsonNode> param = iterator.next();
+                    name.append(param.getKey() + "=" + param.getValue().asText());
+                    result.addParameter(param.getKey(), param.getValue().asText());
+                    if (iterator.hasNext())
+                    {
+                        name.append(",");
+                    }
+                }
+                name.append("]");
+            }
+            result.setName(name.toString());
+            result.getEnvironment().put("java.version", jmhResult.path("jdkVersion").asText());
+            result.getEnvironment().put("java.vm.name", jmhResult.path("vmName").asText());
+            result.getEnvironment().put("jmh.version", jmhResult.path("jmhVersion").asText());
+
+            String mode = jmhResult.path("mode").asText();
+            JsonNode primaryMetric = jmhResult.path(JMH_PRIMARY_METRIC);
+            result.addMetric(mode, primaryMetric.path("score").asDouble(),
+                    primaryMetric.path("scoreUnit").asText(), JMH_MODE_THROUGHPUT.equals(mode));
+            JsonNode allocation = jmhResult.path(JMH_SECONDARY_METRICS).path(JMH_ALLOCATION_METRIC);
+            if (!allocation.isMissingNode())
+            {
+                result.addMetric(JMH_ALLOCATION_METRIC, allocation.path("score").asDouble(),
+                        allocation.path("scoreUnit").asText(), false);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+}
@@ -0,0 +1,78 @@
+package org.gengine.messaging.benchmark;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.gengine.messaging.benchmark.result.BenchmarkResult;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of {@link EmbeddedBroker} URLs and of benchmarks run against it
+ *
+ */
+public class EmbeddedBrokerTest
+{
+    private static final int NUM_MESSAGES = 10;
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+        BenchmarkMessage.setDefaultNumSections(1);
+    }
+
+    @Test
+    public void testCreateInstanceDefaults()
+    {
+        EmbeddedBroker broker = EmbeddedBroker.createInstance("embedded://");
+        assertEquals("localhost", broker.getHost());
+        assertEquals(0, broker.getOpenWirePort());
+        assertEquals(0, broker.getAmqpPort());
+
+        broker = EmbeddedBroker.createInstance("embedded+amqp://");
+        assertEquals("localhost", broker.getHost());
+        assertEquals(0, broker.getAmqpPort());
+    }
+
+    @Test
+    public void testCreateInstanceWithPort()
+    {
+        EmbeddedBroker broker = EmbeddedBroker.createInstance("embedded+amqp://127.0.0.1:5673");
+        assertEquals("127.0.0.1", broker.getHost());
+        assertEquals(5673, broker.getAmqpPort());
+        assertEquals(0, broker.getOpenWirePort());
+
+        broker = EmbeddedBroker.createInstance("embedded://localhost:61617/");
+        assertEquals(61617, broker.getOpenWirePort());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateInstanceInvalidPort()
+    {
+        EmbeddedBroker.createInstance("embedded://localhost:port");
+    }
+
+    protected void testBenchmark(String brokerUrl) throws Exception
+    {
+        BenchmarkRunner runner = new BenchmarkRunner(brokerUrl, null, null, null, null,
+                NUM_MESSAGES, true, true);
+        List<BenchmarkResult> results = runner.runBenchmark();
+
+        assertEquals(1, results.size());
+        assertEquals(NUM_MESSAGES, results.get(0).getMetrics().get("received").getValue(), 0);
+    }
+
+    @Test
+    public void testCamelBenchmark() throws Exception
+    {
+        testBenchmark("embedded://");
+    }
+
+    @Test
+    public void testAmqpBenchmark() throws Exception
+    {
+        testBenchmark("embedded+amqp://");
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.gengine.messaging.benchmark.result;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of {@link BenchmarkResultComparator} tolerances
+ *
+ */
+public class BenchmarkResultComparatorTest
+{
+    private BenchmarkResultComparator comparator;
+
+    @Before
+    public void setUp()
+    {
+        comparator = new BenchmarkResultComparator();
+        comparator.setTolerancePercent(10);
+    }
+
+    protected BenchmarkResultComparator.Comparison compare(double baselineValue, double currentValue,
+            boolean higherBetter)
+    {
+        BenchmarkResult baseline = new BenchmarkResult("test");
+        baseline.addMetric("metric", baselineValue, "ms", higherBetter);
+        BenchmarkResult current = new BenchmarkResult("test");
+        current.addMetric("metric", currentValue, "ms", higherBetter);
+        List<BenchmarkResultComparator.Comparison> comparisons = comparator.compare(
+                Collections.singletonList(baseline), Collections.singletonList(current));
+        assertEquals(1, comparisons.size());
+        return comparisons.get(0);
+    }
+
+    @Test
+    public void testHigherBetterTolerance()
+    {
+        assertFalse(compare(100, 95, true).isRegression());
+        assertFalse(compare(100, 200, true).isRegression());
+        BenchmarkResultComparator.Comparison comparison = compare(100, 85, true);
+        assertEquals(-15.0, comparison.getChangePercent(), 0.0001);
+        assertTrue(comparison.isRegression());
+    }
+
+    @Test
+    public void testLowerBetterTolerance()
+    {
+        assertFalse(compare(100, 105, false).isRegression());
+        assertFalse(compare(100, 50, false).isRegression());
+        BenchmarkResultComparator.Comparison comparison = compare(100, 115, false);
+        assertEquals(15.0, comparison.getChangePercent(), 0.0001);
+        assertTrue(comparison.isRegression());
+    }
+
+    @Test
+    public void testZeroBaseline()
+    {
+        BenchmarkResultComparator.Comparison comparison = compare(0, 50, false);
+        assertEquals(Double.POSITIVE_INFINITY, comparison.getChangePercent(), 0.0);
+        assertTrue(comparison.isRegression());
+
+        assertFalse(compare(0, 50, true).isRegression());
+        assertTrue(compare(0, -1, true).isRegression());
+
+        comparison = compare(0, 0, false);
+        assertEquals(0.0, comparison.getChangePercent(), 0.0);
+        assertFalse(comparison.isRegression());
+    }
+
+    @Test
+    public void testUnmatchedResultsIgnored()
+    {
+        BenchmarkResult baseline = new BenchmarkResult("baseline-only");
+        baseline.addMetric("metric", 1, null, true);
+        BenchmarkResult current = new BenchmarkResult("current-only");
+        current.addMetric("metric", 1, null, true);
+        assertTrue(comparator.compare(Collections.singletonList(baseline),
+                Collections.singletonList(current)).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeTolerance()
+    {
+        comparator.setTolerancePercent(-1);
+    }
+
+}
@@ -0,0 +1,150 @@
+package org.gengine.messaging.benchmark.result;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reading and writing {@link BenchmarkResults} files
+ *
+ */
+public class BenchmarkResultsTest
+{
+    private static final String JMH_RESULT = "[{"
+            + "\"jmhVersion\":\"1.37\",\"benchmark\":\"org.gengine.CodecBenchmark.encode\","
+            + "\"mode\":\"thrpt\",\"jdkVersion\":\"11.0.2\",\"vmName\":\"OpenJDK 64-Bit Server VM\","
+            + "\"params\":{\"contentType\":\"json\",\"size\":\"1024\"},"
+            + "\"primaryMetric\":{\"score\":1234.5,\"scoreUnit\":\"ops/s\"},"
+            + "\"secondaryMetrics\":{\"gc.alloc.rate.norm\":{\"score\":2048.0,\"scoreUnit\":\"B/op\"}}"
+            + "},{"
+            + "\"jmhVersion\":\"1.37\",\"benchmark\":\"org.gengine.CodecBenchmark.decode\","
+            + "\"mode\":\"avgt\",\"jdkVersion\":\"11.0.2\",\"vmName\":\"OpenJDK 64-Bit Server VM\","
+            + "\"params\":{},"
+            + "\"primaryMetric\":{\"score\":12.5,\"scoreUnit\":\"us/op\"},"
+            + "\"secondaryMetrics\":{}"
+            + "}]";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("benchmark").toFile();
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (File file : directory.listFiles())
+        {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    protected List<BenchmarkResult> createResults()
+    {
+        List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+        BenchmarkResult result = new BenchmarkResult("amqp-direct, json");
+        result.addMetric("throughput", 1500.25, "msg/s", true);
+        result.addMetric("latency.p99", 12.5, "ms", false);
+        results.add(result);
+        result = new BenchmarkResult("camel \"smile\"");
+        result.setTimestamp(result.getTimestamp() + 1);
+        result.addMetric("throughput", 900, null, true);
+        results.add(result);
+        return results;
+    }
+
+    protected void assertResultsEqual(List<BenchmarkResult> expected, List<BenchmarkResult> actual)
+    {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+        {
+            BenchmarkResult expectedResult = expected.get(i);
+            BenchmarkResult actualResult = actual.get(i);
+            assertEquals(expectedResult.getName(), actualResult.getName());
+            assertEquals(expectedResult.getTimestamp(), actualResult.getTimestamp());
+            assertEquals(expectedResult.getEnvironment(), actualResult.getEnvironment());
+            assertEquals(expectedResult.getMetrics().keySet(), actualResult.getMetrics().keySet());
+            for (String metricName : expectedResult.getMetrics().keySet())
+            {
+                BenchmarkResult.Metric expectedMetric = expectedResult.getMetrics().get(metricName);
+                BenchmarkResult.Metric actualMetric = actualResult.getMetrics().get(metricName);
+                assertEquals(expectedMetric.getValue(), actualMetric.getValue(), 0.0);
+                assertEquals(expectedMetric.getUnit(), actualMetric.getUnit());
+                assertEquals(expectedMetric.isHigherBetter(), actualMetric.isHigherBetter());
+            }
+        }
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws IOException
+    {
+        List<BenchmarkResult> results = createResults();
+        results.get(0).addParameter("numMessages", 100);
+        File file = new File(directory, "results.json");
+        BenchmarkResults.write(results, file);
+
+        List<BenchmarkResult> read = BenchmarkResults.read(file);
+        assertResultsEqual(results, read);
+        assertEquals("100", read.get(0).getParameters().get("numMessages"));
+    }
+
+    @Test
+    public void testCsvRoundTrip() throws IOException
+    {
+        List<BenchmarkResult> results = createResults();
+        File file = new File(directory, "results.csv");
+        BenchmarkResults.write(results, file);
+
+        assertResultsEqual(results, BenchmarkResults.read(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCsvInvalidLine() throws IOException
+    {
+        File file = new File(directory, "results.csv");
+        Files.write(file.toPath(), "name,timestamp,metric,value,unit,higherBetter\nresult,1,throughput\n"
+                .getBytes(StandardCharsets.UTF_8));
+        BenchmarkResults.read(file);
+    }
+
+    @Test
+    public void testReadJmh() throws IOException
+    {
+        File file = new File(directory, "jmh-result.json");
+        Files.write(file.toPath(), JMH_RESULT.getBytes(StandardCharsets.UTF_8));
+
+        List<BenchmarkResult> results = BenchmarkResults.read(file);
+        assertEquals(2, results.size());
+
+        BenchmarkResult encode = results.get(0);
+        assertEquals("org.gengine.CodecBenchmark.encode[contentType=json,size=1024]", encode.getName());
+        assertEquals("1024", encode.getParameters().get("size"));
+        assertEquals("11.0.2", encode.getEnvironment().get("java.version"));
+        assertEquals("1.37", encode.getEnvironment().get("jmh.version"));
+        BenchmarkResult.Metric throughput = encode.getMetrics().get("thrpt");
+        assertEquals(1234.5, throughput.getValue(), 0.0);
+        assertEquals("ops/s", throughput.getUnit());
+        assertTrue(throughput.isHigherBetter());
+        BenchmarkResult.Metric allocation = encode.getMetrics().get("gc.alloc.rate.norm");
+        assertEquals(2048.0, allocation.getValue(), 0.0);
+        assertFalse(allocation.isHigherBetter());
+
+        BenchmarkResult decode = results.get(1);
+        assertEquals("org.gengine.CodecBenchmark.decode", decode.getName());
+        assertEquals(1, decode.getMetrics().size());
+        assertFalse(decode.getMetrics().get("avgt").isHigherBetter());
+    }
+
+}
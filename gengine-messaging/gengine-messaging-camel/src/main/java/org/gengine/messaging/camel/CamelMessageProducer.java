@@ -1,28 +1,44 @@
 package org.gengine.messaging.camel;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.camel.ProducerTemplate;
 import org.apache.commons.lang3.StringUtils;
+import org.gengine.content.AbstractContentRequest;
 import org.gengine.messaging.MessageProducer;
 import org.gengine.messaging.MessagingException;
+import org.gengine.messaging.codec.MessageBodyCodec;
+import org.gengine.messaging.codec.MessageBodyCodecFactory;
+import org.gengine.messaging.codec.MessageBodyCompressor;
+import org.gengine.messaging.codec.MessageBodyCompressorFactory;
+import org.gengine.messaging.codec.ReusableByteArrayOutputStream;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * An Apache Camel implementation of a message producer
+ * <p>
+ * Camel has no batching of its own so {@link #sendBatch(List, String)} is the default
+ * of sending each message as its own exchange, routes needing a batch to be sent as a
+ * unit should use a transacted endpoint.
  *
  */
 public class CamelMessageProducer implements MessageProducer
 {
     protected static final String HEADER_JMS_AMQP_MESSAGE_FORMAT = "JMS_AMQP_MESSAGE_FORMAT";
     protected static final Long HEADER_JMS_AMQP_MESSAGE_FORMAT_VALUE = 0L;
+    protected static final String HEADER_JMS_PRIORITY = "JMSPriority";
     protected static final String ERROR_SENDING = "Could not send message";
 
     protected ProducerTemplate producer;
     protected String endpoint;
     protected ObjectMapper objectMapper;
+    protected MessageBodyCodec messageBodyCodec;
+    protected int compressionThreshold = 0;
 
     /**
      * The Camel producer template
@@ -56,6 +72,47 @@ public class CamelMessageProducer implements MessageProducer
         this.objectMapper = objectMapper;
     }
 
+    /**
+     * Optional content type used in {@link #send(Object, String)} or
+     * {@link #send(Object, String, Map)} methods when an alternate endpoint is specified,
+     * one of the types supported by {@link MessageBodyCodecFactory}.  Binary content types
+     * are sent as bytes with the {@link MessageBodyCodec#HEADER_CONTENT_TYPE} header set,
+     * otherwise the object mapper is used.
+     * <p>
+     * Messages sent to the default endpoint are marshaled by its route, see
+     * {@link org.gengine.messaging.camel.dataformat.MessageBodyCodecDataFormat}.
+     *
+     * @param contentType
+     */
+    public void setContentType(String contentType)
+    {
+        if (!MessageBodyCodecFactory.isSupported(contentType))
+        {
+            throw new IllegalArgumentException("Unsupported content type: " + contentType);
+        }
+        this.messageBodyCodec = MessageBodyCodecFactory.createInstance(contentType);
+    }
+
+    /**
+     * Optional encoded size in bytes at or above which messages sent to an alternate
+     * endpoint are compressed with LZ4 and sent as bytes with the
+     * {@link MessageBodyCompressor#HEADER_CONTENT_ENCODING} header set.
+     * Defaults to 0, disabled.
+     * <p>
+     * Messages sent to the default endpoint are compressed by its route, see
+     * {@link org.gengine.messaging.camel.dataformat.MessageBodyCodecDataFormat}.
+     *
+     * @param compressionThreshold
+     */
+    public void setCompressionThreshold(int compressionThreshold)
+    {
+        if (compressionThreshold < 0)
+        {
+            throw new IllegalArgumentException("compressionThreshold must not be negative");
+        }
+        this.compressionThreshold = compressionThreshold;
+    }
+
     /**
      * Checks that the given endpoint is valid
      *
@@ -80,11 +137,34 @@ public class CamelMessageProducer implements MessageProducer
         return origHeaders;
     }
 
+    /**
+     * Adds the needed headers for the given message, including the {@value #HEADER_JMS_PRIORITY}
+     * header for requests with a priority.  JMS endpoints only honour the header when
+     * configured with <code>preserveMessageQos=true</code>.
+     *
+     * @param message
+     * @param origHeaders
+     * @return the headers
+     */
+    protected Map<String, Object> addHeaders(Object message, Map<String, Object> origHeaders)
+    {
+        Map<String, Object> headers = addHeaders(origHeaders);
+        if (message instanceof AbstractContentRequest)
+        {
+            Integer priority = ((AbstractContentRequest) message).getPriority();
+            if (priority != null)
+            {
+                headers.put(HEADER_JMS_PRIORITY, priority);
+            }
+        }
+        return headers;
+    }
+
     public void send(Object message)
     {
         try
         {
-            producer.sendBodyAndHeaders(endpoint, message, addHeaders(null));
+            producer.sendBodyAndHeaders(endpoint, message, addHeaders(message, null));
         }
         catch (Exception e)
         {
@@ -96,7 +176,7 @@ public class CamelMessageProducer implements MessageProducer
     {
         try
         {
-            producer.sendBodyAndHeaders(endpoint, message, addHeaders(headers));
+            producer.sendBodyAndHeaders(endpoint, message, addHeaders(message, headers));
         }
         catch (Exception e)
         {
@@ -104,45 +184,104 @@ public class CamelMessageProducer implements MessageProducer
         }
     }
 
-    public void send(Object message, String queueName)
+    /**
+     * Marshals a message being sent to an alternate endpoint, which is not
+     * routed through a data format, adding any needed headers
+     *
+     * @param message
+     * @param headers
+     * @return the marshaled message
+     * @throws IOException
+     */
+    protected Object marshal(Object message, Map<String, Object> headers) throws IOException
     {
-        try
+        if (message instanceof String || message instanceof byte[])
         {
-            if (StringUtils.isEmpty(queueName))
-            {
-                queueName = endpoint;
-            }
-            else
+            return message;
+        }
+        if (compressionThreshold > 0 && (messageBodyCodec != null || objectMapper != null))
+        {
+            return marshalCompressible(message, headers);
+        }
+        if (messageBodyCodec != null && messageBodyCodec.isBinary())
+        {
+            headers.put(MessageBodyCodec.HEADER_CONTENT_TYPE, messageBodyCodec.getContentType());
+            return messageBodyCodec.encode(message);
+        }
+        if (objectMapper != null)
+        {
+            return objectMapper.writeValueAsString(message);
+        }
+        if (messageBodyCodec != null)
+        {
+            // Text content types fall back to the codec's own object mapper
+            return new String(messageBodyCodec.encode(message), StandardCharsets.UTF_8);
+        }
+        return message;
+    }
+
+    /**
+     * Encodes the given message into this thread's buffer then compresses it if
+     * it reaches the compression threshold, otherwise marshaling it the same as
+     * {@link #marshal(Object, Map)}
+     */
+    private Object marshalCompressible(Object message, Map<String, Object> headers) throws IOException
+    {
+        ReusableByteArrayOutputStream buffer = ReusableByteArrayOutputStream.getThreadLocalInstance();
+        String contentType;
+        boolean isBinary;
+        if (messageBodyCodec != null)
+        {
+            messageBodyCodec.encode(message, buffer);
+            contentType = messageBodyCodec.getContentType();
+            isBinary = messageBodyCodec.isBinary();
+        }
+        else
+        {
+            objectMapper.writeValue(buffer, message);
+            contentType = MessageBodyCodec.CONTENT_TYPE_JSON;
+            isBinary = false;
+        }
+        if (buffer.size() >= compressionThreshold)
+        {
+            MessageBodyCompressor compressor =
+                    MessageBodyCompressorFactory.getInstance(MessageBodyCompressor.CONTENT_ENCODING_LZ4);
+            byte[] compressed = compressor.compress(buffer.getBuffer(), 0, buffer.size());
+            // Incompressible bodies are sent as is
+            if (compressed.length < buffer.size())
             {
-                if (objectMapper != null && !(message instanceof String))
-                {
-                    message = objectMapper.writeValueAsString(message);
-                }
+                headers.put(MessageBodyCodec.HEADER_CONTENT_TYPE, contentType);
+                headers.put(MessageBodyCompressor.HEADER_CONTENT_ENCODING, compressor.getContentEncoding());
+                return compressed;
             }
-            producer.sendBodyAndHeaders(queueName, message, addHeaders(null));
         }
-        catch (Exception e)
+        if (isBinary)
         {
-            throw new MessagingException(ERROR_SENDING, e);
+            headers.put(MessageBodyCodec.HEADER_CONTENT_TYPE, contentType);
+            return buffer.toByteArray();
         }
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+
+    public void send(Object message, String queueName)
+    {
+        send(message, queueName, null);
     }
 
     public void send(Object message, String queueName, Map<String, Object> headers)
     {
         try
         {
+            headers = addHeaders(message, headers);
             if (StringUtils.isEmpty(queueName))
             {
                 queueName = endpoint;
             }
             else
             {
-                if (objectMapper != null && !(message instanceof String))
-                {
-                    message = objectMapper.writeValueAsString(message);
-                }
+                message = marshal(message, headers);
             }
-            producer.sendBodyAndHeaders(queueName, message, addHeaders(headers));
+            producer.sendBodyAndHeaders(queueName, message, headers);
         }
         catch (Exception e)
         {
@@ -3,25 +3,34 @@ package org.gengine.messaging.camel;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 import org.gengine.content.ContentIOException;
 import org.gengine.messaging.Reply;
 import org.gengine.messaging.Request;
 import org.gengine.messaging.RequestReplyMessageProducer;
+import org.gengine.util.HashedWheelTimer;
+import org.gengine.util.HashedWheelTimer.Timeout;
 
 /**
  * An Apache Camel implementation of a request-reply message producer.
  * <p>
- * A pending requests map is maintained and the {@link ReplyCallable} periodically polls
- * that map to determine if a correlated reply has been received.
+ * A map of pending reply futures is maintained and {@link #onReceive(Object)} completes
+ * the future correlated with a reply directly, so no thread is held per outstanding request.
+ * Futures not completed within the timeout complete exceptionally and are evicted, with
+ * timeouts managed by a {@link HashedWheelTimer} so the cost per request stays constant
+ * with large numbers of requests in flight.
  * <p>
  * Note that the built-in Camel asynchronous processing was not used for a few reasons:
  * <ul>
@@ -41,27 +50,51 @@ public class CamelRequestReplyMessageProducer<RQ extends Request<RP>, RP extends
 
     private static final long DEFAULT_PENDING_REQUEST_POLLING_INTERVAL_MS = 500;
     private static final long DEFAULT_PENDING_REQUEST_TIMEOUT_MS = 20000;
+    private static final long DEFAULT_TIMEOUT_TICK_MS = 100;
+    private static final int DEFAULT_TIMEOUT_WHEEL_SIZE = 512;
 
     // TODO: In a clustered env this would have to be distributed (Hazelcast) or persisted
+    private final ConcurrentMap<String, CompletableFuture<RP>> pendingReplies =
+            new ConcurrentHashMap<String, CompletableFuture<RP>>();
+
+    /**
+     * @deprecated no longer populated as pending requests are now held as futures
+     *             completed on receipt, to be removed in the next release
+     */
+    @Deprecated
     protected Map<String, RP> pendingRequests = new HashMap<String, RP>();
 
-    protected long pollingIntervalMs = DEFAULT_PENDING_REQUEST_POLLING_INTERVAL_MS;
     protected long timeoutMs = DEFAULT_PENDING_REQUEST_TIMEOUT_MS;
 
+    protected HashedWheelTimer timeoutTimer;
+
+    /**
+     * @deprecated no longer used as replies are correlated as they're received
+     */
+    @Deprecated
+    protected long pollingIntervalMs = DEFAULT_PENDING_REQUEST_POLLING_INTERVAL_MS;
+
+    /**
+     * @deprecated no longer used as replies are correlated as they're received
+     */
+    @Deprecated
     protected ExecutorService executorService;
 
     /**
-     * The pending request polling interval in milliseconds
+     * Replies are now correlated as they're received rather than polled for.
      *
      * @param pollingIntervalMs
+     * @deprecated no longer used, to be removed in the next release
      */
+    @Deprecated
     public void setPollingIntervalMs(long pollingIntervalMs)
     {
+        logger.warn("pollingIntervalMs is no longer used, replies are correlated as they're received");
         this.pollingIntervalMs = pollingIntervalMs;
     }
 
     /**
-     * The pending request timeout in milliseconds
+     * The pending request timeout in milliseconds, or -1 for no timeout
      *
      * @param timeoutMs
      */
@@ -71,34 +104,115 @@ public class CamelRequestReplyMessageProducer<RQ extends Request<RP>, RP extends
     }
 
     /**
-     * The executor service to be used for executing the polling callable
+     * Replies are now correlated as they're received so no executor is needed.
      *
      * @param executorService
+     * @deprecated no longer used, to be removed in the next release
      */
+    @Deprecated
     public void setExecutorService(ExecutorService executorService)
     {
+        logger.warn("executorService is no longer used, replies are correlated as they're received");
         this.executorService = executorService;
     }
 
+    /**
+     * The optional timer used to expire pending requests, which may be shared
+     * between producers.  Defaults to a timer with a 100ms tick.
+     *
+     * @param timeoutTimer
+     */
+    public void setTimeoutTimer(HashedWheelTimer timeoutTimer)
+    {
+        this.timeoutTimer = timeoutTimer;
+    }
+
     public void init()
     {
-        if (executorService == null)
+        getTimeoutTimer();
+    }
+
+    protected synchronized HashedWheelTimer getTimeoutTimer()
+    {
+        if (timeoutTimer == null)
         {
-            executorService = Executors.newCachedThreadPool();
+            timeoutTimer = new HashedWheelTimer(
+                    DEFAULT_TIMEOUT_TICK_MS, TimeUnit.MILLISECONDS, DEFAULT_TIMEOUT_WHEEL_SIZE);
         }
+        return timeoutTimer;
+    }
+
+    /**
+     * Gets the number of requests awaiting a reply
+     *
+     * @return the pending request count
+     */
+    public int getPendingRequestCount()
+    {
+        return pendingReplies.size();
     }
 
     @Override
     public Future<RP> asyncRequest(RQ request)
     {
-        send(request);
-        pendingRequests.put(request.getRequestId(), null);
-
-        FutureTask<RP> future = new FutureTask<>(new ReplyCallable(request.getRequestId()));
-        executorService.execute(future);
+        final String requestId = request.getRequestId();
+        final CompletableFuture<RP> future = new CompletableFuture<RP>();
+        // Registered before sending so a fast reply can't miss it
+        pendingReplies.put(requestId, future);
+        try
+        {
+            send(request);
+        }
+        catch (RuntimeException e)
+        {
+            pendingReplies.remove(requestId, future);
+            throw e;
+        }
+        final Timeout timeout = scheduleTimeout(requestId, future);
+        future.whenComplete(new BiConsumer<RP, Throwable>()
+        {
+            public void accept(RP reply, Throwable error)
+            {
+                // Evicts on reply, timeout, or cancellation
+                pendingReplies.remove(requestId, future);
+                if (timeout != null)
+                {
+                    timeout.cancel();
+                }
+            }
+        });
         return future;
     }
 
+    /**
+     * Schedules the given pending request future to complete exceptionally
+     * if no reply has been received within the timeout
+     *
+     * @param requestId
+     * @param future
+     * @return the timeout, or null if requests don't time out
+     */
+    protected Timeout scheduleTimeout(final String requestId, final CompletableFuture<RP> future)
+    {
+        if (timeoutMs < 0)
+        {
+            return null;
+        }
+        return getTimeoutTimer().newTimeout(new Runnable()
+        {
+            public void run()
+            {
+                if (future.completeExceptionally(new ContentIOException("Timeout while waiting for reply")))
+                {
+                    if (logger.isDebugEnabled())
+                    {
+                        logger.debug("Timed out waiting for reply to request " + requestId);
+                    }
+                }
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
     @SuppressWarnings("unchecked")
     public void onReceive(Object message)
     {
@@ -110,7 +224,8 @@ public class CamelRequestReplyMessageProducer<RQ extends Request<RP>, RP extends
             logger.debug("Received reply for request " + reply.getRequestId());
         }
 
-        if (!pendingRequests.containsKey(reply.getRequestId()))
+        CompletableFuture<RP> future = pendingReplies.get(reply.getRequestId());
+        if (future == null)
         {
          // TODO Need to better handle errors here, send an error message?
             logger.error("Unknown pending request: " +
@@ -118,16 +233,20 @@ public class CamelRequestReplyMessageProducer<RQ extends Request<RP>, RP extends
             return;
         }
 
-        pendingRequests.put(reply.getRequestId(), reply);
+        future.complete(reply);
     }
 
     /**
-     * Class which polls the pending requests map to determine if a
-     * correlated reply has been received.
+     * Class which waits for the reply to a request sent by {@link #asyncRequest(Request)}.
+     *
+     * @deprecated the future returned by {@link #asyncRequest(Request)} completes with the
+     *             reply directly, to be removed in the next release
      */
+    @Deprecated
     public class ReplyCallable implements Callable<RP>
     {
         private String requestId;
+        private CompletableFuture<RP> future;
 
         /**
          * Constructor which takes a correlating request ID
@@ -137,35 +256,31 @@ public class CamelRequestReplyMessageProducer<RQ extends Request<RP>, RP extends
         public ReplyCallable(String requestId)
         {
             this.requestId = requestId;
+            this.future = pendingReplies.get(requestId);
         }
 
         @Override
         public RP call() throws Exception
         {
-            long startTime = (new Date()).getTime();
-            try {
-                while (((new Date()).getTime() - startTime <= timeoutMs) || timeoutMs == -1)
+            if (future == null)
+            {
+                throw new ContentIOException("Unknown pending request: " + requestId);
+            }
+            try
+            {
+                return timeoutMs < 0 ? future.get() : future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            }
+            catch (TimeoutException e)
+            {
+                throw new ContentIOException("Timeout while waiting for reply");
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof Exception)
                 {
-                    if (logger.isDebugEnabled())
-                    {
-                        logger.debug("Polling for pending request " + requestId +
-                                " completion in " + pollingIntervalMs + "ms...");
-                    }
-                    Thread.sleep(pollingIntervalMs);
-                    RP reply = pendingRequests.get(
-                            requestId);
-
-                    if (reply == null)
-                    {
-                        // reply hasn't come back yet
-                        continue;
-                    }
-
-                    pendingRequests.remove(requestId);
-                    return reply;
+                    throw (Exception) e.getCause();
                 }
-                // We must have timed out
-                throw new ContentIOException("Timeout while waiting for reply");
+                throw e;
             }
             catch (InterruptedException e)
             {
@@ -0,0 +1,150 @@
+package org.gengine.messaging.camel.dataformat;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.spi.DataFormat;
+import org.apache.camel.spi.DataFormatName;
+import org.apache.camel.support.service.ServiceSupport;
+import org.apache.commons.lang3.StringUtils;
+import org.gengine.messaging.codec.MessageBodyCodec;
+import org.gengine.messaging.codec.MessageBodyCodecFactory;
+import org.gengine.messaging.codec.MessageBodyCompressor;
+import org.gengine.messaging.codec.MessageBodyCompressorFactory;
+import org.gengine.messaging.codec.ReusableByteArrayOutputStream;
+
+/**
+ * A Camel {@link DataFormat} which marshals using the {@link MessageBodyCodec} for
+ * the configured content type, setting the {@link MessageBodyCodec#HEADER_CONTENT_TYPE}
+ * header, and unmarshals using the codec for the content type header of the
+ * incoming message, defaulting to JSON.
+ * <p>
+ * Bodies reaching the optional compression threshold are compressed and flagged
+ * with the {@link MessageBodyCompressor#HEADER_CONTENT_ENCODING} header, which is
+ * likewise honoured when unmarshalling.
+ *
+ */
+public class MessageBodyCodecDataFormat extends ServiceSupport implements DataFormat, DataFormatName
+{
+    private final Class<?> unmarshalType;
+    private String contentType = MessageBodyCodec.CONTENT_TYPE_JSON;
+    private final ConcurrentMap<String, MessageBodyCodec> codecs =
+            new ConcurrentHashMap<String, MessageBodyCodec>();
+    private int compressionThreshold = 0;
+
+    public MessageBodyCodecDataFormat(Class<?> unmarshalType)
+    {
+        this.unmarshalType = unmarshalType;
+    }
+
+    /**
+     * Sets the content type used when marshalling, one of the types
+     * supported by {@link MessageBodyCodecFactory}.  Defaults to JSON.
+     *
+     * @param contentType
+     */
+    public void setContentType(String contentType)
+    {
+        if (!MessageBodyCodecFactory.isSupported(contentType))
+        {
+            throw new IllegalArgumentException("Unsupported content type: " + contentType);
+        }
+        this.contentType = StringUtils.isEmpty(contentType) ? MessageBodyCodec.CONTENT_TYPE_JSON : contentType;
+    }
+
+    /**
+     * Sets the encoded size in bytes at or above which marshaled bodies are
+     * compressed with LZ4.  Defaults to 0, disabled.
+     *
+     * @param compressionThreshold
+     */
+    public void setCompressionThreshold(int compressionThreshold)
+    {
+        if (compressionThreshold < 0)
+        {
+            throw new IllegalArgumentException("compressionThreshold must not be negative");
+        }
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public String getDataFormatName()
+    {
+        return "gengine-codec";
+    }
+
+    protected MessageBodyCodec getCodec(String contentType)
+    {
+        if (StringUtils.isEmpty(contentType))
+        {
+            contentType = MessageBodyCodec.CONTENT_TYPE_JSON;
+        }
+        MessageBodyCodec codec = codecs.get(contentType);
+        if (codec == null)
+        {
+            codec = MessageBodyCodecFactory.createInstance(contentType);
+            MessageBodyCodec existing = codecs.putIfAbsent(contentType, codec);
+            if (existing != null)
+            {
+                codec = existing;
+            }
+        }
+        return codec;
+    }
+
+    @Override
+    public void marshal(Exchange exchange, Object graph, OutputStream stream) throws Exception
+    {
+        MessageBodyCodec codec = getCodec(contentType);
+        exchange.getMessage().setHeader(MessageBodyCodec.HEADER_CONTENT_TYPE, codec.getContentType());
+        exchange.getMessage().removeHeader(MessageBodyCompressor.HEADER_CONTENT_ENCODING);
+        if (compressionThreshold <= 0)
+        {
+            codec.encode(graph, stream);
+            return;
+        }
+        ReusableByteArrayOutputStream buffer = ReusableByteArrayOutputStream.getThreadLocalInstance();
+        codec.encode(graph, buffer);
+        if (buffer.size() >= compressionThreshold)
+        {
+            MessageBodyCompressor compressor =
+                    MessageBodyCompressorFactory.getInstance(MessageBodyCompressor.CONTENT_ENCODING_LZ4);
+            byte[] compressed = compressor.compress(buffer.getBuffer(), 0, buffer.size());
+            // Incompressible bodies are written as is
+            if (compressed.length < buffer.size())
+            {
+                exchange.getMessage().setHeader(
+                        MessageBodyCompressor.HEADER_CONTENT_ENCODING, compressor.getContentEncoding());
+                stream.write(compressed);
+                return;
+            }
+        }
+        buffer.writeTo(stream);
+    }
+
+    @Override
+    public Object unmarshal(Exchange exchange, InputStream stream) throws Exception
+    {
+        String messageContentType = null;
+        String messageContentEncoding = null;
+        if (exchange != null)
+        {
+            messageContentType = exchange.getIn().getHeader(MessageBodyCodec.HEADER_CONTENT_TYPE, String.class);
+            messageContentEncoding = exchange.getIn().getHeader(
+                    MessageBodyCompressor.HEADER_CONTENT_ENCODING, String.class);
+        }
+        MessageBodyCodec codec = getCodec(messageContentType);
+        if (!StringUtils.isEmpty(messageContentEncoding))
+        {
+            byte[] compressed = stream.readAllBytes();
+            byte[] bytes = MessageBodyCompressorFactory.getInstance(messageContentEncoding).decompress(
+                    compressed, 0, compressed.length);
+            return codec.decode(bytes, 0, bytes.length, unmarshalType);
+        }
+        return codec.decode(stream, unmarshalType);
+    }
+
+}
@@ -0,0 +1,137 @@
+package org.gengine.messaging.camel;
+
+import static junit.framework.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.gengine.content.AbstractContentRequest;
+import org.gengine.messaging.codec.MessageBodyCodec;
+import org.gengine.messaging.jackson.ObjectMapperFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CamelMessageProducerTest
+{
+    private static final String ENDPOINT_BATCH = "direct:gengine.test.batch";
+    private static final String ENDPOINT_MOCK = "mock:gengine.test.batch";
+
+    private CamelContext context;
+    private CamelMessageProducer messageProducer;
+
+    @Before
+    public void init() throws Exception
+    {
+        context = new DefaultCamelContext();
+        context.addRoutes(new RouteBuilder() {
+            public void configure() {
+                from(ENDPOINT_BATCH).to(ENDPOINT_MOCK);
+            }
+        });
+        context.start();
+
+        messageProducer = new CamelMessageProducer();
+        messageProducer.setProducer(context.createProducerTemplate());
+        messageProducer.setEndpoint(ENDPOINT_BATCH);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        context.stop();
+    }
+
+    @Test
+    public void testSendBatch() throws Exception
+    {
+        List<String> messages = Arrays.asList("message1", "message2", "message3");
+        MockEndpoint mock = context.getEndpoint(ENDPOINT_MOCK, MockEndpoint.class);
+        mock.expectedBodiesReceived(messages);
+
+        messageProducer.sendBatch(messages, null);
+
+        mock.assertIsSatisfied();
+    }
+
+    @Test
+    public void testSendEmptyBatch() throws Exception
+    {
+        MockEndpoint mock = context.getEndpoint(ENDPOINT_MOCK, MockEndpoint.class);
+        mock.expectedMessageCount(0);
+
+        messageProducer.sendBatch(Arrays.asList(), null);
+
+        mock.assertIsSatisfied();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedContentType()
+    {
+        messageProducer.setContentType("application/xml");
+    }
+
+    @Test
+    public void testSendWithPriority() throws Exception
+    {
+        TestRequest prioritized = new TestRequest();
+        prioritized.setPriority(AbstractContentRequest.PRIORITY_HIGHEST);
+        MockEndpoint mock = context.getEndpoint(ENDPOINT_MOCK, MockEndpoint.class);
+        mock.expectedMessageCount(2);
+
+        messageProducer.send(prioritized);
+        messageProducer.send(new TestRequest());
+
+        mock.assertIsSatisfied();
+        List<Exchange> exchanges = mock.getReceivedExchanges();
+        assertEquals(Integer.valueOf(AbstractContentRequest.PRIORITY_HIGHEST),
+                exchanges.get(0).getIn().getHeader("JMSPriority", Integer.class));
+        assertNull(exchanges.get(1).getIn().getHeader("JMSPriority"));
+    }
+
+    @Test
+    public void testSendJsonWithoutObjectMapper() throws Exception
+    {
+        messageProducer.setContentType(MessageBodyCodec.CONTENT_TYPE_JSON);
+        TestRequest request = new TestRequest();
+        MockEndpoint mock = context.getEndpoint(ENDPOINT_MOCK, MockEndpoint.class);
+        mock.expectedMessageCount(1);
+
+        messageProducer.send(request, ENDPOINT_BATCH);
+
+        mock.assertIsSatisfied();
+        Object body = mock.getReceivedExchanges().get(0).getIn().getBody();
+        assertTrue(body instanceof String);
+        TestRequest received = ObjectMapperFactory.createInstance().readValue((String) body, TestRequest.class);
+        assertEquals(request.getRequestId(), received.getRequestId());
+    }
+
+    @Test
+    public void testSendSmileWithoutObjectMapper() throws Exception
+    {
+        messageProducer.setContentType(MessageBodyCodec.CONTENT_TYPE_SMILE);
+        TestRequest request = new TestRequest();
+        MockEndpoint mock = context.getEndpoint(ENDPOINT_MOCK, MockEndpoint.class);
+        mock.expectedMessageCount(1);
+
+        messageProducer.send(request, ENDPOINT_BATCH);
+
+        mock.assertIsSatisfied();
+        Exchange exchange = mock.getReceivedExchanges().get(0);
+        assertEquals(MessageBodyCodec.CONTENT_TYPE_SMILE,
+                exchange.getIn().getHeader(MessageBodyCodec.HEADER_CONTENT_TYPE));
+        TestRequest received = ObjectMapperFactory.createSmileInstance().readValue(
+                exchange.getIn().getBody(byte[].class), TestRequest.class);
+        assertEquals(request.getRequestId(), received.getRequestId());
+    }
+
+    public static class TestRequest extends AbstractContentRequest
+    {
+    }
+
+}
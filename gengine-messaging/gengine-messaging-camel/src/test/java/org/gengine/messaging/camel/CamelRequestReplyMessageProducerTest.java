@@ -0,0 +1,121 @@
+package org.gengine.messaging.camel;
+
+import static junit.framework.Assert.*;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.gengine.content.ContentIOException;
+import org.gengine.messaging.AbstractReply;
+import org.gengine.messaging.AbstractRequest;
+import org.gengine.messaging.Request;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CamelRequestReplyMessageProducerTest
+{
+    private static final String ENDPOINT_REQUEST = "direct:gengine.test.request";
+
+    private CamelContext context;
+    private CamelRequestReplyMessageProducer<TestRequest, TestReply> messageProducer;
+
+    @Before
+    public void init() throws Exception
+    {
+        context = new DefaultCamelContext();
+        context.addRoutes(new RouteBuilder() {
+            public void configure() {
+                from(ENDPOINT_REQUEST).to("mock:gengine.test.request");
+            }
+        });
+        context.start();
+
+        messageProducer = new CamelRequestReplyMessageProducer<TestRequest, TestReply>();
+        messageProducer.setProducer(context.createProducerTemplate());
+        messageProducer.setEndpoint(ENDPOINT_REQUEST);
+        messageProducer.init();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        context.stop();
+    }
+
+    @Test
+    public void testReplyCompletesFuture() throws Exception
+    {
+        TestRequest request = new TestRequest();
+        Future<TestReply> future = messageProducer.asyncRequest(request);
+        assertFalse(future.isDone());
+        assertEquals(1, messageProducer.getPendingRequestCount());
+
+        TestReply reply = new TestReply(request);
+        messageProducer.onReceive(reply);
+
+        assertTrue(future.isDone());
+        assertSame(reply, future.get());
+        assertEquals(0, messageProducer.getPendingRequestCount());
+    }
+
+    @Test
+    public void testTimeout() throws Exception
+    {
+        messageProducer.setTimeoutMs(50);
+        Future<TestReply> future = messageProducer.asyncRequest(new TestRequest());
+        try
+        {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected timeout");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof ContentIOException);
+        }
+        assertEquals(0, messageProducer.getPendingRequestCount());
+    }
+
+    @Test
+    public void testCancelEvictsPendingRequest() throws Exception
+    {
+        Future<TestReply> future = messageProducer.asyncRequest(new TestRequest());
+        future.cancel(false);
+        assertEquals(0, messageProducer.getPendingRequestCount());
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testDeprecatedReplyCallable() throws Exception
+    {
+        TestRequest request = new TestRequest();
+        messageProducer.asyncRequest(request);
+        CamelRequestReplyMessageProducer<TestRequest, TestReply>.ReplyCallable callable =
+                messageProducer.new ReplyCallable(request.getRequestId());
+        TestReply reply = new TestReply(request);
+        messageProducer.onReceive(reply);
+        assertSame(reply, callable.call());
+    }
+
+    public static class TestRequest extends AbstractRequest implements Request<TestReply>
+    {
+        @Override
+        public Class<TestReply> getReplyClass()
+        {
+            return TestReply.class;
+        }
+    }
+
+    public static class TestReply extends AbstractReply
+    {
+        public TestReply(Request<?> request)
+        {
+            super(request);
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+package org.gengine.messaging.camel.dataformat;
+
+import static junit.framework.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.gengine.messaging.codec.MessageBodyCodec;
+import org.gengine.messaging.codec.MessageBodyCompressor;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageBodyCodecDataFormatTest
+{
+    private static final String EXPECTED_KEY = "key1";
+    private static final String EXPECTED_VALUE = "value1";
+
+    private HashMap<String, String> body;
+
+    @Before
+    public void init()
+    {
+        body = new HashMap<String, String>();
+        body.put(EXPECTED_KEY, EXPECTED_VALUE);
+    }
+
+    protected Map<?, ?> roundTrip(String contentType) throws Exception
+    {
+        MessageBodyCodecDataFormat dataFormat = new MessageBodyCodecDataFormat(Object.class);
+        dataFormat.setContentType(contentType);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        dataFormat.marshal(exchange, body, os);
+        String headerContentType = exchange.getMessage().getHeader(
+                MessageBodyCodec.HEADER_CONTENT_TYPE, String.class);
+        assertEquals(contentType, headerContentType);
+
+        // Unmarshal with a data format configured for the default content type
+        MessageBodyCodecDataFormat receivingDataFormat = new MessageBodyCodecDataFormat(Object.class);
+        Exchange receivingExchange = new DefaultExchange(new DefaultCamelContext());
+        receivingExchange.getIn().setHeader(MessageBodyCodec.HEADER_CONTENT_TYPE, headerContentType);
+        return (Map<?, ?>) receivingDataFormat.unmarshal(
+                receivingExchange, new ByteArrayInputStream(os.toByteArray()));
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws Exception
+    {
+        Map<?, ?> result = roundTrip(MessageBodyCodec.CONTENT_TYPE_JSON);
+        assertEquals(EXPECTED_VALUE, result.get(EXPECTED_KEY));
+    }
+
+    @Test
+    public void testSmileRoundTrip() throws Exception
+    {
+        Map<?, ?> result = roundTrip(MessageBodyCodec.CONTENT_TYPE_SMILE);
+        assertEquals(EXPECTED_VALUE, result.get(EXPECTED_KEY));
+    }
+
+    @Test
+    public void testUnmarshalWithoutContentTypeIsJson() throws Exception
+    {
+        MessageBodyCodecDataFormat dataFormat = new MessageBodyCodecDataFormat(Object.class);
+        String json = "{\"@class\":\"java.util.HashMap\",\"" + EXPECTED_KEY + "\":\"" + EXPECTED_VALUE + "\"}";
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        Map<?, ?> result = (Map<?, ?>) dataFormat.unmarshal(
+                exchange, new ByteArrayInputStream(json.getBytes("UTF-8")));
+        assertEquals(EXPECTED_VALUE, result.get(EXPECTED_KEY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedContentType() throws Exception
+    {
+        new MessageBodyCodecDataFormat(Object.class).setContentType("application/x-unsupported");
+    }
+
+    @Test
+    public void testCompressedRoundTrip() throws Exception
+    {
+        StringBuilder largeValue = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+        {
+            largeValue.append(EXPECTED_VALUE);
+        }
+        body.put(EXPECTED_KEY, largeValue.toString());
+
+        MessageBodyCodecDataFormat dataFormat = new MessageBodyCodecDataFormat(Object.class);
+        dataFormat.setCompressionThreshold(1024);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        dataFormat.marshal(exchange, body, os);
+
+        String headerContentEncoding = exchange.getMessage().getHeader(
+                MessageBodyCompressor.HEADER_CONTENT_ENCODING, String.class);
+        assertEquals(MessageBodyCompressor.CONTENT_ENCODING_LZ4, headerContentEncoding);
+        assertTrue(os.size() < largeValue.length());
+
+        MessageBodyCodecDataFormat receivingDataFormat = new MessageBodyCodecDataFormat(Object.class);
+        Exchange receivingExchange = new DefaultExchange(new DefaultCamelContext());
+        receivingExchange.getIn().setHeader(MessageBodyCompressor.HEADER_CONTENT_ENCODING, headerContentEncoding);
+        Map<?, ?> result = (Map<?, ?>) receivingDataFormat.unmarshal(
+                receivingExchange, new ByteArrayInputStream(os.toByteArray()));
+        assertEquals(largeValue.toString(), result.get(EXPECTED_KEY));
+    }
+
+    @Test
+    public void testBelowCompressionThresholdIsNotCompressed() throws Exception
+    {
+        MessageBodyCodecDataFormat dataFormat = new MessageBodyCodecDataFormat(Object.class);
+        dataFormat.setCompressionThreshold(1024);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        dataFormat.marshal(exchange, body, os);
+
+        assertNull(exchange.getMessage().getHeader(MessageBodyCompressor.HEADER_CONTENT_ENCODING));
+        assertTrue(new String(os.toByteArray(), "UTF-8").contains(EXPECTED_VALUE));
+    }
+
+}
@@ -5,15 +5,30 @@ import org.apache.commons.logging.LogFactory;
 
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.ToIntFunction;
 
+import org.gengine.messaging.FlowControlledEndpoint;
 import org.gengine.messaging.Reply;
 import org.gengine.messaging.Request;
+import org.gengine.util.AgingPriorityBlockingQueue;
 
 /**
  * Base component which pulls a message off the queue before performing the work, useful
  * when progress reporting is needed as some messaging endpoints will lock the session
  * until the message consumption is complete and progress replies can not be sent.
+ * <p>
+ * Received requests are put on a bounded local queue drained by <code>processorCount</code>
+ * {@link LocalQueueProcessor}s, so workers must be thread safe if more than one processor
+ * is configured.  If a {@link FlowControlledEndpoint} is set, consumption from it is paused
+ * when the local queue reaches the high water mark and resumed once it has drained to
+ * the low water mark.  Without one the receiving thread simply blocks while the queue is full.
+ * <p>
+ * The local queue is first in first out unless priority scheduling is enabled, in which
+ * case waiting requests are taken by their {@link AbstractContentRequest#getPriority()},
+ * with waiting requests gaining a priority level every <code>priorityAgingMs</code> so
+ * that low priority requests aren't starved.  This needs a queue capacity greater than
+ * the processor count to have any effect.
  *
  * @param <W>
  * @param <RQ>
@@ -26,9 +41,21 @@ public abstract class AbstractAsyncComponent<W extends ContentWorker, RQ extends
      */
     private static final Log logger = LogFactory.getLog(AbstractAsyncComponent.class);
 
+    public static final int DEFAULT_PROCESSOR_COUNT = 1;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1;
+    public static final long DEFAULT_PRIORITY_AGING_MS = 30000;
+
     protected ExecutorService executorService;
+    protected FlowControlledEndpoint flowControlledEndpoint;
+
+    protected int processorCount = DEFAULT_PROCESSOR_COUNT;
+    protected int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    protected int highWaterMark = -1;
+    protected int lowWaterMark = -1;
+    protected boolean isPriorityScheduling = false;
+    protected long priorityAgingMs = DEFAULT_PRIORITY_AGING_MS;
 
-    private final BlockingQueue<RQ> localQueue =  new SynchronousQueue<RQ>();
+    private BlockingQueue<RQ> localQueue;
 
     /**
      * Sets the executor service components may optionally need for running
@@ -41,6 +68,124 @@ public abstract class AbstractAsyncComponent<W extends ContentWorker, RQ extends
         this.executorService = executorService;
     }
 
+    /**
+     * Sets the optional endpoint requests are consumed from, paused and resumed
+     * according to the local queue water marks.
+     *
+     * @param flowControlledEndpoint
+     */
+    public void setFlowControlledEndpoint(FlowControlledEndpoint flowControlledEndpoint)
+    {
+        this.flowControlledEndpoint = flowControlledEndpoint;
+    }
+
+    /**
+     * Sets the number of local queue processors working on requests concurrently.
+     * Defaults to 1.
+     *
+     * @param processorCount
+     */
+    public void setProcessorCount(int processorCount)
+    {
+        if (processorCount < 1)
+        {
+            throw new IllegalArgumentException("processorCount must be at least 1");
+        }
+        this.processorCount = processorCount;
+    }
+
+    /**
+     * Sets the maximum number of requests waiting on the local queue.  Defaults to 1.
+     *
+     * @param queueCapacity
+     */
+    public void setQueueCapacity(int queueCapacity)
+    {
+        if (queueCapacity < 1)
+        {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets the local queue size at which consumption is paused.
+     * Defaults to the queue capacity.
+     *
+     * @param highWaterMark
+     */
+    public void setHighWaterMark(int highWaterMark)
+    {
+        this.highWaterMark = highWaterMark;
+    }
+
+    /**
+     * Sets the local queue size at which paused consumption is resumed.
+     * Defaults to half the high water mark.
+     *
+     * @param lowWaterMark
+     */
+    public void setLowWaterMark(int lowWaterMark)
+    {
+        this.lowWaterMark = lowWaterMark;
+    }
+
+    /**
+     * Sets whether requests waiting on the local queue are taken in priority
+     * order rather than arrival order.  Defaults to false.
+     *
+     * @param isPriorityScheduling
+     */
+    public void setPriorityScheduling(boolean isPriorityScheduling)
+    {
+        this.isPriorityScheduling = isPriorityScheduling;
+    }
+
+    /**
+     * Sets the wait after which a request on the local queue is treated as one
+     * priority level higher when priority scheduling, 0 disabling aging.
+     * Defaults to 30 seconds.
+     *
+     * @param priorityAgingMs
+     */
+    public void setPriorityAgingMs(long priorityAgingMs)
+    {
+        if (priorityAgingMs < 0)
+        {
+            throw new IllegalArgumentException("priorityAgingMs must not be negative");
+        }
+        this.priorityAgingMs = priorityAgingMs;
+    }
+
+    /**
+     * Gets the priority the given request is scheduled with
+     *
+     * @param request
+     * @return the request's priority or the default priority
+     */
+    protected int getPriority(RQ request)
+    {
+        if (request instanceof AbstractContentRequest)
+        {
+            Integer priority = ((AbstractContentRequest) request).getPriority();
+            if (priority != null)
+            {
+                return priority;
+            }
+        }
+        return AbstractContentRequest.PRIORITY_DEFAULT;
+    }
+
+    /**
+     * Gets the number of requests waiting on the local queue
+     *
+     * @return the local queue size
+     */
+    public int getQueueSize()
+    {
+        return localQueue == null ? 0 : localQueue.size();
+    }
+
     @SuppressWarnings("unchecked")
     protected void onReceiveImpl(Object message)
     {
@@ -51,6 +196,35 @@ public abstract class AbstractAsyncComponent<W extends ContentWorker, RQ extends
         }
         catch (InterruptedException e)
         {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (flowControlledEndpoint != null && localQueue.size() >= highWaterMark
+                && !flowControlledEndpoint.isPaused())
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Local queue reached high water mark of " + highWaterMark + ", pausing consumption");
+            }
+            flowControlledEndpoint.pause();
+            // Processors may have drained the queue before the pause took effect
+            checkLowWaterMark();
+        }
+    }
+
+    /**
+     * Resumes consumption if it was paused and the local queue has drained to the low water mark
+     */
+    protected void checkLowWaterMark()
+    {
+        if (flowControlledEndpoint != null && flowControlledEndpoint.isPaused()
+                && localQueue.size() <= lowWaterMark)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Local queue drained to low water mark of " + lowWaterMark + ", resuming consumption");
+            }
+            flowControlledEndpoint.resume();
         }
     }
 
@@ -83,6 +257,7 @@ public abstract class AbstractAsyncComponent<W extends ContentWorker, RQ extends
                 try
                 {
                     RQ request = localProcessorQueue.take();
+                    checkLowWaterMark();
                     logger.debug("Processing local queue message");
                     processRequest(request);
                     logger.debug("Processing local queue message complete");
@@ -90,6 +265,11 @@ public abstract class AbstractAsyncComponent<W extends ContentWorker, RQ extends
                 catch (InterruptedException e)
                 {
                 }
+                catch (RuntimeException e)
+                {
+                    // Keep the processor alive for subsequent requests
+                    logger.error("Error processing local queue message", e);
+                }
             }
         }
     }
@@ -97,7 +277,46 @@ public abstract class AbstractAsyncComponent<W extends ContentWorker, RQ extends
     public void init()
     {
         super.init();
-        executorService.execute(new LocalQueueProcessor(localQueue));
+        if (highWaterMark < 1 || highWaterMark > queueCapacity)
+        {
+            highWaterMark = queueCapacity;
+        }
+        if (lowWaterMark < 0 || lowWaterMark >= highWaterMark)
+        {
+            lowWaterMark = highWaterMark / 2;
+        }
+        if (isPriorityScheduling)
+        {
+            localQueue = new AgingPriorityBlockingQueue<RQ>(queueCapacity, priorityAgingMs, new ToIntFunction<RQ>()
+            {
+                public int applyAsInt(RQ request)
+                {
+                    return getPriority(request);
+                }
+            });
+        }
+        else
+        {
+            localQueue = new LinkedBlockingQueue<RQ>(queueCapacity);
+        }
+        for (int i = 0; i < processorCount; i++)
+        {
+            executorService.execute(new LocalQueueProcessor(localQueue));
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder(super.toString());
+        builder.setLength(builder.length() - 1);
+        builder.append(", processorCount: " + processorCount);
+        builder.append(", queueCapacity: " + queueCapacity);
+        builder.append(", highWaterMark: " + highWaterMark);
+        builder.append(", lowWaterMark: " + lowWaterMark);
+        builder.append(", isPriorityScheduling: " + isPriorityScheduling);
+        builder.append("]");
+        return builder.toString();
     }
 
 }
@@ -1,6 +1,13 @@
 package org.gengine.content;
 
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.gengine.messaging.MessageProducer;
+import org.gengine.messaging.Request;
+import org.gengine.messaging.dedup.RequestDedupStore;
+import org.gengine.messaging.dedup.RequestRecord;
 
 /**
  * Base implementation of a component with content worker and messageProducer fields.
@@ -9,9 +16,12 @@ import org.gengine.messaging.MessageProducer;
  */
 public abstract class AbstractComponent<W extends ContentWorker> implements Component
 {
+    private static final Log logger = LogFactory.getLog(AbstractComponent.class);
+
     protected String name;
     protected W worker;
     protected MessageProducer messageProducer;
+    protected RequestDedupStore dedupStore;
 
     public String getName()
     {
@@ -52,6 +62,16 @@ public abstract class AbstractComponent<W extends ContentWorker> implements Comp
         this.messageProducer = messageProducer;
     }
 
+    /**
+     * Sets the optional store used to recognise redelivered or retried requests
+     * so that their work isn't repeated
+     *
+     * @param dedupStore
+     */
+    public void setDedupStore(RequestDedupStore dedupStore)
+    {
+        this.dedupStore = dedupStore;
+    }
 
     public void init()
     {
@@ -64,6 +84,104 @@ public abstract class AbstractComponent<W extends ContentWorker> implements Comp
 
     protected abstract void onReceiveImpl(Object message);
 
+    /**
+     * Registers a received request with the dedup store, if any.
+     * <p>
+     * If the request has already completed within the store's window its final
+     * reply is resent to the request's reply queue.  If it's still in flight the
+     * duplicate's reply queue will also be sent the final reply.
+     *
+     * @param request
+     * @return true if the request is new and should be processed
+     */
+    protected boolean registerRequest(Request<?> request)
+    {
+        if (dedupStore == null || request.getRequestId() == null)
+        {
+            return true;
+        }
+        RequestRecord record = dedupStore.register(request.getRequestId(), request.getReplyTo());
+        if (record == null)
+        {
+            return true;
+        }
+        if (record.isCompleted())
+        {
+            logger.info("Resending reply to duplicate of completed requestId=" + request.getRequestId());
+            if (record.getReply() != null)
+            {
+                messageProducer.send(record.getReply(), request.getReplyTo());
+            }
+        }
+        else
+        {
+            logger.info("Ignoring duplicate of in-flight requestId=" + request.getRequestId());
+        }
+        return false;
+    }
+
+    /**
+     * Records the final reply of a request with the dedup store, if any, and
+     * sends it to any duplicates received while in flight
+     *
+     * @param request
+     * @param reply the reply already sent to the request's reply queue
+     */
+    protected void completeRequest(Request<?> request, Object reply)
+    {
+        if (dedupStore == null || request.getRequestId() == null)
+        {
+            return;
+        }
+        for (String replyTo : dedupStore.complete(request.getRequestId(), reply))
+        {
+            messageProducer.send(reply, replyTo);
+        }
+    }
+
+    /**
+     * Removes a failed request from the dedup store, if any, so a retry is
+     * processed again, and sends the error reply to any duplicates received while
+     * in flight
+     *
+     * @param request
+     * @param errorReply the error reply already sent to the request's reply queue, may be null
+     */
+    protected void failRequest(Request<?> request, Object errorReply)
+    {
+        if (dedupStore == null || request.getRequestId() == null)
+        {
+            return;
+        }
+        for (String replyTo : dedupStore.fail(request.getRequestId()))
+        {
+            if (errorReply != null)
+            {
+                messageProducer.send(errorReply, replyTo);
+            }
+        }
+    }
+
+    /**
+     * Removes a request from the dedup store, if any, which neither completed nor
+     * failed, i.e. because sending its reply threw or an error escaped the worker,
+     * so that it doesn't stay in flight and a retry is processed again.
+     * <p>
+     * Duplicates received while in flight are not sent a reply.
+     *
+     * @param request
+     */
+    protected void releaseRequest(Request<?> request)
+    {
+        if (dedupStore == null || request.getRequestId() == null)
+        {
+            return;
+        }
+        List<String> attachedReplyTos = dedupStore.fail(request.getRequestId());
+        logger.warn("Released unfinished requestId=" + request.getRequestId() +
+                (attachedReplyTos.isEmpty() ? "" : ", duplicates not replied to: " + attachedReplyTos));
+    }
+
     @Override
     public boolean isWorkerAvailable()
     {
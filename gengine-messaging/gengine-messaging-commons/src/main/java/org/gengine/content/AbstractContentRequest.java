@@ -7,11 +7,20 @@ import org.gengine.messaging.AbstractRequest;
 
 /**
  * Represents a request for some operation on content sources.
+ * <p>
+ * Requests may carry a priority using the JMS range of 0 to 9, which transports
+ * map to the message priority on send and components may use to order their
+ * local queue, i.e. to run interactive requests ahead of bulk ones.
  *
  */
 public abstract class AbstractContentRequest extends AbstractRequest
 {
+    public static final int PRIORITY_LOWEST = 0;
+    public static final int PRIORITY_DEFAULT = 4;
+    public static final int PRIORITY_HIGHEST = 9;
+
     private List<ContentReference> sourceContentReferences;
+    private Integer priority;
 
     public AbstractContentRequest()
     {
@@ -38,4 +47,30 @@ public abstract class AbstractContentRequest extends AbstractRequest
         this.sourceContentReferences = sourceContentReferences;
     }
 
+    /**
+     * Gets the priority of the request
+     *
+     * @return the priority or null if not set, meaning {@link #PRIORITY_DEFAULT}
+     */
+    public Integer getPriority()
+    {
+        return priority;
+    }
+
+    /**
+     * Sets the priority of the request, between {@link #PRIORITY_LOWEST}
+     * and {@link #PRIORITY_HIGHEST}
+     *
+     * @param priority the priority or null for the default
+     */
+    public void setPriority(Integer priority)
+    {
+        if (priority != null && (priority < PRIORITY_LOWEST || priority > PRIORITY_HIGHEST))
+        {
+            throw new IllegalArgumentException("priority must be between " +
+                    PRIORITY_LOWEST + " and " + PRIORITY_HIGHEST);
+        }
+        this.priority = priority;
+    }
+
 }
@@ -0,0 +1,34 @@
+package org.gengine.messaging;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Defines methods for sending message objects to a queue without blocking
+ * the calling thread on the transport.
+ * <p>
+ * The returned future completes when the transport has accepted the message
+ * or completes exceptionally with the failure, so acknowledgement and failure
+ * callbacks can be attached to it.
+ *
+ */
+public interface AsyncMessageProducer extends MessageProducer
+{
+
+    /**
+     * Asynchronously send the given POJO message to the default queue for the producer
+     *
+     * @param message
+     * @return the future completed once the message is sent
+     */
+    public CompletableFuture<Void> sendAsync(Object message);
+
+    /**
+     * Asynchronously send the given POJO message to the given queue
+     *
+     * @param message
+     * @param queueName
+     * @return the future completed once the message is sent
+     */
+    public CompletableFuture<Void> sendAsync(Object message, String queueName);
+
+}
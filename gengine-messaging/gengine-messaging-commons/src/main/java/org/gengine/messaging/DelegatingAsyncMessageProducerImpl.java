@@ -0,0 +1,254 @@
+package org.gengine.messaging;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An {@link AsyncMessageProducer} which performs sends on a delegate
+ * {@link MessageProducer} using an executor service.
+ * <p>
+ * At most <code>maxInFlight</code> asynchronous sends may be outstanding, callers
+ * of {@link #sendAsync(Object, String)} block once that window is full so that a
+ * slow broker applies back pressure rather than queueing unbounded messages in memory.
+ * <p>
+ * The default executor uses a single daemon thread so messages are sent in the order
+ * they're submitted, and is stopped by {@link #shutdown()}.  Synchronous sends go
+ * straight to the delegate and may overtake outstanding asynchronous sends.
+ *
+ */
+public class DelegatingAsyncMessageProducerImpl implements AsyncMessageProducer
+{
+    private static final Log logger = LogFactory.getLog(DelegatingAsyncMessageProducerImpl.class);
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 100;
+    public static final long DEFAULT_SHUTDOWN_TIMEOUT_MS = 5000;
+
+    protected MessageProducer delegate;
+    protected ExecutorService executorService;
+    private boolean isExecutorServiceOwned = false;
+    protected int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    protected Semaphore inFlightPermits;
+
+    public DelegatingAsyncMessageProducerImpl()
+    {
+    }
+
+    public DelegatingAsyncMessageProducerImpl(MessageProducer delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    /**
+     * The message producer which performs the sends
+     *
+     * @param delegate
+     */
+    public void setDelegate(MessageProducer delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    /**
+     * The optional executor service asynchronous sends are performed on
+     *
+     * @param executorService
+     */
+    public void setExecutorService(ExecutorService executorService)
+    {
+        this.executorService = executorService;
+    }
+
+    /**
+     * The maximum number of outstanding asynchronous sends, defaults to 100
+     *
+     * @param maxInFlight
+     */
+    public void setMaxInFlight(int maxInFlight)
+    {
+        if (maxInFlight < 1)
+        {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    public void init()
+    {
+        if (delegate == null)
+        {
+            throw new IllegalStateException("delegate must be set");
+        }
+        if (executorService == null)
+        {
+            executorService = Executors.newSingleThreadExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "gengine-async-producer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            isExecutorServiceOwned = true;
+        }
+        inFlightPermits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Shuts down the default executor if one was created, waiting up to
+     * {@link #DEFAULT_SHUTDOWN_TIMEOUT_MS} for outstanding sends to complete
+     */
+    public void shutdown()
+    {
+        if (!isExecutorServiceOwned || executorService == null)
+        {
+            return;
+        }
+        executorService.shutdown();
+        try
+        {
+            if (!executorService.awaitTermination(DEFAULT_SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+            {
+                logger.warn("Asynchronous sends still in flight after " + DEFAULT_SHUTDOWN_TIMEOUT_MS + "ms");
+                executorService.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the number of asynchronous sends not yet completed
+     *
+     * @return the in-flight count
+     */
+    public int getInFlightCount()
+    {
+        if (inFlightPermits == null)
+        {
+            return 0;
+        }
+        return maxInFlight - inFlightPermits.availablePermits();
+    }
+
+    @Override
+    public CompletableFuture<Void> sendAsync(Object message)
+    {
+        return sendAsync(message, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendAsync(final Object message, final String queueName)
+    {
+        if (inFlightPermits == null)
+        {
+            throw new IllegalStateException("init() not called");
+        }
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        try
+        {
+            inFlightPermits.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(new MessagingException("Interrupted waiting to send message", e));
+            return future;
+        }
+        try
+        {
+            executorService.execute(new Runnable()
+            {
+                public void run()
+                {
+                    Throwable error = null;
+                    try
+                    {
+                        if (queueName == null)
+                        {
+                            delegate.send(message);
+                        }
+                        else
+                        {
+                            delegate.send(message, queueName);
+                        }
+                    }
+                    catch (Throwable e)
+                    {
+                        error = e;
+                    }
+                    // Free the slot before running any callbacks attached to the future
+                    inFlightPermits.release();
+                    if (error == null)
+                    {
+                        future.complete(null);
+                    }
+                    else
+                    {
+                        if (logger.isDebugEnabled())
+                        {
+                            logger.debug("Asynchronous send failed: " + error.getMessage());
+                        }
+                        future.completeExceptionally(error);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            inFlightPermits.release();
+            future.completeExceptionally(new MessagingException("Asynchronous send rejected", e));
+        }
+        return future;
+    }
+
+    @Override
+    public void send(Object message) throws MessagingException
+    {
+        delegate.send(message);
+    }
+
+    @Override
+    public void send(Object message, Map<String, Object> headers) throws MessagingException
+    {
+        delegate.send(message, headers);
+    }
+
+    @Override
+    public void send(Object message, String queueName) throws MessagingException
+    {
+        delegate.send(message, queueName);
+    }
+
+    @Override
+    public void send(Object message, String queueName, Map<String, Object> headers) throws MessagingException
+    {
+        delegate.send(message, queueName, headers);
+    }
+
+    @Override
+    public void sendBatch(List<?> messages, String queueName) throws MessagingException
+    {
+        delegate.sendBatch(messages, queueName);
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.getClass().getSimpleName() + "[delegate: " + delegate + ", maxInFlight: " + maxInFlight + "]";
+    }
+
+}
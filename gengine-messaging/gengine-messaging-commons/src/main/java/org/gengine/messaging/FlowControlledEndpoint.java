@@ -0,0 +1,29 @@
+package org.gengine.messaging;
+
+/**
+ * Defines an endpoint whose consumption of messages can be paused and resumed,
+ * allowing a consumer to apply back pressure when it can't keep up.
+ *
+ */
+public interface FlowControlledEndpoint
+{
+
+    /**
+     * Stops delivering further messages to the consumer until {@link #resume()} is called.
+     * Messages already being delivered are unaffected.
+     */
+    public void pause();
+
+    /**
+     * Resumes delivering messages to the consumer
+     */
+    public void resume();
+
+    /**
+     * Determines whether delivery is currently paused
+     *
+     * @return true if paused
+     */
+    public boolean isPaused();
+
+}
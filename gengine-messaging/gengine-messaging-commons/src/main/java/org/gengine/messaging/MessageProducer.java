@@ -1,5 +1,6 @@
 package org.gengine.messaging;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -45,4 +46,26 @@ public interface MessageProducer
      */
     public void send(Object message, String queueName, Map<String, Object> headers) throws MessagingException;
 
+    /**
+     * Send the given POJO messages to the given queue as a single batch.
+     * <p>
+     * The default implementation simply sends each message in turn, implementations
+     * which can amortize the transport round trip over the batch override it.
+     *
+     * @param messages
+     * @param queueName the queue, or null for the default queue for the producer
+     * @throws MessagingException
+     */
+    public default void sendBatch(List<?> messages, String queueName) throws MessagingException
+    {
+        if (messages == null)
+        {
+            return;
+        }
+        for (Object message : messages)
+        {
+            send(message, queueName);
+        }
+    }
+
 }
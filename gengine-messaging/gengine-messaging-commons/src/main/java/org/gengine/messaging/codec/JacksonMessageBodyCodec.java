@@ -0,0 +1,77 @@
+package org.gengine.messaging.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A {@link MessageBodyCodec} backed by a Jackson {@link ObjectMapper}, whose
+ * {@link JsonFactory} determines the format, i.e. JSON or Smile.
+ *
+ */
+public class JacksonMessageBodyCodec implements MessageBodyCodec
+{
+    private final ObjectMapper objectMapper;
+    private final String contentType;
+
+    public JacksonMessageBodyCodec(ObjectMapper objectMapper, String contentType)
+    {
+        if (objectMapper == null)
+        {
+            throw new IllegalArgumentException("objectMapper must not be null");
+        }
+        this.objectMapper = objectMapper;
+        this.contentType = contentType;
+    }
+
+    public ObjectMapper getObjectMapper()
+    {
+        return objectMapper;
+    }
+
+    @Override
+    public String getContentType()
+    {
+        return contentType;
+    }
+
+    @Override
+    public boolean isBinary()
+    {
+        return objectMapper.getFactory().canHandleBinaryNatively();
+    }
+
+    @Override
+    public void encode(Object message, OutputStream outputStream) throws IOException
+    {
+        objectMapper.writeValue(outputStream, message);
+    }
+
+    @Override
+    public byte[] encode(Object message) throws IOException
+    {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Override
+    public <T> T decode(InputStream inputStream, Class<T> valueType) throws IOException
+    {
+        return objectMapper.readValue(inputStream, valueType);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, int offset, int length, Class<T> valueType) throws IOException
+    {
+        return objectMapper.readValue(bytes, offset, length, valueType);
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.getClass().getSimpleName() + "[contentType: " + contentType + "]";
+    }
+
+}
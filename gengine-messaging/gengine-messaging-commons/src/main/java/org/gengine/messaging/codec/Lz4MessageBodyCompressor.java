@@ -0,0 +1,127 @@
+package org.gengine.messaging.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * A {@link MessageBodyCompressor} using the LZ4 block format, which trades
+ * some compression ratio for speed so that compressing a large reply costs
+ * less than sending the uncompressed bytes.
+ * <p>
+ * Compressed bodies are prefixed with the uncompressed length as a 4 byte
+ * big-endian integer.  That length is checked against a maximum before any
+ * buffer is allocated, and decompression never reads or writes outside the given
+ * buffers, so a corrupt or malicious body fails with an <code>IOException</code>.
+ *
+ */
+public class Lz4MessageBodyCompressor implements MessageBodyCompressor
+{
+    private static final int HEADER_LENGTH = 4;
+
+    public static final int DEFAULT_MAX_DECOMPRESSED_LENGTH = 64 * 1024 * 1024;
+
+    private final LZ4Compressor compressor;
+    private final LZ4SafeDecompressor decompressor;
+    private volatile int maxDecompressedLength = DEFAULT_MAX_DECOMPRESSED_LENGTH;
+
+    public Lz4MessageBodyCompressor()
+    {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.safeDecompressor();
+    }
+
+    public Lz4MessageBodyCompressor(int maxDecompressedLength)
+    {
+        this();
+        setMaxDecompressedLength(maxDecompressedLength);
+    }
+
+    /**
+     * Sets the maximum decompressed length in bytes a compressed body may declare.
+     * Defaults to 64MB.
+     *
+     * @param maxDecompressedLength
+     */
+    public void setMaxDecompressedLength(int maxDecompressedLength)
+    {
+        if (maxDecompressedLength < 0)
+        {
+            throw new IllegalArgumentException("maxDecompressedLength must not be negative");
+        }
+        this.maxDecompressedLength = maxDecompressedLength;
+    }
+
+    public int getMaxDecompressedLength()
+    {
+        return maxDecompressedLength;
+    }
+
+    @Override
+    public String getContentEncoding()
+    {
+        return CONTENT_ENCODING_LZ4;
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes, int offset, int length) throws IOException
+    {
+        byte[] compressed = new byte[HEADER_LENGTH + compressor.maxCompressedLength(length)];
+        compressed[0] = (byte) (length >>> 24);
+        compressed[1] = (byte) (length >>> 16);
+        compressed[2] = (byte) (length >>> 8);
+        compressed[3] = (byte) length;
+        int compressedLength = compressor.compress(
+                bytes, offset, length, compressed, HEADER_LENGTH, compressed.length - HEADER_LENGTH);
+        return Arrays.copyOf(compressed, HEADER_LENGTH + compressedLength);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes, int offset, int length) throws IOException
+    {
+        if (length < HEADER_LENGTH)
+        {
+            throw new IOException("Compressed body is too short: " + length + " bytes");
+        }
+        int decompressedLength = ((bytes[offset] & 0xff) << 24)
+                | ((bytes[offset + 1] & 0xff) << 16)
+                | ((bytes[offset + 2] & 0xff) << 8)
+                | (bytes[offset + 3] & 0xff);
+        if (decompressedLength < 0)
+        {
+            throw new IOException("Invalid decompressed length: " + decompressedLength);
+        }
+        if (decompressedLength > maxDecompressedLength)
+        {
+            throw new IOException("Decompressed length " + decompressedLength +
+                    " exceeds the maximum of " + maxDecompressedLength + " bytes");
+        }
+        byte[] decompressed = new byte[decompressedLength];
+        try
+        {
+            int written = decompressor.decompress(bytes, offset + HEADER_LENGTH, length - HEADER_LENGTH,
+                    decompressed, 0, decompressedLength);
+            if (written != decompressedLength)
+            {
+                throw new IOException("Decompressed body length mismatch, expected " +
+                        decompressedLength + " bytes but decompressed " + written);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            throw new IOException("Could not decompress body: " + e.getMessage(), e);
+        }
+        return decompressed;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.getClass().getSimpleName() + "[contentEncoding: " + getContentEncoding() + "]";
+    }
+
+}
@@ -0,0 +1,77 @@
+package org.gengine.messaging.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Defines the encoding of message body objects to and from their wire format.
+ * <p>
+ * Transports which support it should carry the {@link #getContentType()} of the
+ * encoded body in the {@link #HEADER_CONTENT_TYPE} message header so that receivers
+ * can select the matching codec, with a missing header implying JSON.
+ *
+ */
+public interface MessageBodyCodec
+{
+    public static final String HEADER_CONTENT_TYPE = "GengineContentType";
+
+    public static final String CONTENT_TYPE_JSON = "application/json";
+    public static final String CONTENT_TYPE_SMILE = "application/x-jackson-smile";
+
+    /**
+     * Gets the content type of encoded bodies
+     *
+     * @return the content type
+     */
+    public String getContentType();
+
+    /**
+     * Determines whether encoded bodies are binary and must be carried
+     * as bytes rather than text
+     *
+     * @return true if the encoding is binary
+     */
+    public boolean isBinary();
+
+    /**
+     * Encodes the given message body to the output stream
+     *
+     * @param message
+     * @param outputStream
+     * @throws IOException
+     */
+    public void encode(Object message, OutputStream outputStream) throws IOException;
+
+    /**
+     * Encodes the given message body
+     *
+     * @param message
+     * @return the encoded bytes
+     * @throws IOException
+     */
+    public byte[] encode(Object message) throws IOException;
+
+    /**
+     * Decodes a message body of the given type from the input stream
+     *
+     * @param inputStream
+     * @param valueType
+     * @return the message body
+     * @throws IOException
+     */
+    public <T> T decode(InputStream inputStream, Class<T> valueType) throws IOException;
+
+    /**
+     * Decodes a message body of the given type from the byte range
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @param valueType
+     * @return the message body
+     * @throws IOException
+     */
+    public <T> T decode(byte[] bytes, int offset, int length, Class<T> valueType) throws IOException;
+
+}
@@ -0,0 +1,49 @@
+package org.gengine.messaging.codec;
+
+import org.apache.commons.lang3.StringUtils;
+import org.gengine.messaging.jackson.ObjectMapperFactory;
+
+/**
+ * Creates {@link MessageBodyCodec}s for the supported content types
+ *
+ */
+public class MessageBodyCodecFactory
+{
+
+    /**
+     * Creates a codec for the given content type, defaulting to JSON if
+     * the content type is empty.
+     *
+     * @param contentType
+     * @return the codec
+     * @throws IllegalArgumentException if the content type is not supported
+     */
+    public static MessageBodyCodec createInstance(String contentType)
+    {
+        if (StringUtils.isEmpty(contentType) || MessageBodyCodec.CONTENT_TYPE_JSON.equals(contentType))
+        {
+            return new JacksonMessageBodyCodec(
+                    ObjectMapperFactory.createInstance(), MessageBodyCodec.CONTENT_TYPE_JSON);
+        }
+        if (MessageBodyCodec.CONTENT_TYPE_SMILE.equals(contentType))
+        {
+            return new JacksonMessageBodyCodec(
+                    ObjectMapperFactory.createSmileInstance(), MessageBodyCodec.CONTENT_TYPE_SMILE);
+        }
+        throw new IllegalArgumentException("Unsupported content type: " + contentType);
+    }
+
+    /**
+     * Determines whether the given content type is supported
+     *
+     * @param contentType
+     * @return true if a codec can be created for the content type
+     */
+    public static boolean isSupported(String contentType)
+    {
+        return StringUtils.isEmpty(contentType)
+                || MessageBodyCodec.CONTENT_TYPE_JSON.equals(contentType)
+                || MessageBodyCodec.CONTENT_TYPE_SMILE.equals(contentType);
+    }
+
+}
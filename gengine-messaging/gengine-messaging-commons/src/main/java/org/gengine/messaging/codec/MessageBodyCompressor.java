@@ -0,0 +1,50 @@
+package org.gengine.messaging.codec;
+
+import java.io.IOException;
+
+/**
+ * Compresses encoded message bodies.
+ * <p>
+ * Transports compress bodies whose encoded size reaches a configured threshold,
+ * sending them as bytes with the {@link #getContentEncoding()} in the
+ * {@link #HEADER_CONTENT_ENCODING} message header alongside the
+ * {@link MessageBodyCodec#HEADER_CONTENT_TYPE}.  A missing header means the
+ * body isn't compressed.
+ *
+ */
+public interface MessageBodyCompressor
+{
+    public static final String HEADER_CONTENT_ENCODING = "GengineContentEncoding";
+
+    public static final String CONTENT_ENCODING_LZ4 = "lz4";
+
+    /**
+     * Gets the content encoding of compressed bodies
+     *
+     * @return the content encoding
+     */
+    public String getContentEncoding();
+
+    /**
+     * Compresses the given byte range
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @return the compressed bytes
+     * @throws IOException
+     */
+    public byte[] compress(byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * Decompresses the given byte range
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @return the decompressed bytes
+     * @throws IOException if the bytes are not valid compressed data
+     */
+    public byte[] decompress(byte[] bytes, int offset, int length) throws IOException;
+
+}
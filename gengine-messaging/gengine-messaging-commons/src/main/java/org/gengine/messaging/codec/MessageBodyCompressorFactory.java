@@ -0,0 +1,46 @@
+package org.gengine.messaging.codec;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Provides {@link MessageBodyCompressor}s for the supported content encodings.
+ * Compressors are stateless so a single shared instance is used per encoding.
+ *
+ */
+public class MessageBodyCompressorFactory
+{
+    private static volatile MessageBodyCompressor lz4Instance;
+
+    /**
+     * Gets the compressor for the given content encoding
+     *
+     * @param contentEncoding
+     * @return the compressor
+     * @throws IllegalArgumentException if the content encoding is not supported
+     */
+    public static MessageBodyCompressor getInstance(String contentEncoding)
+    {
+        if (MessageBodyCompressor.CONTENT_ENCODING_LZ4.equals(contentEncoding))
+        {
+            if (lz4Instance == null)
+            {
+                lz4Instance = new Lz4MessageBodyCompressor();
+            }
+            return lz4Instance;
+        }
+        throw new IllegalArgumentException("Unsupported content encoding: " + contentEncoding);
+    }
+
+    /**
+     * Determines whether the given content encoding is supported
+     *
+     * @param contentEncoding
+     * @return true if a compressor is available for the content encoding
+     */
+    public static boolean isSupported(String contentEncoding)
+    {
+        return !StringUtils.isEmpty(contentEncoding)
+                && MessageBodyCompressor.CONTENT_ENCODING_LZ4.equals(contentEncoding);
+    }
+
+}
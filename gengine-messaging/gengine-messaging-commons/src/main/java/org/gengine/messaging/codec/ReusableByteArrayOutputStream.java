@@ -0,0 +1,82 @@
+package org.gengine.messaging.codec;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * A {@link ByteArrayOutputStream} whose internal buffer can be handed directly
+ * to a transport and reused for subsequent messages, avoiding a copy and new
+ * allocation per message.
+ * <p>
+ * {@link #getThreadLocalInstance()} provides a per-thread instance which must only
+ * be used until the encoded bytes have been handed off, i.e. within a single
+ * send or receive.  Buffers which have grown larger than {@link #MAX_RETAINED_CAPACITY}
+ * for an unusually large message are released rather than held by the thread.
+ *
+ */
+public class ReusableByteArrayOutputStream extends ByteArrayOutputStream
+{
+    public static final int DEFAULT_INITIAL_CAPACITY = 8 * 1024;
+    public static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+    private static final ThreadLocal<ReusableByteArrayOutputStream> threadLocalInstance =
+            new ThreadLocal<ReusableByteArrayOutputStream>()
+    {
+        @Override
+        protected ReusableByteArrayOutputStream initialValue()
+        {
+            return new ReusableByteArrayOutputStream(DEFAULT_INITIAL_CAPACITY);
+        }
+    };
+
+    public ReusableByteArrayOutputStream(int initialCapacity)
+    {
+        super(initialCapacity);
+    }
+
+    /**
+     * Gets the calling thread's instance, reset and ready for writing
+     *
+     * @return the thread's reusable stream
+     */
+    public static ReusableByteArrayOutputStream getThreadLocalInstance()
+    {
+        ReusableByteArrayOutputStream instance = threadLocalInstance.get();
+        if (instance.buf.length > MAX_RETAINED_CAPACITY)
+        {
+            instance = new ReusableByteArrayOutputStream(DEFAULT_INITIAL_CAPACITY);
+            threadLocalInstance.set(instance);
+        }
+        instance.reset();
+        return instance;
+    }
+
+    /**
+     * Gets the internal buffer, valid from offset 0 to {@link #size()}
+     *
+     * @return the internal buffer
+     */
+    public byte[] getBuffer()
+    {
+        return buf;
+    }
+
+    /**
+     * Resets the stream and ensures the internal buffer can hold the given
+     * number of bytes, for reading a message body of known length directly
+     * into {@link #getBuffer()}
+     *
+     * @param capacity
+     * @return the internal buffer
+     */
+    public byte[] reset(int capacity)
+    {
+        reset();
+        if (buf.length < capacity)
+        {
+            buf = new byte[capacity];
+        }
+        count = capacity;
+        return buf;
+    }
+
+}
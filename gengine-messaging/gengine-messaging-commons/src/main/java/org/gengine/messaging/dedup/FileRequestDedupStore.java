@@ -0,0 +1,244 @@
+package org.gengine.messaging.dedup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.gengine.messaging.jackson.ObjectMapperFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A {@link RequestDedupStore} which also appends completed requests to a file,
+ * one JSON record per line, so that the window survives a restart.
+ * <p>
+ * Unexpired records are loaded by {@link #init()}, which then compacts the file.
+ * The file is compacted again once as many records have been appended as the
+ * store can hold.
+ *
+ */
+public class FileRequestDedupStore extends InMemoryRequestDedupStore
+{
+    private static final Log logger = LogFactory.getLog(FileRequestDedupStore.class);
+
+    private File file;
+    private ObjectMapper objectMapper;
+    private Writer writer;
+    private int appendedCount;
+
+    /**
+     * The form of a completed request written to the file
+     */
+    public static class CompletedRequest
+    {
+        private String requestId;
+        private long completedTime;
+        private Object reply;
+
+        public String getRequestId()
+        {
+            return requestId;
+        }
+
+        public void setRequestId(String requestId)
+        {
+            this.requestId = requestId;
+        }
+
+        public long getCompletedTime()
+        {
+            return completedTime;
+        }
+
+        public void setCompletedTime(long completedTime)
+        {
+            this.completedTime = completedTime;
+        }
+
+        public Object getReply()
+        {
+            return reply;
+        }
+
+        public void setReply(Object reply)
+        {
+            this.reply = reply;
+        }
+    }
+
+    public void setFile(File file)
+    {
+        this.file = file;
+    }
+
+    public void setObjectMapper(ObjectMapper objectMapper)
+    {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Loads the unexpired records from the file, if it exists, and compacts it
+     */
+    public synchronized void init()
+    {
+        if (file == null)
+        {
+            throw new IllegalArgumentException("file must be set");
+        }
+        if (objectMapper == null)
+        {
+            objectMapper = ObjectMapperFactory.createInstance();
+        }
+        if (file.exists())
+        {
+            load();
+        }
+        compact();
+    }
+
+    /**
+     * Closes the file
+     */
+    public synchronized void close()
+    {
+        closeWriter();
+    }
+
+    @Override
+    protected synchronized void onCompleted(RequestRecord record)
+    {
+        if (writer == null)
+        {
+            return;
+        }
+        try
+        {
+            write(writer, record);
+            writer.flush();
+            appendedCount++;
+        }
+        catch (IOException e)
+        {
+            logger.error("Could not append to dedup store file " + file + ": " + e.getMessage());
+        }
+        if (appendedCount >= getMaxEntries())
+        {
+            compact();
+        }
+    }
+
+    private void load()
+    {
+        int lineNumber = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                lineNumber++;
+                if (line.isEmpty())
+                {
+                    continue;
+                }
+                try
+                {
+                    CompletedRequest completed = objectMapper.readValue(line, CompletedRequest.class);
+                    restore(new RequestRecord(
+                            completed.getRequestId(), completed.getReply(), completed.getCompletedTime()));
+                }
+                catch (IOException e)
+                {
+                    // A partially written last line is expected after a crash
+                    logger.warn("Skipping unreadable record at " + file + ":" + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            logger.error("Could not load dedup store file " + file + ": " + e.getMessage());
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Loaded " + size() + " requests from " + file);
+        }
+    }
+
+    /**
+     * Rewrites the file with only the unexpired records then reopens it for appending
+     */
+    private void compact()
+    {
+        closeWriter();
+        File tempFile = new File(file.getPath() + ".tmp");
+        try
+        {
+            try (Writer tempWriter = openWriter(tempFile, false))
+            {
+                for (RequestRecord record : getCompletedRecords().values())
+                {
+                    write(tempWriter, record);
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writer = openWriter(file, true);
+            appendedCount = 0;
+        }
+        catch (IOException e)
+        {
+            logger.error("Could not compact dedup store file " + file + ", " +
+                    "completed requests will not be persisted: " + e.getMessage());
+        }
+    }
+
+    private Writer openWriter(File target, boolean append) throws IOException
+    {
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists())
+        {
+            parent.mkdirs();
+        }
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(target, append), StandardCharsets.UTF_8));
+    }
+
+    private void write(Writer target, RequestRecord record) throws IOException
+    {
+        CompletedRequest completed = new CompletedRequest();
+        completed.setRequestId(record.getRequestId());
+        completed.setCompletedTime(record.getCompletedTime());
+        completed.setReply(record.getReply());
+        target.write(objectMapper.writeValueAsString(completed));
+        target.write('\n');
+    }
+
+    private void closeWriter()
+    {
+        if (writer == null)
+        {
+            return;
+        }
+        try
+        {
+            writer.close();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Could not close dedup store file " + file + ": " + e.getMessage());
+        }
+        writer = null;
+    }
+
+}
@@ -0,0 +1,224 @@
+package org.gengine.messaging.dedup;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A {@link RequestDedupStore} which holds request records in memory.
+ * <p>
+ * Completed requests are kept for the configured window and the number of records
+ * is bounded, with the least recently registered records evicted first.
+ * In-flight requests are only evicted if the store is full of them.
+ *
+ */
+public class InMemoryRequestDedupStore implements RequestDedupStore
+{
+    private static final Log logger = LogFactory.getLog(InMemoryRequestDedupStore.class);
+
+    public static final long DEFAULT_WINDOW_MS = 60 * 60 * 1000;
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private long windowMs = DEFAULT_WINDOW_MS;
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    /** Records in registration order, so the oldest are first */
+    private final LinkedHashMap<String, RequestRecord> records = new LinkedHashMap<String, RequestRecord>();
+
+    /**
+     * Sets how long the reply of a completed request is kept, defaults to one hour
+     *
+     * @param windowMs
+     */
+    public void setWindowMs(long windowMs)
+    {
+        if (windowMs <= 0)
+        {
+            throw new IllegalArgumentException("windowMs must be greater than 0");
+        }
+        this.windowMs = windowMs;
+    }
+
+    public long getWindowMs()
+    {
+        return windowMs;
+    }
+
+    /**
+     * Sets the maximum number of requests tracked, defaults to 10000
+     *
+     * @param maxEntries
+     */
+    public void setMaxEntries(int maxEntries)
+    {
+        if (maxEntries < 1)
+        {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    public synchronized RequestRecord register(String requestId, String replyTo)
+    {
+        if (requestId == null)
+        {
+            return null;
+        }
+        long now = currentTimeMillis();
+        RequestRecord record = records.get(requestId);
+        if (record != null && isExpired(record, now))
+        {
+            records.remove(requestId);
+            record = null;
+        }
+        if (record != null)
+        {
+            if (!record.isCompleted())
+            {
+                record.attach(replyTo);
+            }
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Duplicate request " + record);
+            }
+            return record;
+        }
+        purge(now);
+        records.put(requestId, new RequestRecord(requestId, replyTo));
+        return null;
+    }
+
+    public List<String> complete(String requestId, Object reply)
+    {
+        RequestRecord record;
+        long now = currentTimeMillis();
+        synchronized (this)
+        {
+            record = records.get(requestId);
+            if (record == null)
+            {
+                return Collections.emptyList();
+            }
+        }
+        List<String> attachedReplyTos = record.complete(reply, now);
+        onCompleted(record);
+        return attachedReplyTos;
+    }
+
+    public synchronized List<String> fail(String requestId)
+    {
+        RequestRecord record = records.remove(requestId);
+        if (record == null)
+        {
+            return Collections.emptyList();
+        }
+        return record.detach();
+    }
+
+    public synchronized int size()
+    {
+        return records.size();
+    }
+
+    /**
+     * Adds an already completed record, i.e. one loaded from storage, if it's
+     * still within the window
+     *
+     * @param record
+     */
+    protected synchronized void restore(RequestRecord record)
+    {
+        long now = currentTimeMillis();
+        if (isExpired(record, now))
+        {
+            return;
+        }
+        records.remove(record.getRequestId());
+        purge(now);
+        records.put(record.getRequestId(), record);
+    }
+
+    /**
+     * Called once a request has completed, for subclasses which persist records
+     *
+     * @param record
+     */
+    protected void onCompleted(RequestRecord record)
+    {
+    }
+
+    protected long currentTimeMillis()
+    {
+        return System.currentTimeMillis();
+    }
+
+    protected boolean isExpired(RequestRecord record, long now)
+    {
+        return record.isCompleted() && now - record.getCompletedTime() >= windowMs;
+    }
+
+    /**
+     * Removes expired records then, if still full, evicts the oldest completed records
+     * or failing that the oldest in-flight ones to make room for one more
+     */
+    private void purge(long now)
+    {
+        if (records.size() < maxEntries)
+        {
+            return;
+        }
+        Iterator<RequestRecord> iterator = records.values().iterator();
+        while (iterator.hasNext())
+        {
+            if (isExpired(iterator.next(), now))
+            {
+                iterator.remove();
+            }
+        }
+        iterator = records.values().iterator();
+        while (records.size() >= maxEntries && iterator.hasNext())
+        {
+            if (iterator.next().isCompleted())
+            {
+                iterator.remove();
+            }
+        }
+        iterator = records.values().iterator();
+        while (records.size() >= maxEntries && iterator.hasNext())
+        {
+            RequestRecord record = iterator.next();
+            iterator.remove();
+            logger.warn("Evicting in-flight request from full dedup store: " + record);
+        }
+    }
+
+    /**
+     * Gets a snapshot of the completed records still within the window
+     *
+     * @return the completed records, oldest first
+     */
+    protected synchronized Map<String, RequestRecord> getCompletedRecords()
+    {
+        long now = currentTimeMillis();
+        Map<String, RequestRecord> completed = new LinkedHashMap<String, RequestRecord>();
+        for (RequestRecord record : records.values())
+        {
+            if (record.isCompleted() && !isExpired(record, now))
+            {
+                completed.put(record.getRequestId(), record);
+            }
+        }
+        return completed;
+    }
+
+}
@@ -0,0 +1,53 @@
+package org.gengine.messaging.dedup;
+
+import java.util.List;
+
+/**
+ * Tracks recently received request IDs so that a component can recognise
+ * redelivered or retried requests rather than repeating their work.
+ * <p>
+ * A request is registered when received and is then in flight until it's completed,
+ * when its final reply is kept for the store's window so that it can be resent to
+ * duplicates, or failed, when it's forgotten so that a retry is processed again.
+ * Duplicates of an in-flight request are attached to it and their reply queues
+ * returned on completion or failure so they receive the same final reply.
+ *
+ */
+public interface RequestDedupStore
+{
+
+    /**
+     * Registers a received request
+     *
+     * @param requestId
+     * @param replyTo the request's reply queue, may be null
+     * @return null if the request is new and should be processed, otherwise the
+     *         existing record of the request which has been attached to if in flight
+     */
+    public RequestRecord register(String requestId, String replyTo);
+
+    /**
+     * Records the final reply of a request
+     *
+     * @param requestId
+     * @param reply
+     * @return the reply queues of duplicates attached while in flight
+     */
+    public List<String> complete(String requestId, Object reply);
+
+    /**
+     * Forgets a request which failed so that it can be retried
+     *
+     * @param requestId
+     * @return the reply queues of duplicates attached while in flight
+     */
+    public List<String> fail(String requestId);
+
+    /**
+     * Gets the number of requests currently tracked
+     *
+     * @return the number of requests
+     */
+    public int size();
+
+}
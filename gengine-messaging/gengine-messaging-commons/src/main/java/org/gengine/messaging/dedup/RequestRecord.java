@@ -0,0 +1,112 @@
+package org.gengine.messaging.dedup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The state of a request tracked by a {@link RequestDedupStore}
+ *
+ */
+public class RequestRecord
+{
+    private final String requestId;
+    private final String replyTo;
+    private final List<String> attachedReplyTos = new ArrayList<String>();
+    private boolean isCompleted;
+    private long completedTime;
+    private Object reply;
+
+    public RequestRecord(String requestId, String replyTo)
+    {
+        this.requestId = requestId;
+        this.replyTo = replyTo;
+    }
+
+    /**
+     * Creates a record of an already completed request
+     *
+     * @param requestId
+     * @param reply
+     * @param completedTime
+     */
+    public RequestRecord(String requestId, Object reply, long completedTime)
+    {
+        this(requestId, null);
+        this.isCompleted = true;
+        this.reply = reply;
+        this.completedTime = completedTime;
+    }
+
+    public String getRequestId()
+    {
+        return requestId;
+    }
+
+    public synchronized boolean isCompleted()
+    {
+        return isCompleted;
+    }
+
+    /**
+     * Gets the time the request completed
+     *
+     * @return the completion time in milliseconds since the epoch, or 0 if in flight
+     */
+    public synchronized long getCompletedTime()
+    {
+        return completedTime;
+    }
+
+    /**
+     * Gets the final reply of a completed request
+     *
+     * @return the reply or null if in flight
+     */
+    public synchronized Object getReply()
+    {
+        return reply;
+    }
+
+    /**
+     * Attaches a duplicate's reply queue to an in-flight request, ignored if it's
+     * the same as the original request's or another duplicate's
+     *
+     * @param duplicateReplyTo
+     */
+    protected synchronized void attach(String duplicateReplyTo)
+    {
+        if (duplicateReplyTo == null || duplicateReplyTo.equals(replyTo)
+                || attachedReplyTos.contains(duplicateReplyTo))
+        {
+            return;
+        }
+        attachedReplyTos.add(duplicateReplyTo);
+    }
+
+    /**
+     * Marks the request completed, returning the attached reply queues
+     */
+    protected synchronized List<String> complete(Object reply, long completedTime)
+    {
+        this.isCompleted = true;
+        this.reply = reply;
+        this.completedTime = completedTime;
+        return detach();
+    }
+
+    protected synchronized List<String> detach()
+    {
+        List<String> detached = new ArrayList<String>(attachedReplyTos);
+        attachedReplyTos.clear();
+        return detached;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return this.getClass().getSimpleName() + "[requestId: " + requestId +
+                ", isCompleted: " + isCompleted +
+                ", attachedReplyTos: " + attachedReplyTos + "]";
+    }
+
+}
@@ -0,0 +1,19 @@
+package org.gengine.messaging.jackson;
+
+import org.gengine.content.ContentReference;
+import org.gengine.content.ContentWorkResult;
+
+/**
+ * Registers type ids for the content classes shared by all messages
+ *
+ */
+public class MessagingTypeIdProvider implements TypeIdProvider
+{
+
+    public void registerTypeIds(TypeIdRegistry registry)
+    {
+        registry.register("ContentReference", ContentReference.class);
+        registry.register("ContentWorkResult", ContentWorkResult.class);
+    }
+
+}
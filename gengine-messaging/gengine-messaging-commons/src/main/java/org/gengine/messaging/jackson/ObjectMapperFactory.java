@@ -1,26 +1,163 @@
 package org.gengine.messaging.jackson;
 
+import java.util.Collection;
+
 import com.fasterxml.jackson.core.Version;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 
 public class ObjectMapperFactory
 {
+    /**
+     * System property determining whether mappers write class names rather than
+     * registered short type ids, so that nodes which only understand class names
+     * can read their messages during a rolling upgrade.  Defaults to true.
+     */
+    public static final String PROP_WRITE_CLASS_NAMES = "gengine.messaging.jackson.writeClassNames";
 
     public static ObjectMapper createInstance()
     {
+        return createInstance(isWriteClassNames());
+    }
 
+    /**
+     * Creates an object mapper for JSON
+     *
+     * @param writeClassNames whether class names are written rather than registered type ids
+     * @return the object mapper
+     */
+    public static ObjectMapper createInstance(boolean writeClassNames)
+    {
         QpidJsonBodyCleanerObjectMapper mapper = new QpidJsonBodyCleanerObjectMapper();
+        configure(mapper, writeClassNames);
+        return mapper;
+    }
+
+    /**
+     * Creates an object mapper for the binary Smile format configured
+     * the same as the JSON instance
+     *
+     * @return the Smile object mapper
+     */
+    public static ObjectMapper createSmileInstance()
+    {
+        return createSmileInstance(isWriteClassNames());
+    }
+
+    /**
+     * Creates an object mapper for the binary Smile format
+     *
+     * @param writeClassNames whether class names are written rather than registered type ids
+     * @return the Smile object mapper
+     */
+    public static ObjectMapper createSmileInstance(boolean writeClassNames)
+    {
+        ObjectMapper mapper = new ObjectMapper(new SmileFactory());
+        configure(mapper, writeClassNames);
+        return mapper;
+    }
+
+    /**
+     * Determines whether class names are written by default, see {@link #PROP_WRITE_CLASS_NAMES}
+     *
+     * @return whether class names are written
+     */
+    public static boolean isWriteClassNames()
+    {
+        return Boolean.parseBoolean(System.getProperty(PROP_WRITE_CLASS_NAMES, Boolean.TRUE.toString()));
+    }
+
+    protected static void configure(ObjectMapper mapper)
+    {
+        configure(mapper, isWriteClassNames());
+    }
+
+    /**
+     * Configures the given mapper.  Registered type ids are always accepted on read but
+     * are only written if <code>writeClassNames</code> is false.
+     *
+     * @param mapper
+     * @param writeClassNames
+     */
+    protected static void configure(ObjectMapper mapper, boolean writeClassNames)
+    {
         mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
         mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        mapper.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+        TypeIdRegistry registry = TypeIdRegistry.getDefaultInstance();
+        TypeResolverBuilder<?> typer = new RegistryTypeResolverBuilder(
+                ObjectMapper.DefaultTyping.NON_FINAL,
+                mapper.getPolymorphicTypeValidator(),
+                registry,
+                !writeClassNames);
+        typer = typer.init(JsonTypeInfo.Id.CLASS, null);
+        typer = typer.inclusion(JsonTypeInfo.As.PROPERTY);
+        mapper.setDefaultTyping(typer);
         SimpleModule module = new SimpleModule("GengineJackson",
                 new Version(0, 1, 0, "SNAPSHOT", "org.gengine", "gengine-messaging-commons"));
+        if (!writeClassNames)
+        {
+            module.addSerializer(Class.class, new RegistryClassSerializers.ClassSerializer(registry));
+            module.addKeySerializer(Class.class, new RegistryClassSerializers.ClassKeySerializer(registry));
+        }
+        module.addDeserializer(Class.class, new RegistryClassSerializers.ClassDeserializer(registry));
+        module.addKeyDeserializer(Class.class, new RegistryClassSerializers.ClassKeyDeserializer(registry));
         mapper.registerModule(module);
-        return mapper;
+    }
+
+    /**
+     * Default typing as per {@link ObjectMapper#enableDefaultTyping(ObjectMapper.DefaultTyping, JsonTypeInfo.As)}
+     * but with type ids resolved by a {@link RegistryTypeIdResolver}
+     */
+    protected static class RegistryTypeResolverBuilder extends ObjectMapper.DefaultTypeResolverBuilder
+    {
+        private static final long serialVersionUID = -2745213306453357014L;
+
+        private final transient TypeIdRegistry registry;
+        private final boolean writeRegisteredIds;
+
+        public RegistryTypeResolverBuilder(ObjectMapper.DefaultTyping typing,
+                PolymorphicTypeValidator subtypeValidator, TypeIdRegistry registry, boolean writeRegisteredIds)
+        {
+            super(typing, subtypeValidator);
+            this.registry = registry;
+            this.writeRegisteredIds = writeRegisteredIds;
+        }
+
+        protected RegistryTypeResolverBuilder(RegistryTypeResolverBuilder base, Class<?> defaultImpl)
+        {
+            super(base, defaultImpl);
+            this.registry = base.registry;
+            this.writeRegisteredIds = base.writeRegisteredIds;
+        }
+
+        @Override
+        public ObjectMapper.DefaultTypeResolverBuilder withDefaultImpl(Class<?> defaultImpl)
+        {
+            if (_defaultImpl == defaultImpl)
+            {
+                return this;
+            }
+            return new RegistryTypeResolverBuilder(this, defaultImpl);
+        }
+
+        @Override
+        protected TypeIdResolver idResolver(MapperConfig<?> config, JavaType baseType,
+                PolymorphicTypeValidator subtypeValidator, Collection<NamedType> subtypes,
+                boolean forSer, boolean forDeser)
+        {
+            return new RegistryTypeIdResolver(baseType, config.getTypeFactory(), subtypeValidator,
+                    registry, writeRegisteredIds);
+        }
     }
 
 }
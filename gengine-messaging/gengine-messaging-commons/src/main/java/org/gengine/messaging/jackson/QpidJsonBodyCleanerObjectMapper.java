@@ -1,10 +1,11 @@
 package org.gengine.messaging.jackson;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
-
-import org.apache.commons.io.IOUtils;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
@@ -13,39 +14,174 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 /**
  * Extension of ObjectMapper which cleans erroneous characters apparently
  * added by the Qpid library before the start of a JSON object.
+ * <p>
+ * A body which starts with a JSON value is parsed as is.  Otherwise the AMQP
+ * section prefix, a data or value section descriptor followed by a binary or
+ * string constructor and its length, is skipped exactly.  Failing that the raw bytes
+ * are scanned for the start of a JSON object or array and parsing begins there.
+ * In each case the body is parsed exactly once with no intermediate copy
+ * regardless of its size.
  */
 public class QpidJsonBodyCleanerObjectMapper extends ObjectMapper
 {
     private static final long serialVersionUID = 2568701685293341501L;
 
-    private static final String DEFAULT_ENCODING = "utf8";
+    private static final int START_OBJECT = '{';
+    private static final int START_ARRAY = '[';
+
+    private static final int AMQP_DESCRIBED_TYPE = 0x00;
+    private static final int AMQP_SMALL_ULONG = 0x53;
+    private static final int AMQP_SECTION_DATA = 0x75;
+    private static final int AMQP_SECTION_VALUE = 0x77;
+    private static final int AMQP_VBIN8 = 0xa0;
+    private static final int AMQP_STR8 = 0xa1;
+    private static final int AMQP_VBIN32 = 0xb0;
+    private static final int AMQP_STR32 = 0xb1;
+    private static final int AMQP_PREFIX_MAX_LENGTH = 8;
 
     public <T> T readValue(InputStream inputStream, Class<T> valueType) throws JsonParseException, JsonMappingException, IOException
     {
-        try
+        PushbackInputStream pushbackStream = new PushbackInputStream(inputStream, AMQP_PREFIX_MAX_LENGTH);
+        byte[] header = new byte[AMQP_PREFIX_MAX_LENGTH];
+        int headerLength = 0;
+        int read;
+        while (headerLength < header.length
+                && (read = pushbackStream.read(header, headerLength, header.length - headerLength)) != -1)
+        {
+            headerLength += read;
+        }
+        if (isJsonValueStart(header, 0, headerLength))
+        {
+            pushbackStream.unread(header, 0, headerLength);
+            return super.readValue(pushbackStream, valueType);
+        }
+        int prefixLength = getAmqpPrefixLength(header, 0, headerLength);
+        if (prefixLength >= 0)
         {
-            // Try to unmarshal normally
-            if (inputStream.markSupported())
+            pushbackStream.unread(header, prefixLength, headerLength - prefixLength);
+            return super.readValue(pushbackStream, valueType);
+        }
+        pushbackStream.unread(header, 0, headerLength);
+
+        // Skip anything before the JSON, keeping it only in case there is no object or array
+        ByteArrayOutputStream skipped = null;
+        int b;
+        while ((b = pushbackStream.read()) != -1)
+        {
+            if (b == START_OBJECT || b == START_ARRAY)
+            {
+                InputStream jsonStream = new SequenceInputStream(
+                        new ByteArrayInputStream(new byte[] { (byte) b }), pushbackStream);
+                return super.readValue(jsonStream, valueType);
+            }
+            if (skipped == null)
             {
-                inputStream.mark(1024 * 512);
+                skipped = new ByteArrayOutputStream();
             }
-            return super.readValue(inputStream, valueType);
+            skipped.write(b);
+        }
+        // No object or array found, parse what there was as is, i.e. a scalar value
+        byte[] content = skipped == null ? new byte[0] : skipped.toByteArray();
+        return super.readValue(content, 0, content.length, valueType);
+    }
+
+    public <T> T readValue(byte[] src, int offset, int len, Class<T> valueType) throws IOException, JsonParseException, JsonMappingException
+    {
+        int start = findJsonStart(src, offset, len);
+        return super.readValue(src, start, len - (start - offset), valueType);
+    }
+
+    public <T> T readValue(byte[] src, Class<T> valueType) throws IOException, JsonParseException, JsonMappingException
+    {
+        return readValue(src, 0, src.length, valueType);
+    }
+
+    /**
+     * Finds the start of the JSON in the given byte range, skipping any AMQP
+     * section prefix or, failing that, anything before a JSON object or array
+     *
+     * @return the index of the JSON start, or the offset if the range starts
+     * with a JSON value or there is no object or array
+     */
+    protected static int findJsonStart(byte[] src, int offset, int len)
+    {
+        if (isJsonValueStart(src, offset, len))
+        {
+            return offset;
         }
-        catch (JsonParseException e)
+        int prefixLength = getAmqpPrefixLength(src, offset, len);
+        if (prefixLength >= 0)
         {
-            if (!inputStream.markSupported())
+            return offset + prefixLength;
+        }
+        for (int i = offset; i < offset + len; i++)
+        {
+            if (src[i] == START_OBJECT || src[i] == START_ARRAY)
             {
-                // We can't reset this stream, bail out
-                throw e;
+                return i;
             }
-            // Reset the stream
-            inputStream.reset();
-        }
-        // Clean the message body and try again
-        StringWriter writer = new StringWriter();
-        IOUtils.copy(inputStream, writer, DEFAULT_ENCODING);
-        String content = writer.toString();
-        content = content.substring(content.indexOf("{"), content.length());
-        return readValue(content, valueType);
+        }
+        return offset;
+    }
+
+    /**
+     * Determines whether the first non-whitespace byte in the given range may
+     * start a JSON value, or there is none
+     */
+    protected static boolean isJsonValueStart(byte[] src, int offset, int len)
+    {
+        for (int i = offset; i < offset + len; i++)
+        {
+            switch (src[i])
+            {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                    continue;
+                case '{':
+                case '[':
+                case '"':
+                case '-':
+                case 't':
+                case 'f':
+                case 'n':
+                    return true;
+                default:
+                    return src[i] >= '0' && src[i] <= '9';
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the length of the AMQP data or value section prefix at the start of
+     * the given range
+     *
+     * @return the prefix length, or -1 if the range does not start with a prefix
+     */
+    protected static int getAmqpPrefixLength(byte[] src, int offset, int len)
+    {
+        if (len < 5
+                || (src[offset] & 0xff) != AMQP_DESCRIBED_TYPE
+                || (src[offset + 1] & 0xff) != AMQP_SMALL_ULONG)
+        {
+            return -1;
+        }
+        int section = src[offset + 2] & 0xff;
+        if (section != AMQP_SECTION_DATA && section != AMQP_SECTION_VALUE)
+        {
+            return -1;
+        }
+        int constructor = src[offset + 3] & 0xff;
+        if (constructor == AMQP_VBIN8 || constructor == AMQP_STR8)
+        {
+            return 5;
+        }
+        if ((constructor == AMQP_VBIN32 || constructor == AMQP_STR32) && len >= AMQP_PREFIX_MAX_LENGTH)
+        {
+            return AMQP_PREFIX_MAX_LENGTH;
+        }
+        return -1;
     }
 }
@@ -0,0 +1,129 @@
+package org.gengine.messaging.jackson;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.KeyDeserializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Serializers for {@link Class} values and map keys, i.e. a request's reply class or
+ * the transformation source options map, which write the short ids of types
+ * registered in a {@link TypeIdRegistry} and class names otherwise.
+ * <p>
+ * Both forms are accepted on read.
+ *
+ */
+public class RegistryClassSerializers
+{
+
+    @SuppressWarnings("rawtypes")
+    public static class ClassSerializer extends StdSerializer<Class>
+    {
+        private static final long serialVersionUID = 2216372530291394447L;
+
+        private final transient TypeIdRegistry registry;
+
+        public ClassSerializer(TypeIdRegistry registry)
+        {
+            super(Class.class);
+            this.registry = registry;
+        }
+
+        @Override
+        public void serialize(Class value, JsonGenerator generator, SerializerProvider provider) throws IOException
+        {
+            generator.writeString(getId(registry, value));
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class ClassKeySerializer extends StdSerializer<Class>
+    {
+        private static final long serialVersionUID = -3406389211493516585L;
+
+        private final transient TypeIdRegistry registry;
+
+        public ClassKeySerializer(TypeIdRegistry registry)
+        {
+            super(Class.class);
+            this.registry = registry;
+        }
+
+        @Override
+        public void serialize(Class value, JsonGenerator generator, SerializerProvider provider) throws IOException
+        {
+            generator.writeFieldName(getId(registry, value));
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class ClassDeserializer extends StdScalarDeserializer<Class>
+    {
+        private static final long serialVersionUID = -8711396539950337880L;
+
+        private final transient TypeIdRegistry registry;
+
+        public ClassDeserializer(TypeIdRegistry registry)
+        {
+            super(Class.class);
+            this.registry = registry;
+        }
+
+        @Override
+        public Class deserialize(JsonParser parser, DeserializationContext context) throws IOException
+        {
+            if (parser.getCurrentToken() != JsonToken.VALUE_STRING)
+            {
+                return (Class) context.handleUnexpectedToken(Class.class, parser);
+            }
+            return findClass(registry, parser.getText(), context);
+        }
+    }
+
+    public static class ClassKeyDeserializer extends KeyDeserializer
+    {
+        private final TypeIdRegistry registry;
+
+        public ClassKeyDeserializer(TypeIdRegistry registry)
+        {
+            this.registry = registry;
+        }
+
+        @Override
+        public Object deserializeKey(String key, DeserializationContext context) throws IOException
+        {
+            return findClass(registry, key, context);
+        }
+    }
+
+    protected static String getId(TypeIdRegistry registry, Class<?> type)
+    {
+        String id = registry.getTypeId(type);
+        return id != null ? id : type.getName();
+    }
+
+    protected static Class<?> findClass(TypeIdRegistry registry, String id, DeserializationContext context)
+            throws IOException
+    {
+        Class<?> type = registry.getType(id);
+        if (type != null)
+        {
+            return type;
+        }
+        try
+        {
+            return context.findClass(id);
+        }
+        catch (ClassNotFoundException e)
+        {
+            return (Class<?>) context.handleWeirdStringValue(Class.class, id, "unknown type");
+        }
+    }
+
+}
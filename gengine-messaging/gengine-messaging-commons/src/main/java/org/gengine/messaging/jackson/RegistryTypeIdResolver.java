@@ -0,0 +1,96 @@
+package org.gengine.messaging.jackson;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.databind.DatabindContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.impl.ClassNameIdResolver;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+/**
+ * A type id resolver which writes the short ids of types registered in a
+ * {@link TypeIdRegistry}, falling back to class names for other types.
+ * <p>
+ * Both forms are accepted on read so messages from older nodes which write
+ * class names are still understood.  Resolved types are cached per id so
+ * class names are only looked up the first time they're seen.
+ * <p>
+ * Registered ids may be written only once every node reading the messages
+ * understands them, until then class names can be written for all types.
+ *
+ */
+public class RegistryTypeIdResolver extends ClassNameIdResolver
+{
+    private final TypeIdRegistry registry;
+    private final boolean writeRegisteredIds;
+    private final ConcurrentMap<String, JavaType> resolvedTypes = new ConcurrentHashMap<String, JavaType>();
+
+    public RegistryTypeIdResolver(JavaType baseType, TypeFactory typeFactory,
+            PolymorphicTypeValidator subTypeValidator, TypeIdRegistry registry)
+    {
+        this(baseType, typeFactory, subTypeValidator, registry, true);
+    }
+
+    /**
+     * @param writeRegisteredIds whether registered ids are written, otherwise
+     * class names are written for all types and registered ids only read
+     */
+    public RegistryTypeIdResolver(JavaType baseType, TypeFactory typeFactory,
+            PolymorphicTypeValidator subTypeValidator, TypeIdRegistry registry, boolean writeRegisteredIds)
+    {
+        super(baseType, typeFactory, subTypeValidator);
+        this.registry = registry;
+        this.writeRegisteredIds = writeRegisteredIds;
+    }
+
+    @Override
+    public String idFromValue(Object value)
+    {
+        String id = writeRegisteredIds ? registry.getTypeId(value.getClass()) : null;
+        if (id != null)
+        {
+            return id;
+        }
+        return super.idFromValue(value);
+    }
+
+    @Override
+    public String idFromValueAndType(Object value, Class<?> type)
+    {
+        Class<?> valueType = value != null ? value.getClass() : type;
+        String id = writeRegisteredIds && valueType != null ? registry.getTypeId(valueType) : null;
+        if (id != null)
+        {
+            return id;
+        }
+        return super.idFromValueAndType(value, type);
+    }
+
+    @Override
+    public JavaType typeFromId(DatabindContext context, String id) throws IOException
+    {
+        JavaType type = resolvedTypes.get(id);
+        if (type != null)
+        {
+            return type;
+        }
+        Class<?> registeredType = registry.getType(id);
+        if (registeredType != null && _baseType.getRawClass().isAssignableFrom(registeredType))
+        {
+            type = context.getTypeFactory().constructSpecializedType(_baseType, registeredType);
+        }
+        else
+        {
+            type = super.typeFromId(context, id);
+        }
+        if (type != null)
+        {
+            resolvedTypes.putIfAbsent(id, type);
+        }
+        return type;
+    }
+
+}
@@ -0,0 +1,21 @@
+package org.gengine.messaging.jackson;
+
+/**
+ * Registers short type ids for a module's message classes.
+ * <p>
+ * Implementations are discovered with {@link java.util.ServiceLoader} via
+ * <code>META-INF/services/org.gengine.messaging.jackson.TypeIdProvider</code>.
+ * Ids are written on the wire so must remain stable once released.
+ *
+ */
+public interface TypeIdProvider
+{
+
+    /**
+     * Registers this provider's type ids with the given registry
+     *
+     * @param registry
+     */
+    public void registerTypeIds(TypeIdRegistry registry);
+
+}
@@ -0,0 +1,114 @@
+package org.gengine.messaging.jackson;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A catalogue of short, stable type ids for gengine message classes,
+ * written in place of fully qualified class names by
+ * {@link ObjectMapperFactory} mappers unless they are configured to write
+ * class names, see {@link ObjectMapperFactory#PROP_WRITE_CLASS_NAMES}.
+ * <p>
+ * Classes which aren't registered, including JDK collections, are still
+ * written with their class name so that messages remain readable by
+ * plain Jackson mappers.
+ *
+ */
+public class TypeIdRegistry
+{
+    private static final Log logger = LogFactory.getLog(TypeIdRegistry.class);
+
+    private static volatile TypeIdRegistry defaultInstance;
+
+    private final Map<String, Class<?>> typesById = new ConcurrentHashMap<String, Class<?>>();
+    private final Map<Class<?>, String> idsByType = new ConcurrentHashMap<Class<?>, String>();
+
+    /**
+     * Gets the shared registry populated by all {@link TypeIdProvider}s
+     * on the classpath
+     *
+     * @return the default registry
+     */
+    public static TypeIdRegistry getDefaultInstance()
+    {
+        if (defaultInstance == null)
+        {
+            synchronized (TypeIdRegistry.class)
+            {
+                if (defaultInstance == null)
+                {
+                    TypeIdRegistry registry = new TypeIdRegistry();
+                    for (TypeIdProvider provider : ServiceLoader.load(TypeIdProvider.class))
+                    {
+                        if (logger.isDebugEnabled())
+                        {
+                            logger.debug("Registering type ids from " + provider.getClass().getName());
+                        }
+                        provider.registerTypeIds(registry);
+                    }
+                    defaultInstance = registry;
+                }
+            }
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Registers the given type id.  Ids must not contain a '.' so they
+     * can't be mistaken for class names.
+     *
+     * @param id
+     * @param type
+     * @throws IllegalArgumentException if the id or type is already registered to another
+     */
+    public synchronized void register(String id, Class<?> type)
+    {
+        if (id == null || id.isEmpty() || id.indexOf('.') >= 0)
+        {
+            throw new IllegalArgumentException("Invalid type id: " + id);
+        }
+        if (type == null)
+        {
+            throw new IllegalArgumentException("type must not be null");
+        }
+        Class<?> existingType = typesById.get(id);
+        if (existingType != null && !existingType.equals(type))
+        {
+            throw new IllegalArgumentException("Type id '" + id + "' is already registered to " + existingType.getName());
+        }
+        String existingId = idsByType.get(type);
+        if (existingId != null && !existingId.equals(id))
+        {
+            throw new IllegalArgumentException(type.getName() + " is already registered as '" + existingId + "'");
+        }
+        typesById.put(id, type);
+        idsByType.put(type, id);
+    }
+
+    /**
+     * Gets the id registered for the given type
+     *
+     * @param type
+     * @return the type id or null if not registered
+     */
+    public String getTypeId(Class<?> type)
+    {
+        return idsByType.get(type);
+    }
+
+    /**
+     * Gets the type registered for the given id
+     *
+     * @param id
+     * @return the type or null if not registered
+     */
+    public Class<?> getType(String id)
+    {
+        return typesById.get(id);
+    }
+
+}
@@ -0,0 +1,99 @@
+package org.gengine.messaging.loopback;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Resolves endpoint names to in-memory {@link LoopbackQueue}s for components
+ * and clients running in the same JVM.
+ * <p>
+ * Endpoint names are the same as those used with a broker, a <code>queue:</code>
+ * prefix is ignored.  Topics aren't supported.
+ *
+ */
+public class LoopbackBroker
+{
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final String ENDPOINT_PREFIX_QUEUE = "queue:";
+    private static final String ENDPOINT_PREFIX_TOPIC = "topic:";
+
+    private static final LoopbackBroker defaultInstance = new LoopbackBroker();
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private final ConcurrentMap<String, LoopbackQueue> queues = new ConcurrentHashMap<String, LoopbackQueue>();
+
+    /**
+     * Gets the broker shared by all loopback endpoints not given their own
+     *
+     * @return the default broker
+     */
+    public static LoopbackBroker getDefaultInstance()
+    {
+        return defaultInstance;
+    }
+
+    /**
+     * Sets the capacity of queues created after this call, defaults to 1024
+     *
+     * @param queueCapacity
+     */
+    public void setQueueCapacity(int queueCapacity)
+    {
+        if (queueCapacity < 1)
+        {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Gets the queue for the given endpoint, creating it if needed
+     *
+     * @param endpoint
+     * @return the queue
+     */
+    public LoopbackQueue getQueue(String endpoint)
+    {
+        String name = getQueueName(endpoint);
+        LoopbackQueue queue = queues.get(name);
+        if (queue == null)
+        {
+            queue = new LoopbackQueue(name, queueCapacity);
+            LoopbackQueue existing = queues.putIfAbsent(name, queue);
+            if (existing != null)
+            {
+                queue = existing;
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Removes all queues and any messages they hold
+     */
+    public void clear()
+    {
+        queues.clear();
+    }
+
+    protected static String getQueueName(String endpoint)
+    {
+        if (StringUtils.isEmpty(endpoint))
+        {
+            throw new IllegalArgumentException("endpoint must not be empty");
+        }
+        if (endpoint.startsWith(ENDPOINT_PREFIX_TOPIC))
+        {
+            throw new IllegalArgumentException("Topics are not supported by the loopback transport: " + endpoint);
+        }
+        if (endpoint.startsWith(ENDPOINT_PREFIX_QUEUE))
+        {
+            return endpoint.substring(ENDPOINT_PREFIX_QUEUE.length());
+        }
+        return endpoint;
+    }
+
+}
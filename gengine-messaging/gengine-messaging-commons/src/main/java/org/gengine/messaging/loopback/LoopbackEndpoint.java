@@ -0,0 +1,300 @@
+package org.gengine.messaging.loopback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.gengine.messaging.FlowControlledEndpoint;
+import org.gengine.messaging.MessageConsumer;
+import org.gengine.messaging.MessageProducer;
+import org.gengine.messaging.MessagingException;
+
+/**
+ * An endpoint which sends and receives messages through {@link LoopbackQueue}s in
+ * the same JVM, for co-located components, tests and benchmarks.
+ * <p>
+ * Message objects are passed by reference without being marshalled, so senders
+ * must not modify a message once it's sent.  Headers are ignored.
+ * <p>
+ * Received messages are handed to the consumer by <code>consumerCount</code> daemon
+ * threads.  A full queue blocks senders for up to the send timeout, after which a
+ * {@link MessagingException} is thrown.
+ *
+ */
+public class LoopbackEndpoint implements MessageProducer, FlowControlledEndpoint
+{
+    private static final Log logger = LogFactory.getLog(LoopbackEndpoint.class);
+
+    private static final int DEFAULT_CONSUMER_COUNT = 1;
+    private static final long DEFAULT_SEND_TIMEOUT_MS = 30000;
+    private static final long POLL_INTERVAL_MS = 500;
+
+    private LoopbackBroker broker = LoopbackBroker.getDefaultInstance();
+    private String receiveEndpoint;
+    private String sendEndpoint;
+    private int consumerCount = DEFAULT_CONSUMER_COUNT;
+    private long sendTimeoutMs = DEFAULT_SEND_TIMEOUT_MS;
+    private MessageConsumer messageConsumer;
+
+    private final Object pauseLock = new Object();
+    private volatile boolean paused = false;
+    private volatile boolean isRunning = false;
+    private final List<Thread> listenerThreads = new ArrayList<Thread>();
+
+    /**
+     * Takes messages from the receive queue and hands them to the consumer
+     */
+    protected class LoopbackListener implements Runnable
+    {
+        private final LoopbackQueue queue;
+
+        public LoopbackListener(LoopbackQueue queue)
+        {
+            this.queue = queue;
+        }
+
+        public void run()
+        {
+            while (isRunning)
+            {
+                try
+                {
+                    awaitResumed();
+                    Object message = queue.poll(POLL_INTERVAL_MS);
+                    if (message != null)
+                    {
+                        processMessage(message);
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the broker which resolves endpoint names, defaults to the shared
+     * {@link LoopbackBroker#getDefaultInstance()}
+     *
+     * @param broker
+     */
+    public void setBroker(LoopbackBroker broker)
+    {
+        this.broker = broker;
+    }
+
+    public void setReceiveEndpoint(String receiveEndpoint)
+    {
+        this.receiveEndpoint = receiveEndpoint;
+    }
+
+    public void setSendEndpoint(String sendEndpoint)
+    {
+        this.sendEndpoint = sendEndpoint;
+    }
+
+    public void setMessageConsumer(MessageConsumer messageConsumer)
+    {
+        this.messageConsumer = messageConsumer;
+    }
+
+    /**
+     * Sets the number of threads consuming from the receive endpoint, defaults to 1
+     *
+     * @param consumerCount
+     */
+    public void setConsumerCount(int consumerCount)
+    {
+        if (consumerCount < 1)
+        {
+            throw new IllegalArgumentException("consumerCount must be at least 1");
+        }
+        this.consumerCount = consumerCount;
+    }
+
+    /**
+     * Sets how long a send waits for space in a full queue, defaults to 30 seconds
+     *
+     * @param sendTimeoutMs
+     */
+    public void setSendTimeoutMs(long sendTimeoutMs)
+    {
+        this.sendTimeoutMs = sendTimeoutMs;
+    }
+
+    protected void awaitResumed() throws InterruptedException
+    {
+        if (!paused)
+        {
+            return;
+        }
+        synchronized (pauseLock)
+        {
+            while (paused && isRunning)
+            {
+                pauseLock.wait(POLL_INTERVAL_MS);
+            }
+        }
+    }
+
+    @Override
+    public void pause()
+    {
+        synchronized (pauseLock)
+        {
+            paused = true;
+        }
+        logger.debug("Paused consumption from " + receiveEndpoint);
+    }
+
+    @Override
+    public void resume()
+    {
+        synchronized (pauseLock)
+        {
+            paused = false;
+            pauseLock.notifyAll();
+        }
+        logger.debug("Resumed consumption from " + receiveEndpoint);
+    }
+
+    @Override
+    public boolean isPaused()
+    {
+        return paused;
+    }
+
+    /**
+     * Hands the given message to the message consumer
+     *
+     * @param message
+     */
+    protected void processMessage(Object message)
+    {
+        Class<?> bodyClass = messageConsumer.getConsumingMessageBodyClass();
+        if (bodyClass != null && !bodyClass.isInstance(message))
+        {
+            logger.error("Expected " + bodyClass.getName() + " but received " + message.getClass().getName());
+            return;
+        }
+        try
+        {
+            messageConsumer.onReceive(message);
+        }
+        catch (RuntimeException e)
+        {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    public void send(Object message)
+    {
+        send(message, sendEndpoint);
+    }
+
+    @Override
+    public void send(Object message, Map<String, Object> headers) throws MessagingException
+    {
+        send(message, sendEndpoint);
+    }
+
+    @Override
+    public void send(Object message, String queueName, Map<String, Object> headers) throws MessagingException
+    {
+        send(message, queueName);
+    }
+
+    public void send(Object message, String queueName)
+    {
+        if (message == null)
+        {
+            throw new MessagingException("Message must not be null");
+        }
+        if (StringUtils.isEmpty(queueName))
+        {
+            queueName = sendEndpoint;
+        }
+        try
+        {
+            LoopbackQueue queue = broker.getQueue(queueName);
+            if (!queue.offer(message, sendTimeoutMs))
+            {
+                throw new MessagingException("Timed out waiting for space in " + queue);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted sending message to " + queueName, e);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new MessagingException("Error sending message", e);
+        }
+    }
+
+    /**
+     * Starts the consumer threads
+     */
+    public synchronized void startListener()
+    {
+        if (isRunning)
+        {
+            return;
+        }
+        if (messageConsumer == null)
+        {
+            throw new IllegalArgumentException("messageConsumer must be set");
+        }
+        LoopbackQueue queue = broker.getQueue(receiveEndpoint);
+        isRunning = true;
+        for (int i = 0; i < consumerCount; i++)
+        {
+            Thread thread = new Thread(new LoopbackListener(queue),
+                    "gengine-loopback-" + queue.getName() + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            listenerThreads.add(thread);
+        }
+        logger.info("Waiting for loopback messages on " + queue.getName() +
+                " with " + consumerCount + " consumer(s)");
+    }
+
+    /**
+     * Stops the consumer threads, leaving any unconsumed messages on the queue
+     */
+    public synchronized void stopListener()
+    {
+        isRunning = false;
+        for (Thread thread : listenerThreads)
+        {
+            thread.interrupt();
+        }
+        listenerThreads.clear();
+    }
+
+    public boolean isInitialized()
+    {
+        return isRunning;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder(this.getClass().getSimpleName() + "[");
+        builder.append("sendEndpoint: " + sendEndpoint);
+        builder.append(", ");
+        builder.append("receiveEndpoint: " + receiveEndpoint);
+        builder.append(", ");
+        builder.append("consumerCount: " + consumerCount);
+        builder.append("]");
+        return builder.toString();
+    }
+
+}
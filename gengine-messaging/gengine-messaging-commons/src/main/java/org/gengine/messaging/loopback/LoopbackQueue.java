@@ -0,0 +1,66 @@
+package org.gengine.messaging.loopback;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded in-memory queue of message objects, held by reference.
+ * <p>
+ * Messages are held in a fixed size ring buffer, so a full queue blocks senders
+ * until consumers catch up rather than growing without limit.
+ *
+ */
+public class LoopbackQueue
+{
+    private final String name;
+    private final BlockingQueue<Object> buffer;
+
+    public LoopbackQueue(String name, int capacity)
+    {
+        this.name = name;
+        this.buffer = new ArrayBlockingQueue<Object>(capacity);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Adds a message, waiting up to the given timeout for space
+     *
+     * @param message
+     * @param timeoutMs
+     * @return true if added, false if the queue was still full
+     * @throws InterruptedException
+     */
+    public boolean offer(Object message, long timeoutMs) throws InterruptedException
+    {
+        return buffer.offer(message, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes the next message, waiting up to the given timeout for one
+     *
+     * @param timeoutMs
+     * @return the message or null if none arrived
+     * @throws InterruptedException
+     */
+    public Object poll(long timeoutMs) throws InterruptedException
+    {
+        return buffer.poll(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    public int size()
+    {
+        return buffer.size();
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.getClass().getSimpleName() + "[name: " + name + ", size: " + buffer.size() + "]";
+    }
+
+}
@@ -0,0 +1,213 @@
+package org.gengine.content;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gengine.messaging.AbstractReply;
+import org.gengine.messaging.FlowControlledEndpoint;
+import org.gengine.messaging.Request;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AbstractAsyncComponentTest
+{
+    private ExecutorService executorService;
+    private TestComponent component;
+    private TestEndpoint endpoint;
+
+    @Before
+    public void setUp()
+    {
+        executorService = Executors.newCachedThreadPool();
+        endpoint = new TestEndpoint();
+        component = new TestComponent();
+        component.setExecutorService(executorService);
+        component.setFlowControlledEndpoint(endpoint);
+    }
+
+    @After
+    public void tearDown()
+    {
+        component.release.countDown();
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testProcessorsRunConcurrently() throws Exception
+    {
+        component.setProcessorCount(3);
+        component.setQueueCapacity(10);
+        component.init();
+
+        for (int i = 0; i < 3; i++)
+        {
+            component.onReceive(new TestRequest());
+        }
+        assertTrue(component.allStarted(3, 5, TimeUnit.SECONDS));
+        assertEquals(3, component.inProgress.get());
+    }
+
+    @Test
+    public void testPauseAtHighWaterMarkAndResumeAtLowWaterMark() throws Exception
+    {
+        component.setProcessorCount(1);
+        component.setQueueCapacity(10);
+        component.setHighWaterMark(4);
+        component.setLowWaterMark(1);
+        component.init();
+
+        // The first request is taken by the processor and blocks it
+        component.onReceive(new TestRequest());
+        assertTrue(component.allStarted(1, 5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 3; i++)
+        {
+            component.onReceive(new TestRequest());
+        }
+        assertFalse(endpoint.isPaused());
+        component.onReceive(new TestRequest());
+        assertEquals(4, component.getQueueSize());
+        assertTrue(endpoint.isPaused());
+        assertEquals(1, endpoint.pauseCount.get());
+
+        component.release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (endpoint.isPaused() && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertFalse(endpoint.isPaused());
+        assertTrue(component.getQueueSize() <= 1);
+    }
+
+    @Test
+    public void testPriorityScheduling() throws Exception
+    {
+        component.setProcessorCount(1);
+        component.setQueueCapacity(10);
+        component.setPriorityScheduling(true);
+        component.init();
+
+        // The first request is taken by the processor and blocks it while the rest queue
+        component.onReceive(new TestRequest(null));
+        assertTrue(component.allStarted(1, 5, TimeUnit.SECONDS));
+        component.onReceive(new TestRequest(AbstractContentRequest.PRIORITY_LOWEST));
+        component.onReceive(new TestRequest(AbstractContentRequest.PRIORITY_HIGHEST));
+        component.onReceive(new TestRequest(null));
+
+        component.release.countDown();
+        assertTrue(component.allStarted(4, 5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(null, AbstractContentRequest.PRIORITY_LOWEST,
+                AbstractContentRequest.PRIORITY_HIGHEST, null), component.receivedPriorities);
+        assertEquals(Arrays.asList(null, AbstractContentRequest.PRIORITY_HIGHEST,
+                null, AbstractContentRequest.PRIORITY_LOWEST), component.startedPriorities);
+    }
+
+    public static class TestRequest extends AbstractContentRequest implements Request<TestReply>
+    {
+        public TestRequest()
+        {
+            super();
+        }
+
+        public TestRequest(Integer priority)
+        {
+            super();
+            setPriority(priority);
+        }
+
+        @Override
+        public Class<TestReply> getReplyClass()
+        {
+            return TestReply.class;
+        }
+    }
+
+    public static class TestReply extends AbstractReply
+    {
+    }
+
+    public static class TestEndpoint implements FlowControlledEndpoint
+    {
+        private volatile boolean paused;
+        private final AtomicInteger pauseCount = new AtomicInteger();
+
+        public void pause()
+        {
+            paused = true;
+            pauseCount.incrementAndGet();
+        }
+
+        public void resume()
+        {
+            paused = false;
+        }
+
+        public boolean isPaused()
+        {
+            return paused;
+        }
+    }
+
+    /**
+     * Component whose requests block until released
+     */
+    public static class TestComponent extends AbstractAsyncComponent<ContentWorker, TestRequest, TestReply>
+    {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger inProgress = new AtomicInteger();
+        private final AtomicInteger started = new AtomicInteger();
+        private final List<Integer> receivedPriorities = Collections.synchronizedList(new ArrayList<Integer>());
+        private final List<Integer> startedPriorities = Collections.synchronizedList(new ArrayList<Integer>());
+
+        @Override
+        protected void onReceiveImpl(Object message)
+        {
+            receivedPriorities.add(((TestRequest) message).getPriority());
+            super.onReceiveImpl(message);
+        }
+
+        @Override
+        protected void processRequest(TestRequest request)
+        {
+            startedPriorities.add(request.getPriority());
+            started.incrementAndGet();
+            inProgress.incrementAndGet();
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            inProgress.decrementAndGet();
+        }
+
+        private boolean allStarted(int count, long timeout, TimeUnit unit) throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+            while (started.get() < count && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+            }
+            return started.get() >= count;
+        }
+
+        public Class<?> getConsumingMessageBodyClass()
+        {
+            return TestRequest.class;
+        }
+    }
+
+}
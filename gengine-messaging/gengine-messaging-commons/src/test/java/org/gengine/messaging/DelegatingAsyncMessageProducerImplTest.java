@@ -0,0 +1,196 @@
+package org.gengine.messaging;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DelegatingAsyncMessageProducerImplTest
+{
+    private RecordingMessageProducer delegate;
+    private DelegatingAsyncMessageProducerImpl messageProducer;
+
+    @Before
+    public void init()
+    {
+        delegate = new RecordingMessageProducer();
+        messageProducer = new DelegatingAsyncMessageProducerImpl(delegate);
+    }
+
+    @Test
+    public void testSendAsyncInOrder() throws Exception
+    {
+        messageProducer.init();
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < 10; i++)
+        {
+            last = messageProducer.sendAsync("message" + i, "queue");
+        }
+        last.get(5, TimeUnit.SECONDS);
+        assertEquals(10, delegate.sent.size());
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals("message" + i, delegate.sent.get(i));
+        }
+    }
+
+    @Test
+    public void testSendAsyncBeforeInit() throws Exception
+    {
+        assertEquals(0, messageProducer.getInFlightCount());
+        try
+        {
+            messageProducer.sendAsync("message", "queue");
+            fail("Expected sendAsync to fail before init");
+        }
+        catch (IllegalStateException e)
+        {
+            assertEquals("init() not called", e.getMessage());
+        }
+        assertTrue(delegate.sent.isEmpty());
+    }
+
+    @Test
+    public void testSendAsyncFailure() throws Exception
+    {
+        messageProducer.init();
+        delegate.failure = new MessagingException("broker unavailable");
+        CompletableFuture<Void> future = messageProducer.sendAsync("message", "queue");
+        try
+        {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected send failure");
+        }
+        catch (ExecutionException e)
+        {
+            assertSame(delegate.failure, e.getCause());
+        }
+        assertEquals(0, messageProducer.getInFlightCount());
+    }
+
+    @Test
+    public void testInFlightWindowIsBounded() throws Exception
+    {
+        delegate.release = new CountDownLatch(1);
+        messageProducer.setMaxInFlight(2);
+        messageProducer.setExecutorService(Executors.newCachedThreadPool());
+        messageProducer.init();
+
+        messageProducer.sendAsync("message1", "queue");
+        messageProducer.sendAsync("message2", "queue");
+        assertEquals(2, messageProducer.getInFlightCount());
+
+        final CountDownLatch thirdSubmitted = new CountDownLatch(1);
+        Thread sender = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                messageProducer.sendAsync("message3", "queue");
+                thirdSubmitted.countDown();
+            }
+        });
+        sender.start();
+
+        // The third send must wait for a free slot
+        assertFalse(thirdSubmitted.await(200, TimeUnit.MILLISECONDS));
+        delegate.release.countDown();
+        assertTrue(thirdSubmitted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdownCompletesOutstandingSends() throws Exception
+    {
+        delegate.release = new CountDownLatch(1);
+        messageProducer.init();
+        CompletableFuture<Void> future = messageProducer.sendAsync("message", "queue");
+        delegate.release.countDown();
+        messageProducer.shutdown();
+
+        assertTrue(future.isDone());
+        assertEquals(1, delegate.sent.size());
+        try
+        {
+            messageProducer.sendAsync("late", "queue").get(5, TimeUnit.SECONDS);
+            fail("Expected send after shutdown to be rejected");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof MessagingException);
+        }
+        assertEquals(0, messageProducer.getInFlightCount());
+    }
+
+    @Test
+    public void testShutdownLeavesProvidedExecutor() throws Exception
+    {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try
+        {
+            messageProducer.setExecutorService(executorService);
+            messageProducer.init();
+            messageProducer.shutdown();
+            assertFalse(executorService.isShutdown());
+        }
+        finally
+        {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Message producer which records sent messages, optionally failing
+     * or waiting for a latch before each send.
+     */
+    private static class RecordingMessageProducer implements MessageProducer
+    {
+        private final List<Object> sent = new CopyOnWriteArrayList<Object>();
+        private volatile MessagingException failure;
+        private volatile CountDownLatch release;
+
+        public void send(Object message) throws MessagingException
+        {
+            send(message, (String) null);
+        }
+
+        public void send(Object message, Map<String, Object> headers) throws MessagingException
+        {
+            send(message, (String) null);
+        }
+
+        public void send(Object message, String queueName) throws MessagingException
+        {
+            if (release != null)
+            {
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failure != null)
+            {
+                throw failure;
+            }
+            sent.add(message);
+        }
+
+        public void send(Object message, String queueName, Map<String, Object> headers) throws MessagingException
+        {
+            send(message, queueName);
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package org.gengine.messaging.codec;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class Lz4MessageBodyCompressorTest
+{
+
+    private MessageBodyCompressor compressor = MessageBodyCompressorFactory.getInstance(
+            MessageBodyCompressor.CONTENT_ENCODING_LZ4);
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        byte[] bytes = new byte[16 * 1024];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = (byte) ('a' + (i / 64) % 26);
+        }
+
+        byte[] compressed = compressor.compress(bytes, 0, bytes.length);
+        assertTrue(compressed.length < bytes.length);
+
+        byte[] decompressed = compressor.decompress(compressed, 0, compressed.length);
+        assertArrayEquals(bytes, decompressed);
+    }
+
+    @Test
+    public void testRoundTripByteRange() throws IOException
+    {
+        byte[] bytes = "xxxx{\"key\":\"value\"}yyyy".getBytes("UTF-8");
+
+        byte[] compressed = compressor.compress(bytes, 4, bytes.length - 8);
+        byte[] padded = new byte[compressed.length + 3];
+        System.arraycopy(compressed, 0, padded, 3, compressed.length);
+
+        byte[] decompressed = compressor.decompress(padded, 3, compressed.length);
+        assertArrayEquals(Arrays.copyOfRange(bytes, 4, bytes.length - 4), decompressed);
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecompressTruncated() throws IOException
+    {
+        compressor.decompress(new byte[] { 0, 0 }, 0, 2);
+    }
+
+    @Test
+    public void testDecompressOversizedHeader() throws IOException
+    {
+        byte[] bytes = new byte[1024];
+        byte[] compressed = new Lz4MessageBodyCompressor().compress(bytes, 0, bytes.length);
+        try
+        {
+            new Lz4MessageBodyCompressor(bytes.length - 1).decompress(compressed, 0, compressed.length);
+            fail("Expected the declared length to exceed the maximum");
+        }
+        catch (IOException e)
+        {
+            assertTrue(e.getMessage().contains("exceeds the maximum"));
+        }
+
+        // A header declaring close to 2GB must fail before allocating
+        compressed[0] = (byte) 0x7f;
+        compressed[1] = (byte) 0xff;
+        try
+        {
+            compressor.decompress(compressed, 0, compressed.length);
+            fail("Expected the declared length to exceed the maximum");
+        }
+        catch (IOException e)
+        {
+            assertTrue(e.getMessage().contains("exceeds the maximum"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecompressLengthMismatch() throws IOException
+    {
+        byte[] bytes = new byte[1024];
+        byte[] compressed = compressor.compress(bytes, 0, bytes.length);
+        compressed[2] = (byte) 0x08;
+        compressor.decompress(compressed, 0, compressed.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedContentEncoding()
+    {
+        MessageBodyCompressorFactory.getInstance("x-unsupported");
+    }
+
+}
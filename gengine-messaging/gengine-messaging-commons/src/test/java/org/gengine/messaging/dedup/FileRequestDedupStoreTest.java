@@ -0,0 +1,145 @@
+package org.gengine.messaging.dedup;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileRequestDedupStoreTest
+{
+
+    private static class TestFileDedupStore extends FileRequestDedupStore
+    {
+        private long now = 1000000;
+
+        @Override
+        protected long currentTimeMillis()
+        {
+            return now;
+        }
+    }
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        file = new File(Files.createTempDirectory("dedup").toFile(), "requests.json");
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+        file.getParentFile().delete();
+    }
+
+    protected TestFileDedupStore createStore(long now)
+    {
+        TestFileDedupStore store = new TestFileDedupStore();
+        store.now = now;
+        store.setFile(file);
+        store.setWindowMs(1000);
+        store.init();
+        return store;
+    }
+
+    protected List<String> readLines() throws IOException
+    {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testLoadSkipsExpiredRequests() throws IOException
+    {
+        TestFileDedupStore store = createStore(1000000);
+        store.register("r1", null);
+        store.complete("r1", "reply-1");
+        store.now += 500;
+        store.register("r2", null);
+        store.complete("r2", "reply-2");
+        store.close();
+
+        TestFileDedupStore reloaded = createStore(1000000 + 1200);
+        assertEquals(1, reloaded.size());
+        assertNull(reloaded.register("r1", null));
+        RequestRecord record = reloaded.register("r2", null);
+        assertNotNull(record);
+        assertEquals("reply-2", record.getReply());
+        reloaded.close();
+
+        // Loading compacts away the expired request
+        assertEquals(1, readLines().size());
+    }
+
+    @Test
+    public void testCompactsOnceFull() throws IOException
+    {
+        TestFileDedupStore store = createStore(1000000);
+        store.setMaxEntries(3);
+        for (int i = 0; i < 2; i++)
+        {
+            store.register("r" + i, null);
+            store.complete("r" + i, "reply-" + i);
+        }
+        assertEquals(2, readLines().size());
+
+        // The first requests expire, the third append then compacts the file
+        store.now += 1000;
+        store.register("r2", null);
+        store.complete("r2", "reply-2");
+
+        List<String> lines = readLines();
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("reply-2"));
+
+        // Appending continues after compaction
+        store.register("r3", null);
+        store.complete("r3", "reply-3");
+        assertEquals(2, readLines().size());
+        store.close();
+    }
+
+    @Test
+    public void testTruncatedLastLineIsSkipped() throws IOException
+    {
+        TestFileDedupStore store = createStore(1000000);
+        store.register("r1", null);
+        store.complete("r1", "reply-1");
+        store.register("r2", null);
+        store.complete("r2", "reply-2");
+        store.close();
+
+        // Simulate a crash part way through appending a record
+        byte[] content = Files.readAllBytes(file.toPath());
+        try (OutputStream out = new FileOutputStream(file))
+        {
+            out.write(content, 0, content.length - 10);
+        }
+
+        TestFileDedupStore reloaded = createStore(1000000);
+        assertEquals(1, reloaded.size());
+        assertEquals("reply-1", reloaded.register("r1", null).getReply());
+        assertNull(reloaded.register("r2", null));
+
+        reloaded.complete("r2", "reply-2");
+        reloaded.close();
+        assertEquals(2, readLines().size());
+
+        TestFileDedupStore recovered = createStore(1000000);
+        assertEquals(2, recovered.size());
+        assertEquals("reply-2", recovered.register("r2", null).getReply());
+        recovered.close();
+    }
+
+}
@@ -0,0 +1,133 @@
+package org.gengine.messaging.dedup;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class InMemoryRequestDedupStoreTest
+{
+
+    private static class TestDedupStore extends InMemoryRequestDedupStore
+    {
+        private long now = 1000000;
+
+        @Override
+        protected long currentTimeMillis()
+        {
+            return now;
+        }
+    }
+
+    @Test
+    public void testDuplicateOfInFlightRequestIsAttached()
+    {
+        InMemoryRequestDedupStore store = new InMemoryRequestDedupStore();
+        assertNull(store.register("r1", "queue-a"));
+
+        RequestRecord record = store.register("r1", "queue-b");
+        assertNotNull(record);
+        assertFalse(record.isCompleted());
+        // Redelivery to the same queue isn't attached twice
+        store.register("r1", "queue-a");
+        store.register("r1", "queue-b");
+
+        assertEquals(Arrays.asList("queue-b"), store.complete("r1", "reply"));
+    }
+
+    @Test
+    public void testDuplicateOfCompletedRequestGetsReply()
+    {
+        InMemoryRequestDedupStore store = new InMemoryRequestDedupStore();
+        store.register("r1", null);
+        assertEquals(Collections.emptyList(), store.complete("r1", "reply"));
+
+        RequestRecord record = store.register("r1", "queue-b");
+        assertTrue(record.isCompleted());
+        assertEquals("reply", record.getReply());
+    }
+
+    @Test
+    public void testFailedRequestIsProcessedAgain()
+    {
+        InMemoryRequestDedupStore store = new InMemoryRequestDedupStore();
+        store.register("r1", "queue-a");
+        store.register("r1", "queue-b");
+
+        assertEquals(Arrays.asList("queue-b"), store.fail("r1"));
+        assertNull(store.register("r1", "queue-a"));
+    }
+
+    @Test
+    public void testCompletedRequestExpires()
+    {
+        TestDedupStore store = new TestDedupStore();
+        store.setWindowMs(1000);
+        store.register("r1", null);
+        store.complete("r1", "reply");
+
+        store.now += 999;
+        assertNotNull(store.register("r1", null));
+        store.now += 1;
+        assertNull(store.register("r1", null));
+    }
+
+    @Test
+    public void testOldestCompletedRequestsEvictedFirst()
+    {
+        InMemoryRequestDedupStore store = new InMemoryRequestDedupStore();
+        store.setMaxEntries(3);
+        store.register("r1", null);
+        store.register("r2", null);
+        store.complete("r2", "reply");
+        store.register("r3", null);
+        store.register("r4", null);
+
+        assertEquals(3, store.size());
+        assertNotNull(store.register("r1", null));
+        assertNull(store.register("r2", null));
+    }
+
+    @Test
+    public void testFileStoreReloadsCompletedRequests() throws IOException
+    {
+        File file = new File(Files.createTempDirectory("dedup").toFile(), "requests.json");
+        try
+        {
+            Map<String, String> reply = new HashMap<String, String>();
+            reply.put("status", "complete");
+
+            FileRequestDedupStore store = new FileRequestDedupStore();
+            store.setFile(file);
+            store.init();
+            store.register("r1", null);
+            store.complete("r1", reply);
+            store.register("r2", null);
+            store.close();
+
+            FileRequestDedupStore reloaded = new FileRequestDedupStore();
+            reloaded.setFile(file);
+            reloaded.init();
+            RequestRecord record = reloaded.register("r1", null);
+            assertNotNull(record);
+            assertTrue(record.isCompleted());
+            assertEquals(reply, record.getReply());
+            // In-flight requests aren't persisted so are processed again
+            assertNull(reloaded.register("r2", null));
+            reloaded.close();
+        }
+        finally
+        {
+            file.delete();
+            file.getParentFile().delete();
+        }
+    }
+
+}
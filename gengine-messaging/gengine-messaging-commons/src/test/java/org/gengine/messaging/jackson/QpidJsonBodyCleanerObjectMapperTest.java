@@ -0,0 +1,157 @@
+package org.gengine.messaging.jackson;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class QpidJsonBodyCleanerObjectMapperTest
+{
+    private static final String QPID_PREFIX = "\u0000Sw\u00a1sfjh09434";
+
+    private ObjectMapper objectMapper;
+
+    @Before
+    public void setUp()
+    {
+        objectMapper = ObjectMapperFactory.createInstance();
+    }
+
+    protected String createJson(int valueLength) throws Exception
+    {
+        StringBuilder value = new StringBuilder(valueLength);
+        for (int i = 0; i < valueLength; i++)
+        {
+            value.append((char) ('a' + (i % 26)));
+        }
+        HashMap<String, String> map = new HashMap<String, String>();
+        map.put("key1", value.toString());
+        return objectMapper.writeValueAsString(map);
+    }
+
+    @Test
+    public void testReadCleanStream() throws Exception
+    {
+        String json = createJson(10);
+        InputStream is = new ByteArrayInputStream(json.getBytes("UTF-8"));
+        Map<?, ?> result = objectMapper.readValue(is, Map.class);
+        assertEquals(10, ((String) result.get("key1")).length());
+    }
+
+    @Test
+    public void testReadPrefixedStream() throws Exception
+    {
+        String json = createJson(10);
+        InputStream is = new ByteArrayInputStream((QPID_PREFIX + json).getBytes("UTF-8"));
+        Map<?, ?> result = objectMapper.readValue(is, Map.class);
+        assertEquals(10, ((String) result.get("key1")).length());
+    }
+
+    @Test
+    public void testReadPrefixedStreamLargerThanOldMarkLimit() throws Exception
+    {
+        int valueLength = 1024 * 1024;
+        String json = createJson(valueLength);
+        // Not mark supported, and larger than the previous 512KB mark
+        InputStream is = new ByteArrayInputStream((QPID_PREFIX + json).getBytes("UTF-8"))
+        {
+            @Override
+            public boolean markSupported()
+            {
+                return false;
+            }
+        };
+        Map<?, ?> result = objectMapper.readValue(is, Map.class);
+        assertEquals(valueLength, ((String) result.get("key1")).length());
+    }
+
+    @Test
+    public void testReadPrefixedBytesWithOffset() throws Exception
+    {
+        String json = createJson(10);
+        byte[] body = ("xx" + QPID_PREFIX + json + "yy").getBytes("UTF-8");
+        int offset = 2;
+        int length = body.length - offset - 2;
+        assertEquals(offset + QPID_PREFIX.getBytes("UTF-8").length,
+                QpidJsonBodyCleanerObjectMapper.findJsonStart(body, offset, length));
+        Map<?, ?> result = objectMapper.readValue(body, offset, length, Map.class);
+        assertEquals(10, ((String) result.get("key1")).length());
+    }
+
+    @Test
+    public void testReadArray() throws Exception
+    {
+        List<String> list = new ArrayList<String>();
+        list.add("value1");
+        String json = objectMapper.writeValueAsString(list);
+        InputStream is = new ByteArrayInputStream((QPID_PREFIX + json).getBytes("UTF-8"));
+        List<?> result = objectMapper.readValue(is, List.class);
+        assertEquals("value1", result.get(0));
+    }
+
+    @Test
+    public void testReadScalar() throws Exception
+    {
+        InputStream is = new ByteArrayInputStream("\"value1\"".getBytes("UTF-8"));
+        assertEquals("value1", objectMapper.readValue(is, String.class));
+    }
+
+    @Test
+    public void testReadScalarContainingArrayStart() throws Exception
+    {
+        byte[] body = "\"a[b]\"".getBytes("UTF-8");
+        assertEquals("a[b]", objectMapper.readValue(body, String.class));
+        assertEquals("a[b]", objectMapper.readValue(new ByteArrayInputStream(body), String.class));
+    }
+
+    /**
+     * A data section prefix whose length byte is '[' must be skipped exactly
+     * rather than parsing from the length byte
+     */
+    @Test
+    public void testReadDataSectionPrefixedWithArrayStartLength() throws Exception
+    {
+        byte[] json = createJson(51).getBytes("UTF-8");
+        assertEquals('[', json.length);
+        byte[] body = new byte[json.length + 5];
+        body[0] = 0x00;
+        body[1] = 0x53;
+        body[2] = 0x75;
+        body[3] = (byte) 0xa0;
+        body[4] = (byte) json.length;
+        System.arraycopy(json, 0, body, 5, json.length);
+
+        Map<?, ?> result = objectMapper.readValue(body, Map.class);
+        assertEquals(51, ((String) result.get("key1")).length());
+        result = objectMapper.readValue(new ByteArrayInputStream(body), Map.class);
+        assertEquals(51, ((String) result.get("key1")).length());
+    }
+
+    @Test
+    public void testReadDataSectionPrefixed32() throws Exception
+    {
+        byte[] json = createJson(10).getBytes("UTF-8");
+        byte[] body = new byte[json.length + 8];
+        body[0] = 0x00;
+        body[1] = 0x53;
+        body[2] = 0x75;
+        body[3] = (byte) 0xb0;
+        body[7] = (byte) json.length;
+        System.arraycopy(json, 0, body, 8, json.length);
+
+        Map<?, ?> result = objectMapper.readValue(body, Map.class);
+        assertEquals(10, ((String) result.get("key1")).length());
+        result = objectMapper.readValue(new ByteArrayInputStream(body), Map.class);
+        assertEquals(10, ((String) result.get("key1")).length());
+    }
+
+}
@@ -0,0 +1,94 @@
+package org.gengine.messaging.loopback;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.gengine.messaging.MessageConsumer;
+import org.gengine.messaging.MessagingException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoopbackEndpointTest
+{
+
+    private LoopbackBroker broker;
+    private LoopbackEndpoint endpoint;
+    private BlockingQueue<Object> received;
+
+    @Before
+    public void setUp()
+    {
+        broker = new LoopbackBroker();
+        received = new LinkedBlockingQueue<Object>();
+        endpoint = new LoopbackEndpoint();
+        endpoint.setBroker(broker);
+        endpoint.setReceiveEndpoint("queue:gengine.test");
+        endpoint.setSendEndpoint("gengine.test");
+        endpoint.setMessageConsumer(new MessageConsumer()
+        {
+            public void onReceive(Object message)
+            {
+                received.add(message);
+            }
+
+            public Class<?> getConsumingMessageBodyClass()
+            {
+                return StringBuilder.class;
+            }
+        });
+    }
+
+    @After
+    public void tearDown()
+    {
+        endpoint.stopListener();
+    }
+
+    @Test
+    public void testMessagesPassedByReference() throws InterruptedException
+    {
+        endpoint.startListener();
+        StringBuilder message = new StringBuilder("message");
+        endpoint.send(message);
+
+        assertSame(message, received.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testUnexpectedMessageClassDropped() throws InterruptedException
+    {
+        endpoint.startListener();
+        endpoint.send("wrong type");
+        StringBuilder message = new StringBuilder("message");
+        endpoint.send(message);
+
+        assertSame(message, received.poll(5, TimeUnit.SECONDS));
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void testPauseStopsDelivery() throws InterruptedException
+    {
+        endpoint.pause();
+        endpoint.startListener();
+        endpoint.send(new StringBuilder("message"));
+
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+        endpoint.resume();
+        assertNotNull(received.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = MessagingException.class)
+    public void testFullQueueTimesOut()
+    {
+        broker.setQueueCapacity(1);
+        endpoint.setSendTimeoutMs(10);
+        endpoint.send(new StringBuilder("first"));
+        endpoint.send(new StringBuilder("second"));
+    }
+
+}
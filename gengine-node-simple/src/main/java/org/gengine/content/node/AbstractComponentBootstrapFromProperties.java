@@ -1,9 +1,12 @@
 package org.gengine.content.node;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.File;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.gengine.content.AbstractAsyncComponent;
@@ -14,8 +17,11 @@ import org.gengine.content.handler.ContentReferenceHandler;
 import org.gengine.content.handler.FileContentReferenceHandlerImpl;
 import org.gengine.content.handler.webdav.WebDavContentReferenceHandlerImpl;
 import org.gengine.error.GengineRuntimeException;
+import org.gengine.messaging.DelegatingAsyncMessageProducerImpl;
 import org.gengine.messaging.amqp.AmqpDirectEndpoint;
 import org.gengine.messaging.amqp.AmqpNodeBootstrapUtils;
+import org.gengine.messaging.dedup.FileRequestDedupStore;
+import org.gengine.messaging.dedup.InMemoryRequestDedupStore;
 
 /**
  * Base bootstrap which creates a component, configures it with a worker, and creates
@@ -35,8 +41,21 @@ public abstract class AbstractComponentBootstrapFromProperties<W extends Content
     public static final String PROP_WORKER_CONTENT_REF_HANDLER_WEBDAV_USERNAME_SUFFIX = ".webdav.username";
     public static final String PROP_WORKER_CONTENT_REF_HANDLER_WEBDAV_PASSWORD_SUFFIX = ".webdav.password";
 
+    public static final String PROP_COMPONENT_PROCESSOR_COUNT = "gengine.component.processors";
+    public static final String PROP_COMPONENT_QUEUE_CAPACITY = "gengine.component.queue.capacity";
+    public static final String PROP_COMPONENT_QUEUE_HIGH_WATER_MARK = "gengine.component.queue.highwatermark";
+    public static final String PROP_COMPONENT_QUEUE_LOW_WATER_MARK = "gengine.component.queue.lowwatermark";
+    public static final String PROP_COMPONENT_QUEUE_PRIORITY = "gengine.component.queue.priority";
+    public static final String PROP_COMPONENT_QUEUE_PRIORITY_AGING_MS = "gengine.component.queue.priority.aging.ms";
+    public static final String PROP_COMPONENT_DEDUP_WINDOW_MS = "gengine.component.dedup.window.ms";
+    public static final String PROP_COMPONENT_DEDUP_MAX_ENTRIES = "gengine.component.dedup.max.entries";
+    public static final String PROP_COMPONENT_DEDUP_FILE = "gengine.component.dedup.file";
+
     protected Properties properties;
     protected W worker;
+    protected AmqpDirectEndpoint endpoint;
+    protected DelegatingAsyncMessageProducerImpl messageProducer;
+    protected InMemoryRequestDedupStore dedupStore;
 
     public AbstractComponentBootstrapFromProperties(Properties properties, W worker)
     {
@@ -118,6 +137,59 @@ public abstract class AbstractComponentBootstrapFromProperties<W extends Content
         return fileContentReferenceHandler;
     }
 
+    /**
+     * Gets the integer value of the given property
+     *
+     * @param propertiesKey
+     * @return the value or null if not set
+     */
+    protected Integer getIntegerProperty(String propertiesKey)
+    {
+        String value = properties.getProperty(propertiesKey);
+        if (StringUtils.isEmpty(value))
+        {
+            return null;
+        }
+        return Integer.valueOf(value.trim());
+    }
+
+    /**
+     * Creates the request dedup store if a dedup window is configured, persisted
+     * to a file if one is given
+     *
+     * @return the dedup store or null if deduplication is disabled
+     */
+    protected InMemoryRequestDedupStore createDedupStore()
+    {
+        Integer windowMs = getIntegerProperty(PROP_COMPONENT_DEDUP_WINDOW_MS);
+        if (windowMs == null || windowMs <= 0)
+        {
+            return null;
+        }
+        InMemoryRequestDedupStore dedupStore;
+        String file = properties.getProperty(PROP_COMPONENT_DEDUP_FILE);
+        if (StringUtils.isEmpty(file))
+        {
+            dedupStore = new InMemoryRequestDedupStore();
+        }
+        else
+        {
+            dedupStore = new FileRequestDedupStore();
+            ((FileRequestDedupStore) dedupStore).setFile(new File(file.trim()));
+        }
+        dedupStore.setWindowMs(windowMs);
+        Integer maxEntries = getIntegerProperty(PROP_COMPONENT_DEDUP_MAX_ENTRIES);
+        if (maxEntries != null)
+        {
+            dedupStore.setMaxEntries(maxEntries);
+        }
+        if (dedupStore instanceof FileRequestDedupStore)
+        {
+            ((FileRequestDedupStore) dedupStore).init();
+        }
+        return dedupStore;
+    }
+
     protected abstract AbstractComponent<W> createComponent();
 
     protected abstract void initWorker();
@@ -128,27 +200,98 @@ public abstract class AbstractComponentBootstrapFromProperties<W extends Content
 
         AbstractComponent<W> component = createComponent();
         component.setWorker(worker);
+        dedupStore = createDedupStore();
+        component.setDedupStore(dedupStore);
         // TODO allow more config
+        ExecutorService executorService = Executors.newCachedThreadPool();
+
+        endpoint = AmqpNodeBootstrapUtils.createEndpoint(component, properties);
+        if (endpoint == null)
+        {
+            throw new GengineRuntimeException("Could not create AMQP endpoint");
+        }
         if (component instanceof AbstractAsyncComponent<?,?,?>)
         {
-            ((AbstractAsyncComponent<?,?,?>) component).setExecutorService(
-                    Executors.newCachedThreadPool());
+            AbstractAsyncComponent<?,?,?> asyncComponent = (AbstractAsyncComponent<?,?,?>) component;
+            asyncComponent.setExecutorService(executorService);
+            asyncComponent.setFlowControlledEndpoint(endpoint);
+            Integer processorCount = getIntegerProperty(PROP_COMPONENT_PROCESSOR_COUNT);
+            if (processorCount != null)
+            {
+                asyncComponent.setProcessorCount(processorCount);
+            }
+            Integer queueCapacity = getIntegerProperty(PROP_COMPONENT_QUEUE_CAPACITY);
+            if (queueCapacity != null)
+            {
+                asyncComponent.setQueueCapacity(queueCapacity);
+            }
+            Integer highWaterMark = getIntegerProperty(PROP_COMPONENT_QUEUE_HIGH_WATER_MARK);
+            if (highWaterMark != null)
+            {
+                asyncComponent.setHighWaterMark(highWaterMark);
+            }
+            Integer lowWaterMark = getIntegerProperty(PROP_COMPONENT_QUEUE_LOW_WATER_MARK);
+            if (lowWaterMark != null)
+            {
+                asyncComponent.setLowWaterMark(lowWaterMark);
+            }
+            String priorityScheduling = properties.getProperty(PROP_COMPONENT_QUEUE_PRIORITY);
+            if (!StringUtils.isEmpty(priorityScheduling))
+            {
+                asyncComponent.setPriorityScheduling(Boolean.parseBoolean(priorityScheduling.trim()));
+            }
+            Integer priorityAgingMs = getIntegerProperty(PROP_COMPONENT_QUEUE_PRIORITY_AGING_MS);
+            if (priorityAgingMs != null)
+            {
+                asyncComponent.setPriorityAgingMs(priorityAgingMs);
+            }
         }
+        // Consumers acknowledging before processing dispatch into the component's executor
+        endpoint.setExecutorService(executorService);
 
-        AmqpDirectEndpoint endpoint =
-                AmqpNodeBootstrapUtils.createEndpoint(component, properties);
-        if (endpoint == null)
+        // Replies are sent asynchronously so progress reporting doesn't hold up workers
+        messageProducer = new DelegatingAsyncMessageProducerImpl(endpoint);
+        Integer maxInFlight = getIntegerProperty(AmqpNodeBootstrapUtils.PROP_MESSAGING_PRODUCER_ASYNC_MAX_IN_FLIGHT);
+        if (maxInFlight != null)
         {
-            throw new GengineRuntimeException("Could not create AMQP endpoint");
+            messageProducer.setMaxInFlight(maxInFlight);
         }
+        messageProducer.init();
 
-        component.setMessageProducer(endpoint);
+        component.setMessageProducer(messageProducer);
         component.init();
 
         logger.debug("Initialized component " + component.toString());
 
         endpoint.startListener();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable()
+        {
+            public void run()
+            {
+                shutdown();
+            }
+        }, "gengine-node-shutdown"));
     }
 
+    /**
+     * Releases the resources owned by the node's worker and messaging, called
+     * from a shutdown hook when the JVM exits
+     */
+    protected void shutdown()
+    {
+        if (messageProducer != null)
+        {
+            messageProducer.shutdown();
+        }
+        if (endpoint != null)
+        {
+            endpoint.close();
+        }
+        if (dedupStore instanceof FileRequestDedupStore)
+        {
+            ((FileRequestDedupStore) dedupStore).close();
+        }
+    }
 
 }
@@ -2,6 +2,7 @@ package org.gengine.content.node;
 
 import java.util.Properties;
 
+import org.apache.commons.lang3.StringUtils;
 import org.gengine.content.AbstractComponent;
 import org.gengine.content.handler.ContentReferenceHandler;
 import org.gengine.content.hash.AbstractContentHashWorker;
@@ -15,6 +16,9 @@ import org.gengine.content.hash.BaseContentHashComponent;
 public class HashComponentBootstrapFromProperties<W extends AbstractContentHashWorker> extends
         AbstractComponentBootstrapFromProperties<W>
 {
+    public static final String PROP_WORKER_HASH_PARALLELISM = "gengine.worker.hash.parallelism";
+    public static final String PROP_WORKER_HASH_REPORT_SOURCE_ERRORS = "gengine.worker.hash.report.source.errors";
+
     public HashComponentBootstrapFromProperties(Properties properties, W worker)
     {
         super(properties, worker);
@@ -32,7 +36,24 @@ public class HashComponentBootstrapFromProperties<W extends AbstractContentHashW
         ContentReferenceHandler sourceHandler = createContentReferenceHandler(
                 PROP_WORKER_CONTENT_REF_HANDLER_SOURCE_PREFIX);
         worker.setSourceContentReferenceHandler(sourceHandler);
+        Integer parallelism = getIntegerProperty(PROP_WORKER_HASH_PARALLELISM);
+        if (parallelism != null)
+        {
+            worker.setMaxParallelism(parallelism);
+        }
+        String reportSourceErrors = properties.getProperty(PROP_WORKER_HASH_REPORT_SOURCE_ERRORS);
+        if (!StringUtils.isEmpty(reportSourceErrors))
+        {
+            worker.setReportSourceErrors(Boolean.parseBoolean(reportSourceErrors.trim()));
+        }
         worker.initialize();
     }
 
+    @Override
+    protected void shutdown()
+    {
+        worker.shutdown();
+        super.shutdown();
+    }
+
 }
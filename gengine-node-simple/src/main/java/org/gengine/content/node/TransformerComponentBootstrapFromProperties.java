@@ -2,10 +2,12 @@ package org.gengine.content.node;
 
 import java.util.Properties;
 
+import org.apache.commons.lang3.StringUtils;
 import org.gengine.content.AbstractComponent;
 import org.gengine.content.handler.ContentReferenceHandler;
 import org.gengine.content.transform.AbstractContentTransformerWorker;
 import org.gengine.content.transform.BaseContentTransformerComponent;
+import org.gengine.content.transform.TransformationProgressDispatcher;
 
 /**
  * Bootstraps a transformer component
@@ -17,6 +19,10 @@ public class TransformerComponentBootstrapFromProperties<W extends AbstractConte
 {
     protected static final String PROP_WORKER_CONTENT_REF_HANDLER_TARGET_PREFIX =
             "gengine.worker.contentrefhandler.target";
+    public static final String PROP_TRANSFORM_PROGRESS_MAX_RATE = "gengine.transform.progress.maxrate";
+    public static final String PROP_TRANSFORM_PROGRESS_THRESHOLD = "gengine.transform.progress.threshold";
+
+    protected TransformationProgressDispatcher progressDispatcher;
 
     public TransformerComponentBootstrapFromProperties(Properties properties, W worker)
     {
@@ -27,7 +33,20 @@ public class TransformerComponentBootstrapFromProperties<W extends AbstractConte
     @Override
     protected AbstractComponent createComponent()
     {
-        return new BaseContentTransformerComponent();
+        BaseContentTransformerComponent component = new BaseContentTransformerComponent();
+        progressDispatcher = new TransformationProgressDispatcher();
+        String maxRate = properties.getProperty(PROP_TRANSFORM_PROGRESS_MAX_RATE);
+        if (!StringUtils.isEmpty(maxRate))
+        {
+            progressDispatcher.setMaxUpdatesPerSecond(Double.parseDouble(maxRate.trim()));
+        }
+        String threshold = properties.getProperty(PROP_TRANSFORM_PROGRESS_THRESHOLD);
+        if (!StringUtils.isEmpty(threshold))
+        {
+            progressDispatcher.setProgressThreshold(Float.parseFloat(threshold.trim()));
+        }
+        component.setProgressDispatcher(progressDispatcher);
+        return component;
     }
 
     protected void initWorker()
@@ -43,4 +62,15 @@ public class TransformerComponentBootstrapFromProperties<W extends AbstractConte
         worker.initialize();
     }
 
+    @Override
+    protected void shutdown()
+    {
+        // Stop scheduled progress updates before the producer they're sent with
+        if (progressDispatcher != null)
+        {
+            progressDispatcher.shutdown();
+        }
+        super.shutdown();
+    }
+
 }
@@ -1,6 +1,10 @@
 package org.gengine.content.transform;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -8,6 +12,7 @@ import org.gengine.content.AbstractComponent;
 import org.gengine.content.ContentWorkResult;
 import org.gengine.content.transform.TransformationReply;
 import org.gengine.content.transform.TransformationRequest;
+import org.gengine.messaging.AsyncMessageProducer;
 import org.gengine.messaging.MessageProducer;
 
 /**
@@ -21,6 +26,23 @@ public class BaseContentTransformerComponent
     private static final Log logger = LogFactory.getLog(BaseContentTransformerComponent.class);
 
     protected TransformationRequest lastRequest;
+    protected TransformationProgressDispatcher progressDispatcher = new TransformationProgressDispatcher();
+
+    /**
+     * Sets the dispatcher which coalesces and rate limits in-progress replies,
+     * which may be shared with other components.  Defaults to a dispatcher with
+     * its default settings.
+     *
+     * @param progressDispatcher
+     */
+    public void setProgressDispatcher(TransformationProgressDispatcher progressDispatcher)
+    {
+        if (progressDispatcher == null)
+        {
+            throw new IllegalArgumentException("progressDispatcher must not be null");
+        }
+        this.progressDispatcher = progressDispatcher;
+    }
 
     /**
      * Gets the last transformation request received.
@@ -39,6 +61,10 @@ public class BaseContentTransformerComponent
     protected void onReceiveImpl(Object message)
     {
         TransformationRequest request = (TransformationRequest) message;
+        if (!registerRequest(request))
+        {
+            return;
+        }
         lastRequest = request;
         logger.info("Processing transformation requestId=" + request.getRequestId());
         ContentTransformerWorkerProgressReporterImpl progressReporter =
@@ -57,8 +83,18 @@ public class BaseContentTransformerComponent
         }
         catch (Exception e)
         {
-            progressReporter.onTransformationError(e.getMessage());
             logger.error(e.getMessage(), e);
+            if (!progressReporter.isFinished())
+            {
+                progressReporter.onTransformationError(e.getMessage());
+            }
+        }
+        finally
+        {
+            if (!progressReporter.isFinished())
+            {
+                releaseRequest(request);
+            }
         }
     }
 
@@ -70,17 +106,40 @@ public class BaseContentTransformerComponent
     /**
      * Implementation of the progress reporter which sends reply messages with
      * progress on the transformation.
+     * <p>
+     * In-progress replies go through the component's {@link TransformationProgressDispatcher}
+     * so frequent progress callbacks are coalesced, with the latest progress flushed
+     * before the final reply.
+     * <p>
+     * If the message producer is an {@link AsyncMessageProducer} in-progress replies
+     * are sent asynchronously so the worker isn't held up by the broker, and any
+     * outstanding in-progress replies are waited for before the final reply is sent.
      */
-    public class ContentTransformerWorkerProgressReporterImpl implements ContentTransformerWorkerProgressReporter
+    public class ContentTransformerWorkerProgressReporterImpl implements ContentTransformerWorkerProgressReporter,
+            TransformationProgressDispatcher.ProgressSender
     {
         private TransformationRequest request;
         private boolean isReportInProgressPermitted = false;
+        private boolean isFinished = false;
+        private final List<CompletableFuture<Void>> pendingProgressSends =
+                new ArrayList<CompletableFuture<Void>>();
 
         public ContentTransformerWorkerProgressReporterImpl(TransformationRequest request)
         {
             this.request = request;
         }
 
+        /**
+         * Determines whether the request has been completed or failed
+         * with the component's dedup store
+         *
+         * @return true if the request is finished
+         */
+        public boolean isFinished()
+        {
+            return isFinished;
+        }
+
         public void onTransformationStarted()
         {
             if (logger.isDebugEnabled())
@@ -114,11 +173,89 @@ public class BaseContentTransformerComponent
             // Don't actually send a reply if in-progress reporting is not allowed in this state
             if (isReportInProgressPermitted)
             {
-                TransformationReply reply = new TransformationReply(request);
-                reply.setStatus(TransformationReply.STATUS_IN_PROGRESS);
-                reply.setProgress(progress);
+                progressDispatcher.update(request.getRequestId(), this, progress);
+            }
+        }
+
+        /**
+         * Sends an in-progress reply, called by the progress dispatcher
+         */
+        public void sendProgress(float progress)
+        {
+            TransformationReply reply = new TransformationReply(request);
+            reply.setStatus(TransformationReply.STATUS_IN_PROGRESS);
+            reply.setProgress(progress);
+
+            sendProgress(reply);
+        }
 
+        protected void sendProgress(TransformationReply reply)
+        {
+            if (!(messageProducer instanceof AsyncMessageProducer))
+            {
                 messageProducer.send(reply, request.getReplyTo());
+                return;
+            }
+            CompletableFuture<Void> future =
+                    ((AsyncMessageProducer) messageProducer).sendAsync(reply, request.getReplyTo());
+            synchronized (pendingProgressSends)
+            {
+                Iterator<CompletableFuture<Void>> iterator = pendingProgressSends.iterator();
+                while (iterator.hasNext())
+                {
+                    CompletableFuture<Void> pending = iterator.next();
+                    if (pending.isDone())
+                    {
+                        iterator.remove();
+                        logProgressSendFailure(pending);
+                    }
+                }
+                pendingProgressSends.add(future);
+            }
+        }
+
+        /**
+         * Waits for outstanding asynchronous in-progress replies so that they
+         * can't arrive after the final reply
+         */
+        protected void awaitProgressSends()
+        {
+            synchronized (pendingProgressSends)
+            {
+                for (CompletableFuture<Void> pending : pendingProgressSends)
+                {
+                    try
+                    {
+                        pending.get();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    catch (ExecutionException e)
+                    {
+                        logProgressSendFailure(pending);
+                    }
+                }
+                pendingProgressSends.clear();
+            }
+        }
+
+        private void logProgressSendFailure(CompletableFuture<Void> pending)
+        {
+            if (!pending.isCompletedExceptionally())
+            {
+                return;
+            }
+            try
+            {
+                pending.getNow(null);
+            }
+            catch (Exception e)
+            {
+                logger.warn("Could not send progress for transformation " +
+                        "requestId=" + request.getRequestId() + ": " + e.getMessage());
             }
         }
 
@@ -126,6 +263,8 @@ public class BaseContentTransformerComponent
         {
             // We don't want in-progress messages coming in after completion
             isReportInProgressPermitted = false;
+            progressDispatcher.flush(request.getRequestId());
+            awaitProgressSends();
 
             if (logger.isInfoEnabled())
             {
@@ -137,6 +276,8 @@ public class BaseContentTransformerComponent
             reply.setResults(results);
 
             messageProducer.send(reply, request.getReplyTo());
+            isFinished = true;
+            completeRequest(request, reply);
         }
 
         @Override
@@ -144,12 +285,22 @@ public class BaseContentTransformerComponent
         {
             // We don't want in-progress messages coming in after error
             isReportInProgressPermitted = false;
+            progressDispatcher.cancel(request.getRequestId());
+            awaitProgressSends();
 
             TransformationReply reply = new TransformationReply(request);
             reply.setStatus(TransformationReply.STATUS_ERROR);
             reply.setStatusDetail(errorMessage);
 
-            messageProducer.send(reply, request.getReplyTo());
+            try
+            {
+                messageProducer.send(reply, request.getReplyTo());
+            }
+            finally
+            {
+                isFinished = true;
+                failRequest(request, reply);
+            }
         }
     }
 
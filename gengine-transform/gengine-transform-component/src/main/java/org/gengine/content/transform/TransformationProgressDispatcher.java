@@ -0,0 +1,277 @@
+package org.gengine.content.transform;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Coalesces and rate limits progress updates for transformations, shared
+ * across all of a component's in-flight requests.
+ * <p>
+ * An update is sent straight away if the request's last update was sent at least
+ * <code>1 / maxUpdatesPerSecond</code> ago, or if progress has moved by at least the
+ * progress threshold since then.  Otherwise it replaces any pending update for the
+ * request, and the latest pending update is sent once the interval has elapsed so
+ * that progress displays don't stall between large steps.
+ * <p>
+ * {@link #flush(String)} must be called before a request's final reply is sent, and
+ * {@link #cancel(String)} if it fails, to release the request's state.
+ *
+ */
+public class TransformationProgressDispatcher
+{
+    private static final Log logger = LogFactory.getLog(TransformationProgressDispatcher.class);
+
+    public static final double DEFAULT_MAX_UPDATES_PER_SECOND = 2.0;
+    public static final float DEFAULT_PROGRESS_THRESHOLD = 0.1f;
+
+    private long minIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / DEFAULT_MAX_UPDATES_PER_SECOND);
+    private float progressThreshold = DEFAULT_PROGRESS_THRESHOLD;
+    private volatile ScheduledExecutorService scheduledExecutorService;
+    private boolean isScheduledExecutorServiceOwned = false;
+
+    private final ConcurrentMap<String, RequestProgress> requests =
+            new ConcurrentHashMap<String, RequestProgress>();
+
+    /**
+     * Sends the progress updates for a single request
+     */
+    public interface ProgressSender
+    {
+        public void sendProgress(float progress);
+    }
+
+    /**
+     * The progress state of a single request, guarded by its own monitor
+     */
+    private class RequestProgress implements Runnable
+    {
+        private final String requestId;
+        private final ProgressSender sender;
+        private boolean hasSent = false;
+        private long lastSentNanos;
+        private float lastSentProgress;
+        private boolean hasPending = false;
+        private float pendingProgress;
+        private ScheduledFuture<?> scheduledSend;
+        private boolean isClosed = false;
+
+        private RequestProgress(String requestId, ProgressSender sender)
+        {
+            this.requestId = requestId;
+            this.sender = sender;
+        }
+
+        private synchronized void update(float progress)
+        {
+            if (isClosed)
+            {
+                return;
+            }
+            long now = System.nanoTime();
+            if (!hasSent
+                    || now - lastSentNanos >= minIntervalNanos
+                    || Math.abs(progress - lastSentProgress) >= progressThreshold)
+            {
+                send(progress, now);
+                return;
+            }
+            hasPending = true;
+            pendingProgress = progress;
+            if (scheduledSend == null)
+            {
+                long delay = lastSentNanos + minIntervalNanos - now;
+                scheduledSend = getScheduledExecutorService().schedule(this, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Sends the pending update once the interval has elapsed
+         */
+        public synchronized void run()
+        {
+            scheduledSend = null;
+            if (isClosed || !hasPending)
+            {
+                return;
+            }
+            try
+            {
+                send(pendingProgress, System.nanoTime());
+            }
+            catch (RuntimeException e)
+            {
+                logger.warn("Could not send progress for transformation " +
+                        "requestId=" + requestId + ": " + e.getMessage());
+            }
+        }
+
+        private synchronized void close(boolean sendPending)
+        {
+            isClosed = true;
+            if (scheduledSend != null)
+            {
+                scheduledSend.cancel(false);
+                scheduledSend = null;
+            }
+            if (sendPending && hasPending)
+            {
+                send(pendingProgress, System.nanoTime());
+            }
+            hasPending = false;
+        }
+
+        private void send(float progress, long now)
+        {
+            hasPending = false;
+            hasSent = true;
+            lastSentNanos = now;
+            lastSentProgress = progress;
+            sender.sendProgress(progress);
+        }
+    }
+
+    /**
+     * Sets the maximum number of updates sent per second for each request,
+     * other than those exceeding the progress threshold.  Zero or less sends
+     * every update.  Defaults to 2.
+     *
+     * @param maxUpdatesPerSecond
+     */
+    public void setMaxUpdatesPerSecond(double maxUpdatesPerSecond)
+    {
+        this.minIntervalNanos = maxUpdatesPerSecond <= 0 ? 0 :
+            (long) (TimeUnit.SECONDS.toNanos(1) / maxUpdatesPerSecond);
+    }
+
+    /**
+     * Sets the change in progress, between 0 and 1, which causes an update to be
+     * sent regardless of the rate limit.  Defaults to 0.1.
+     *
+     * @param progressThreshold
+     */
+    public void setProgressThreshold(float progressThreshold)
+    {
+        if (progressThreshold < 0 || progressThreshold > 1)
+        {
+            throw new IllegalArgumentException("progressThreshold must be between 0 and 1");
+        }
+        this.progressThreshold = progressThreshold;
+    }
+
+    /**
+     * Sets the executor used to send pending updates, defaulting to a
+     * single daemon thread created on first use
+     *
+     * @param scheduledExecutorService
+     */
+    public void setScheduledExecutorService(ScheduledExecutorService scheduledExecutorService)
+    {
+        this.scheduledExecutorService = scheduledExecutorService;
+    }
+
+    protected ScheduledExecutorService getScheduledExecutorService()
+    {
+        if (scheduledExecutorService == null)
+        {
+            synchronized (this)
+            {
+                if (scheduledExecutorService == null)
+                {
+                    scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable runnable)
+                        {
+                            Thread thread = new Thread(runnable, "gengine-progress-dispatcher");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                    isScheduledExecutorServiceOwned = true;
+                }
+            }
+        }
+        return scheduledExecutorService;
+    }
+
+    /**
+     * Reports progress for the given request, which is sent through the given
+     * sender either now or once the rate limit allows
+     *
+     * @param requestId
+     * @param sender
+     * @param progress
+     */
+    public void update(String requestId, ProgressSender sender, float progress)
+    {
+        RequestProgress requestProgress = requests.get(requestId);
+        if (requestProgress == null)
+        {
+            requestProgress = new RequestProgress(requestId, sender);
+            RequestProgress existing = requests.putIfAbsent(requestId, requestProgress);
+            if (existing != null)
+            {
+                requestProgress = existing;
+            }
+        }
+        requestProgress.update(progress);
+    }
+
+    /**
+     * Sends any pending update for the given request on the calling thread,
+     * waiting for any scheduled send in progress, then releases the request
+     *
+     * @param requestId
+     */
+    public void flush(String requestId)
+    {
+        RequestProgress requestProgress = requests.remove(requestId);
+        if (requestProgress != null)
+        {
+            requestProgress.close(true);
+        }
+    }
+
+    /**
+     * Discards any pending update for the given request and releases the request
+     *
+     * @param requestId
+     */
+    public void cancel(String requestId)
+    {
+        RequestProgress requestProgress = requests.remove(requestId);
+        if (requestProgress != null)
+        {
+            requestProgress.close(false);
+        }
+    }
+
+    /**
+     * Gets the number of requests with progress state
+     *
+     * @return the request count
+     */
+    public int getRequestCount()
+    {
+        return requests.size();
+    }
+
+    /**
+     * Shuts down the default executor if one was created
+     */
+    public void shutdown()
+    {
+        if (isScheduledExecutorServiceOwned && scheduledExecutorService != null)
+        {
+            scheduledExecutorService.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+package org.gengine.content.transform;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.gengine.content.ContentReference;
+import org.gengine.content.ContentWorkResult;
+import org.gengine.content.transform.options.TransformationOptions;
+import org.gengine.messaging.MessageProducer;
+import org.gengine.messaging.MessagingException;
+import org.gengine.messaging.dedup.InMemoryRequestDedupStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a request is never left in flight in the component's dedup store
+ */
+public class BaseContentTransformerComponentDedupTest
+{
+
+    private static class TestMessageProducer implements MessageProducer
+    {
+        private final List<TransformationReply> sent =
+                Collections.synchronizedList(new ArrayList<TransformationReply>());
+        private String failingStatus;
+
+        public void send(Object message) throws MessagingException
+        {
+            send(message, (String) null);
+        }
+
+        public void send(Object message, Map<String, Object> headers) throws MessagingException
+        {
+            send(message, (String) null);
+        }
+
+        public void send(Object message, String queueName) throws MessagingException
+        {
+            TransformationReply reply = (TransformationReply) message;
+            if (reply.getStatus().equals(failingStatus))
+            {
+                throw new MessagingException("Could not send " + reply.getStatus() + " reply");
+            }
+            sent.add(reply);
+        }
+
+        public void send(Object message, String queueName, Map<String, Object> headers) throws MessagingException
+        {
+            send(message, queueName);
+        }
+    }
+
+    private static class WorkerError extends Error
+    {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static class TestWorker implements ContentTransformerWorker
+    {
+        private Throwable error;
+
+        public boolean isAvailable()
+        {
+            return true;
+        }
+
+        public String getVersionString()
+        {
+            return "1.0";
+        }
+
+        public String getVersionDetailsString()
+        {
+            return "1.0";
+        }
+
+        public List<ContentWorkResult> transform(List<ContentReference> sources, List<ContentReference> targets,
+                TransformationOptions options, ContentTransformerWorkerProgressReporter progressReporter)
+                throws Exception
+        {
+            if (error instanceof Exception)
+            {
+                throw (Exception) error;
+            }
+            if (error instanceof Error)
+            {
+                throw (Error) error;
+            }
+            return new ArrayList<ContentWorkResult>();
+        }
+
+        public List<ContentWorkResult> transform(List<ContentReference> sources, String targetMediaType,
+                TransformationOptions options, ContentTransformerWorkerProgressReporter progressReporter)
+                throws Exception
+        {
+            return transform(sources, (List<ContentReference>) null, options, progressReporter);
+        }
+
+        public boolean isTransformable(List<String> sourceMediaTypes, String targetMediaType,
+                TransformationOptions options)
+        {
+            return true;
+        }
+    }
+
+    private BaseContentTransformerComponent component;
+    private TestMessageProducer messageProducer;
+    private TestWorker worker;
+    private InMemoryRequestDedupStore dedupStore;
+
+    @Before
+    public void setUp()
+    {
+        messageProducer = new TestMessageProducer();
+        worker = new TestWorker();
+        dedupStore = new InMemoryRequestDedupStore();
+        component = new BaseContentTransformerComponent();
+        component.setMessageProducer(messageProducer);
+        component.setWorker(worker);
+        component.setDedupStore(dedupStore);
+    }
+
+    @After
+    public void tearDown()
+    {
+        component.progressDispatcher.shutdown();
+    }
+
+    protected TransformationRequest createRequest()
+    {
+        TransformationRequest request = new TransformationRequest();
+        request.setReplyTo("reply-queue");
+        return request;
+    }
+
+    @Test
+    public void testCompletedRequestIsRemembered()
+    {
+        TransformationRequest request = createRequest();
+        component.onReceive(request);
+        component.onReceive(request);
+
+        assertEquals(1, dedupStore.size());
+        // Started and complete, then the complete reply resent to the duplicate
+        assertEquals(3, messageProducer.sent.size());
+        assertEquals(TransformationReply.STATUS_COMPLETE, messageProducer.sent.get(2).getStatus());
+    }
+
+    @Test
+    public void testRequestReleasedWhenErrorReplyCannotBeSent()
+    {
+        worker.error = new IllegalStateException("worker failed");
+        messageProducer.failingStatus = TransformationReply.STATUS_ERROR;
+        TransformationRequest request = createRequest();
+        try
+        {
+            component.onReceive(request);
+            fail("Expected the error reply send to fail");
+        }
+        catch (MessagingException e)
+        {
+            // expected
+        }
+
+        assertEquals(0, dedupStore.size());
+    }
+
+    @Test
+    public void testRequestFailedWhenCompleteReplyCannotBeSent()
+    {
+        messageProducer.failingStatus = TransformationReply.STATUS_COMPLETE;
+        TransformationRequest request = createRequest();
+        component.onReceive(request);
+
+        // The complete reply failed so the request failed with an error reply
+        assertEquals(0, dedupStore.size());
+        assertEquals(TransformationReply.STATUS_ERROR,
+                messageProducer.sent.get(messageProducer.sent.size() - 1).getStatus());
+    }
+
+    @Test
+    public void testRequestReleasedWhenWorkerThrowsError()
+    {
+        worker.error = new WorkerError();
+        TransformationRequest request = createRequest();
+        try
+        {
+            component.onReceive(request);
+            fail("Expected the worker error to propagate");
+        }
+        catch (WorkerError e)
+        {
+            // expected
+        }
+
+        assertEquals(0, dedupStore.size());
+        // A retry is processed again
+        worker.error = null;
+        component.onReceive(request);
+        assertEquals(1, dedupStore.size());
+        assertEquals(TransformationReply.STATUS_COMPLETE,
+                messageProducer.sent.get(messageProducer.sent.size() - 1).getStatus());
+    }
+
+}
@@ -0,0 +1,119 @@
+package org.gengine.content.transform;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransformationProgressDispatcherTest
+{
+    private static final String REQUEST_ID = "request-1";
+
+    private TransformationProgressDispatcher dispatcher;
+    private List<Float> sent;
+    private TransformationProgressDispatcher.ProgressSender sender;
+
+    @Before
+    public void setUp()
+    {
+        dispatcher = new TransformationProgressDispatcher();
+        dispatcher.setMaxUpdatesPerSecond(1);
+        dispatcher.setProgressThreshold(0.1f);
+        sent = Collections.synchronizedList(new ArrayList<Float>());
+        sender = new TransformationProgressDispatcher.ProgressSender()
+        {
+            public void sendProgress(float progress)
+            {
+                sent.add(progress);
+            }
+        };
+    }
+
+    @After
+    public void tearDown()
+    {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testCoalescesUpdatesAndFlushesLatest()
+    {
+        for (int i = 0; i < 50; i++)
+        {
+            dispatcher.update(REQUEST_ID, sender, i * 0.001f);
+        }
+        assertEquals(1, sent.size());
+
+        dispatcher.flush(REQUEST_ID);
+
+        assertEquals(2, sent.size());
+        assertEquals(0.049f, sent.get(1), 0.0001f);
+        assertEquals(0, dispatcher.getRequestCount());
+    }
+
+    @Test
+    public void testThresholdSendsImmediately()
+    {
+        dispatcher.update(REQUEST_ID, sender, 0.0f);
+        dispatcher.update(REQUEST_ID, sender, 0.05f);
+        dispatcher.update(REQUEST_ID, sender, 0.2f);
+
+        assertEquals(2, sent.size());
+        assertEquals(0.2f, sent.get(1), 0.0001f);
+
+        dispatcher.flush(REQUEST_ID);
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void testPendingUpdateSentAfterInterval() throws InterruptedException
+    {
+        dispatcher.setMaxUpdatesPerSecond(20);
+        dispatcher.update(REQUEST_ID, sender, 0.0f);
+        dispatcher.update(REQUEST_ID, sender, 0.01f);
+        dispatcher.update(REQUEST_ID, sender, 0.02f);
+        assertEquals(1, sent.size());
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (sent.size() < 2 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(2, sent.size());
+        assertEquals(0.02f, sent.get(1), 0.0001f);
+
+        dispatcher.flush(REQUEST_ID);
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void testCancelDiscardsPending()
+    {
+        dispatcher.update(REQUEST_ID, sender, 0.0f);
+        dispatcher.update(REQUEST_ID, sender, 0.01f);
+
+        dispatcher.cancel(REQUEST_ID);
+
+        assertEquals(1, sent.size());
+        assertEquals(0, dispatcher.getRequestCount());
+    }
+
+    @Test
+    public void testRequestsAreIndependent()
+    {
+        dispatcher.update(REQUEST_ID, sender, 0.0f);
+        dispatcher.update("request-2", sender, 0.0f);
+
+        assertEquals(2, sent.size());
+        assertEquals(2, dispatcher.getRequestCount());
+
+        dispatcher.flush(REQUEST_ID);
+        dispatcher.flush("request-2");
+    }
+
+}
@@ -0,0 +1,41 @@
+package org.gengine.content.transform;
+
+import org.gengine.content.transform.options.AudioTransformationOptions;
+import org.gengine.content.transform.options.CropSourceOptions;
+import org.gengine.content.transform.options.ImageResizeOptions;
+import org.gengine.content.transform.options.ImageTransformationOptions;
+import org.gengine.content.transform.options.PagedSourceOptions;
+import org.gengine.content.transform.options.TemporalSourceOptions;
+import org.gengine.content.transform.options.TransformationOptionLimits;
+import org.gengine.content.transform.options.TransformationOptionPair;
+import org.gengine.content.transform.options.TransformationOptionsImpl;
+import org.gengine.content.transform.options.VideoTransformationOptions;
+import org.gengine.messaging.jackson.TypeIdProvider;
+import org.gengine.messaging.jackson.TypeIdRegistry;
+
+/**
+ * Registers type ids for transformation messages and their options
+ *
+ */
+public class TransformTypeIdProvider implements TypeIdProvider
+{
+
+    public void registerTypeIds(TypeIdRegistry registry)
+    {
+        registry.register("TransformationRequest", TransformationRequest.class);
+        registry.register("TransformationReply", TransformationReply.class);
+
+        registry.register("TransformationOptions", TransformationOptionsImpl.class);
+        registry.register("ImageTransformationOptions", ImageTransformationOptions.class);
+        registry.register("VideoTransformationOptions", VideoTransformationOptions.class);
+        registry.register("AudioTransformationOptions", AudioTransformationOptions.class);
+        registry.register("ImageResizeOptions", ImageResizeOptions.class);
+        registry.register("TransformationOptionLimits", TransformationOptionLimits.class);
+        registry.register("TransformationOptionPair", TransformationOptionPair.class);
+
+        registry.register("CropSourceOptions", CropSourceOptions.class);
+        registry.register("PagedSourceOptions", PagedSourceOptions.class);
+        registry.register("TemporalSourceOptions", TemporalSourceOptions.class);
+    }
+
+}
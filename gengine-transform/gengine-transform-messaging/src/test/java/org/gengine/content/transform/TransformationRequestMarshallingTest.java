@@ -15,7 +15,11 @@ import org.gengine.messaging.jackson.ObjectMapperFactory;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
 public class TransformationRequestMarshallingTest
 {
@@ -84,4 +88,84 @@ public class TransformationRequestMarshallingTest
                 unmarshalledRequest.getOptions().getSourceOptions(TemporalSourceOptions.class).getDuration());
     }
 
+    @Test
+    public void testMarshallingWritesRegisteredTypeIds() throws IOException
+    {
+        String json = ObjectMapperFactory.createInstance(false).writeValueAsString(transformationRequest);
+
+        assertTrue(json.contains("\"@class\":\"TransformationRequest\""));
+        assertTrue(json.contains("\"@class\":\"ImageTransformationOptions\""));
+        assertTrue(json.contains("\"@class\":\"TemporalSourceOptions\""));
+        assertFalse(json.contains("org.gengine."));
+    }
+
+    @Test
+    public void testUnmarshallingClassNameTypeIds() throws IOException
+    {
+        String json = ObjectMapperFactory.createInstance(false).writeValueAsString(transformationRequest);
+        String legacyJson = json
+                .replace("\"TransformationRequest\"", "\"" + TransformationRequest.class.getName() + "\"")
+                .replace("\"TransformationReply\"", "\"" + TransformationReply.class.getName() + "\"")
+                .replace("\"ImageTransformationOptions\"", "\"" + ImageTransformationOptions.class.getName() + "\"")
+                .replace("\"TemporalSourceOptions\"", "\"" + TemporalSourceOptions.class.getName() + "\"");
+        assertTrue(legacyJson.contains(TemporalSourceOptions.class.getName()));
+
+        TransformationRequest unmarshalledRequest = mapper.readValue(legacyJson, TransformationRequest.class);
+
+        assertEquals(
+                "00:00:00.5",
+                unmarshalledRequest.getOptions().getSourceOptions(TemporalSourceOptions.class).getDuration());
+        assertEquals(TransformationReply.class, unmarshalledRequest.getReplyClass());
+        assertEquals(55, ((ImageTransformationOptions) unmarshalledRequest.getOptions()).getResizeOptions().getHeight());
+    }
+
+    /**
+     * Until all nodes read registered type ids messages must remain readable
+     * by older nodes which only understand class names
+     */
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testClassNameReaderCompatibility() throws IOException
+    {
+        ObjectMapper classNameMapper = new ObjectMapper();
+        classNameMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        classNameMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        classNameMapper.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+
+        String json = ObjectMapperFactory.createInstance(true).writeValueAsString(transformationRequest);
+        assertTrue(json.contains("\"@class\":\"" + TransformationRequest.class.getName() + "\""));
+
+        TransformationRequest unmarshalledRequest = classNameMapper.readValue(json, TransformationRequest.class);
+
+        assertEquals(
+                "00:00:00.5",
+                unmarshalledRequest.getOptions().getSourceOptions(TemporalSourceOptions.class).getDuration());
+        assertEquals(TransformationReply.class, unmarshalledRequest.getReplyClass());
+
+        String shortIdJson = ObjectMapperFactory.createInstance(false).writeValueAsString(transformationRequest);
+        try
+        {
+            classNameMapper.readValue(shortIdJson, TransformationRequest.class);
+            fail("Class name readers should not understand registered type ids");
+        }
+        catch (JsonMappingException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDefaultWritesClassNames() throws IOException
+    {
+        String json = mapper.writeValueAsString(transformationRequest);
+
+        assertTrue(json.contains("\"@class\":\"" + TransformationRequest.class.getName() + "\""));
+        TransformationRequest unmarshalledRequest = mapper.readValue(json, TransformationRequest.class);
+        assertEquals(
+                "00:00:00.5",
+                unmarshalledRequest.getOptions().getSourceOptions(TemporalSourceOptions.class).getDuration());
+        // Compared as trees as the source options map isn't ordered
+        assertEquals(mapper.readTree(json), mapper.readTree(mapper.writeValueAsString(unmarshalledRequest)));
+    }
+
 }